@@ -0,0 +1,47 @@
+package com.custom.stocksearcher.benchmark;
+
+import com.custom.stocksearcher.models.CompanyStatus;
+import com.custom.stocksearcher.service.CompanyDirectory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * 以記憶體資料實作的CompanyDirectory
+ */
+public class InMemoryCompanyDirectory implements CompanyDirectory {
+    private final Map<String, CompanyStatus> companyStatusMap;
+
+    public InMemoryCompanyDirectory(Collection<String> codes) {
+        this.companyStatusMap = codes.stream().collect(Collectors.toMap(code -> code, code -> {
+            CompanyStatus companyStatus = new CompanyStatus();
+            companyStatus.setCode(code);
+            companyStatus.setName("benchmark-" + code);
+            return companyStatus;
+        }));
+    }
+
+    @Override
+    public Mono<CompanyStatus> findByCode(String code) {
+        return Mono.justOrEmpty(companyStatusMap.get(code));
+    }
+
+    @Override
+    public Flux<CompanyStatus> findAll() {
+        return Flux.fromIterable(companyStatusMap.values());
+    }
+
+    @Override
+    public Flux<CompanyStatus> search(String keyword, int limit, Predicate<CompanyStatus> filter) {
+        return findAll().filter(filter).filter(companyStatus -> companyStatus.getCode().contains(keyword)).take(limit);
+    }
+
+    @Override
+    public Mono<Void> refresh() {
+        return Mono.empty();
+    }
+}
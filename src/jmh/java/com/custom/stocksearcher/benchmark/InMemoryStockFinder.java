@@ -0,0 +1,64 @@
+package com.custom.stocksearcher.benchmark;
+
+import com.custom.stocksearcher.engine.BarRollup;
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.models.CompanyStatus;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.Timeframe;
+import com.custom.stocksearcher.service.StockFinder;
+import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以記憶體資料實作的StockFinder, 排除ES延遲以量測計算本身
+ */
+public class InMemoryStockFinder implements StockFinder {
+    private final Map<String, List<StockData>> stockDataMap;
+
+    public InMemoryStockFinder(Map<String, List<StockData>> stockDataMap) {
+        this.stockDataMap = stockDataMap;
+    }
+
+    @Override
+    public Flux<StockData> findStockInfo(CodeParam codeParam) {
+        LocalDate beginDate = LocalDate.parse(codeParam.getBeginDate());
+        LocalDate endDate = LocalDate.parse(codeParam.getEndDate());
+        return Flux.fromIterable(stockDataMap.getOrDefault(codeParam.getCode(), List.of()))
+                .filter(stockData -> !stockData.getDate().isBefore(beginDate) && !stockData.getDate().isAfter(endDate));
+    }
+
+    @Override
+    public Flux<StockData> findStockBars(CodeParam codeParam) {
+        return BarRollup.rollup(findStockInfo(codeParam), Timeframe.of(codeParam.getTimeframe()));
+    }
+
+    @Override
+    public Flux<CompanyStatus> findCompaniesByKeyWord(String keyword) {
+        return Flux.empty();
+    }
+
+    @Override
+    public Flux<CompanyStatus> findCompaniesByKeyWord(String keyword, int limit) {
+        return Flux.empty();
+    }
+
+    @Override
+    public Flux<StockData> getStockDataWithKlineCnt(CodeParam codeParam) {
+        Integer klineCnt = codeParam.getKlineCnt();
+        if (null != klineCnt && klineCnt > 0) {
+            codeParam.setBeginDate(LocalDate.parse(codeParam.getEndDate()).minusDays(klineCnt * 3L).toString());
+            return findStockInfo(codeParam).takeLast(klineCnt);
+        }
+        return findStockInfo(codeParam);
+    }
+
+    @Override
+    public Flux<Tuple2<CodeParam, Flux<StockData>>> getStockDataWithKlineCnt(List<CodeParam> codeParams) {
+        return Flux.fromIterable(codeParams).map(codeParam -> Tuples.of(codeParam, getStockDataWithKlineCnt(codeParam)));
+    }
+}
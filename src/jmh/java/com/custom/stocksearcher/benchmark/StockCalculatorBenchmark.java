@@ -0,0 +1,113 @@
+package com.custom.stocksearcher.benchmark;
+
+import com.custom.stocksearcher.engine.MovingAverageEngine;
+import com.custom.stocksearcher.engine.ScreenContext;
+import com.custom.stocksearcher.engine.ScreenPipeline;
+import com.custom.stocksearcher.engine.ScreenStage;
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.models.StockBumpy;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockMAResult;
+import com.custom.stocksearcher.service.StockCalculator;
+import com.custom.stocksearcher.service.StockFinder;
+import com.custom.stocksearcher.service.impl.ScanMetricsImpl;
+import com.custom.stocksearcher.service.impl.StockCalculatorImpl;
+import com.custom.stocksearcher.service.impl.StockScreenerImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StockCalculator熱點路徑benchmark
+ * 資料皆在記憶體中, 只量測計算與reactor管線本身的成本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockCalculatorBenchmark {
+    private static final String CODE = "2330";
+    private static final LocalDate END_DATE = LocalDate.of(2023, 6, 30);
+
+    /**
+     * 查詢年數
+     */
+    @Param({"1", "3"})
+    private int years;
+
+    private StockCalculator stockCalculator;
+    private StockFinder stockFinder;
+    private LocalDate beginDate;
+    private ScreenPipeline preFilterPipeline;
+    private StockData lastStockData;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<StockData> stockDataList = SyntheticStockData.generate(END_DATE, years, 42L);
+        stockFinder = new InMemoryStockFinder(Map.of(CODE, stockDataList));
+        stockCalculator = new StockCalculatorImpl(new InMemoryCompanyDirectory(List.of(CODE)), new MovingAverageEngine());
+        beginDate = END_DATE.minusYears(years);
+        preFilterPipeline = new StockScreenerImpl(new ScanMetricsImpl(new SimpleMeterRegistry())).compile(preFilterCodeParam());
+        lastStockData = stockDataList.get(stockDataList.size() - 1);
+    }
+
+    @Benchmark
+    public List<StockMAResult> getStockMa() {
+        return stockCalculator.getStockMa(stockFinder.findStockInfo(codeParam()), CODE, beginDate, END_DATE)
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public StockBumpy getRangeOfHighAndLowPoint() {
+        CodeParam codeParam = codeParam();
+        return stockCalculator.getRangeOfHighAndLowPoint(stockFinder.findStockInfo(codeParam), codeParam).block();
+    }
+
+    /**
+     * 與StockController相同, 以最後一筆執行BAR階段條件
+     */
+    @Benchmark
+    public boolean preFilterLastBar() {
+        return preFilterPipeline.test(ScreenStage.BAR, new ScreenContext(lastStockData));
+    }
+
+    /**
+     * 篩選條件與查詢相同, 於setup編譯一次
+     */
+    private CodeParam preFilterCodeParam() {
+        CodeParam codeParam = codeParam();
+        codeParam.setPriceLowLimit(BigDecimal.ZERO);
+        codeParam.setPriceHighLimit(BigDecimal.valueOf(100_000));
+        codeParam.setCandlestickTypeList(List.of());
+        codeParam.setLastOpenCalcLimit(BigDecimal.ZERO);
+        codeParam.setLastCloseCalcLimit(BigDecimal.ZERO);
+        return codeParam;
+    }
+
+    private CodeParam codeParam() {
+        CodeParam codeParam = new CodeParam();
+        codeParam.setCode(CODE);
+        codeParam.setBeginDate(beginDate.toString());
+        codeParam.setEndDate(END_DATE.toString());
+        return codeParam;
+    }
+}
@@ -0,0 +1,71 @@
+package com.custom.stocksearcher.benchmark;
+
+import com.custom.stocksearcher.models.CandlestickType;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockSeries;
+import com.custom.stocksearcher.service.StockCandlestick;
+import com.custom.stocksearcher.service.impl.StockCandlestickImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * K線型態判斷benchmark, 比較逐筆StockData與欄式StockSeries
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockCandlestickBenchmark {
+    private static final LocalDate END_DATE = LocalDate.of(2023, 6, 30);
+    private static final int STOCK_COUNT = 1_000;
+
+    private final StockCandlestick stockCandlestick = new StockCandlestickImpl();
+    private List<StockData> stockDataList;
+    private StockSeries stockSeries;
+    private List<StockSeries> marketSeries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stockDataList = SyntheticStockData.generate(END_DATE, 3, 42L);
+        stockSeries = StockSeries.of("2330", stockDataList);
+        marketSeries = new ArrayList<>(STOCK_COUNT);
+        for (int i = 0; i < STOCK_COUNT; i++) {
+            marketSeries.add(StockSeries.of(String.valueOf(1000 + i), SyntheticStockData.generate(END_DATE, 1, i)));
+        }
+    }
+
+    @Benchmark
+    public void detectCandlestickType(Blackhole blackhole) {
+        for (StockData stockData : stockDataList) {
+            blackhole.consume(stockCandlestick.detectCandlestickType(stockData));
+        }
+    }
+
+    @Benchmark
+    public CandlestickType[] detectCandlestickTypesOfSeries() {
+        return stockCandlestick.detectCandlestickTypes(stockSeries);
+    }
+
+    @Benchmark
+    public Map<String, CandlestickType> detectMarketCandlestickTypes() {
+        return stockCandlestick.detectCandlestickTypes(marketSeries, END_DATE);
+    }
+}
@@ -0,0 +1,59 @@
+package com.custom.stocksearcher.benchmark;
+
+import com.custom.stocksearcher.models.StockData;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 產生benchmark用的模擬日K資料(隨機漫步, 略過週末)
+ */
+public class SyntheticStockData {
+
+    private SyntheticStockData() {
+    }
+
+    /**
+     * 產生模擬股價
+     *
+     * @param endDate 結束日期
+     * @param years   年數
+     * @param seed    亂數種子
+     * @return 依日期排序的StockData
+     */
+    public static List<StockData> generate(LocalDate endDate, int years, long seed) {
+        Random random = new Random(seed);
+        List<StockData> stockDataList = new ArrayList<>(years * 250);
+        long closingPrice = 5_000 + random.nextInt(50_000);
+
+        for (LocalDate date = endDate.minusYears(years); !date.isAfter(endDate); date = date.plusDays(1)) {
+            if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                continue;
+            }
+            long openingPrice = Math.max(100, closingPrice + closingPrice * (random.nextInt(41) - 20) / 1_000);
+            long nextClosingPrice = Math.max(100, openingPrice + openingPrice * (random.nextInt(61) - 30) / 1_000);
+            long highestPrice = Math.max(openingPrice, nextClosingPrice) + (random.nextBoolean() ? 0 : openingPrice * random.nextInt(20) / 1_000);
+            long lowestPrice = Math.max(1, Math.min(openingPrice, nextClosingPrice) - (random.nextBoolean() ? 0 : openingPrice * random.nextInt(20) / 1_000));
+            long tradeVolume = 100_000L + random.nextInt(10_000_000);
+
+            StockData stockData = new StockData();
+            stockData.setDate(date);
+            stockData.setOpeningPrice(BigDecimal.valueOf(openingPrice, 2));
+            stockData.setHighestPrice(BigDecimal.valueOf(highestPrice, 2));
+            stockData.setLowestPrice(BigDecimal.valueOf(lowestPrice, 2));
+            stockData.setClosingPrice(BigDecimal.valueOf(nextClosingPrice, 2));
+            stockData.setChange(BigDecimal.valueOf(nextClosingPrice - closingPrice, 2));
+            stockData.setTradeVolume(BigDecimal.valueOf(tradeVolume));
+            stockData.setTradeValue(BigDecimal.valueOf(tradeVolume * nextClosingPrice / 100));
+            stockData.setTransaction(BigDecimal.valueOf(tradeVolume / 1_000));
+            stockDataList.add(stockData);
+
+            closingPrice = nextClosingPrice;
+        }
+        return stockDataList;
+    }
+}
@@ -0,0 +1,119 @@
+package com.custom.stocksearcher.config;
+
+import com.custom.stocksearcher.service.impl.ScanMetricsImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * 為com.custom.stocksearcher.repo下的repository加上查詢延遲histogram
+ * metric: stock.repo.query{repo, method, outcome}, 由subscribe計時至結束
+ */
+@Component
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+    private static final String REPO_PACKAGE = "com.custom.stocksearcher.repo";
+    private static final String REPO_METRIC = "stock.repo.query";
+
+    /**
+     * BeanPostProcessor會提早建立, 以ObjectProvider延後取得MeterRegistry
+     */
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    public RepositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Optional<Class<?>> repoInterface = findRepoInterface(bean);
+        if (repoInterface.isEmpty()) {
+            return bean;
+        }
+
+        String repo = repoInterface.get().getSimpleName();
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setTarget(bean);
+        proxyFactory.setInterfaces(AopProxyUtils.proxiedUserInterfaces(bean));
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            String method = invocation.getMethod().getName();
+            Class<?> returnType = invocation.getMethod().getReturnType();
+            if (Mono.class.isAssignableFrom(returnType) || Flux.class.isAssignableFrom(returnType)) {
+                return timeReactive(invocation.proceed(), repo, method);
+            }
+
+            Timer.Sample sample = Timer.start(meterRegistryProvider.getObject());
+            Object result;
+            try {
+                result = invocation.proceed();
+            } catch (Throwable e) {
+                sample.stop(repoTimer(repo, method, SignalType.ON_ERROR));
+                throw e;
+            }
+            sample.stop(repoTimer(repo, method, SignalType.ON_COMPLETE));
+            return result;
+        });
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    /**
+     * 回傳Mono/Flux的查詢由subscribe計時至結束
+     *
+     * @param result 查詢結果
+     * @param repo   repository名稱
+     * @param method 方法名稱
+     * @return 計時後的結果
+     */
+    private Object timeReactive(Object result, String repo, String method) {
+        if (result instanceof Mono<?> mono) {
+            return Mono.defer(() -> {
+                Timer.Sample monoSample = Timer.start(meterRegistryProvider.getObject());
+                return mono.doFinally(signalType -> monoSample.stop(repoTimer(repo, method, signalType)));
+            });
+        }
+        if (result instanceof Flux<?> flux) {
+            return Flux.defer(() -> {
+                Timer.Sample fluxSample = Timer.start(meterRegistryProvider.getObject());
+                return flux.doFinally(signalType -> fluxSample.stop(repoTimer(repo, method, signalType)));
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 找出bean實作的本專案repository介面
+     *
+     * @param bean spring bean
+     * @return repository介面
+     */
+    private Optional<Class<?>> findRepoInterface(Object bean) {
+        if (!(bean instanceof Repository<?, ?>)) {
+            return Optional.empty();
+        }
+        return Arrays.stream(AopProxyUtils.proxiedUserInterfaces(bean))
+                .filter(Repository.class::isAssignableFrom)
+                .filter(repoInterface -> REPO_PACKAGE.equals(repoInterface.getPackageName()))
+                .findFirst();
+    }
+
+    private Timer repoTimer(String repo, String method, SignalType signalType) {
+        return Timer.builder(REPO_METRIC)
+                .description("elasticsearch repository query latency")
+                .tag("repo", repo)
+                .tag("method", method)
+                .tag("outcome", ScanMetricsImpl.outcome(signalType))
+                .publishPercentileHistogram()
+                .register(meterRegistryProvider.getObject());
+    }
+}
@@ -14,24 +14,15 @@ public class Constant {
      * for 接受跨域請求使用
      */
     public static final String[] CORS_URLS = new String[]{FRONT_END_URL, LOCAL_4200, LOCAL_URL, LOCAL_9218_URL};
-    /**
-     * K棒判斷常數
-     */
-    public static final String CandlestickType_BLACK = "BLACK";
-    public static final String CandlestickType_RED = "RED";
-    public static final String CandlestickType_GREEN = "GREEN";
-
-    public static final String DASH_LINE = "DashLine";
-    public static final String T_LINE_UP = "TLineUP";
-    public static final String T_LINE_DOWN = "TLineDown";
-    public static final String CROSS = "Cross";
-    public static final String CROSS_UP = "CrossUp";
-    public static final String CROSS_DOWN = "CrossDown";
-
     /**
      * K棒判斷參數
      */
     public static final BigDecimal HAMMER_LIMIT = BigDecimal.valueOf(1.2);
     public static final BigDecimal CYLINDER_LIMIT = BigDecimal.valueOf(0.2);
 
+    /**
+     * 全市場篩選時每批查詢的股票數
+     */
+    public static final int SCAN_BATCH_SIZE = 200;
+
 }
@@ -1,21 +1,30 @@
 package com.custom.stocksearcher.controller;
 
+import com.custom.stocksearcher.engine.BoundedTopK;
+import com.custom.stocksearcher.engine.CandlestickPattern;
+import com.custom.stocksearcher.engine.ScreenContext;
+import com.custom.stocksearcher.engine.ScreenPipeline;
+import com.custom.stocksearcher.engine.ScreenStage;
 import com.custom.stocksearcher.models.*;
 import com.custom.stocksearcher.repo.CodeListRepo;
-import com.custom.stocksearcher.service.StockCalculator;
-import com.custom.stocksearcher.service.StockFinder;
-import com.custom.stocksearcher.service.UserStorage;
+import com.custom.stocksearcher.service.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Supplier;
+
+import static com.custom.stocksearcher.constant.Constant.SCAN_BATCH_SIZE;
 
 /**
  * 處理stock相關
@@ -27,14 +36,36 @@ public class StockController {
 
     private final StockFinder stockFinder;
     private final StockCalculator stockCalculator;
+    private final StockCandlestick stockCandlestick;
     private final UserStorage userStorage;
     private final CodeListRepo codeListRepo;
+    private final ScanMetrics scanMetrics;
+    private final StockMAIndex stockMAIndex;
+    private final ResultCache resultCache;
+    private final ScanExecutor scanExecutor;
+    private final StockPriceStore stockPriceStore;
+    private final StockRangeAggregator stockRangeAggregator;
+    private final StockScreener stockScreener;
+    private final StockIndicator stockIndicator;
+    private final StockBacktest stockBacktest;
+    private final StockAlert stockAlert;
 
-    public StockController(StockFinder stockFinder, StockCalculator stockCalculator, UserStorage userStorage, CodeListRepo codeListRepo) {
+    public StockController(StockFinder stockFinder, StockCalculator stockCalculator, StockCandlestick stockCandlestick, UserStorage userStorage, CodeListRepo codeListRepo, ScanMetrics scanMetrics, StockMAIndex stockMAIndex, ResultCache resultCache, ScanExecutor scanExecutor, StockPriceStore stockPriceStore, StockRangeAggregator stockRangeAggregator, StockScreener stockScreener, StockIndicator stockIndicator, StockBacktest stockBacktest, StockAlert stockAlert) {
         this.stockFinder = stockFinder;
         this.stockCalculator = stockCalculator;
+        this.stockCandlestick = stockCandlestick;
         this.userStorage = userStorage;
         this.codeListRepo = codeListRepo;
+        this.scanMetrics = scanMetrics;
+        this.stockMAIndex = stockMAIndex;
+        this.resultCache = resultCache;
+        this.scanExecutor = scanExecutor;
+        this.stockPriceStore = stockPriceStore;
+        this.stockRangeAggregator = stockRangeAggregator;
+        this.stockScreener = stockScreener;
+        this.stockIndicator = stockIndicator;
+        this.stockBacktest = stockBacktest;
+        this.stockAlert = stockAlert;
     }
 
     /**
@@ -45,18 +76,23 @@ public class StockController {
      */
     @RequestMapping("/findStockInfo")
     public Flux<StockData> findStockInfo(@RequestBody CodeParam codeParam) {
-        return stockFinder.findStockInfo(codeParam);
+        return stockFinder.findStockBars(codeParam)
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
     }
 
     /**
      * 根據keyword尋找companies
      *
-     * @param code 部分關鍵字
+     * @param code  部分關鍵字
+     * @param limit 最多筆數, 未指定則回傳全部
      * @return Flux<CompanyStatus>
      */
     @RequestMapping("/findCompaniesByKeyWord")
-    public Flux<CompanyStatus> findCompaniesByKeyWord(@RequestBody String code) {
-        return stockFinder.findCompaniesByKeyWord(code);
+    public Flux<CompanyStatus> findCompaniesByKeyWord(@RequestBody String code, @RequestParam(required = false) Integer limit) {
+        if (Objects.isNull(limit)) {
+            return stockFinder.findCompaniesByKeyWord(code);
+        }
+        return stockFinder.findCompaniesByKeyWord(code, limit);
     }
 
     /**
@@ -67,99 +103,283 @@ public class StockController {
      */
     @RequestMapping("/getRangeOfHighAndLowPoint")
     public Mono<StockBumpy> getRangeOfHighAndLowPoint(@RequestBody CodeParam codeParam) {
-        Flux<StockData> stockDataFlux = stockFinder.getStockDataWithKlineCnt(codeParam);
-        stockDataFlux = stockCalculator.preFilterLastStockData(stockDataFlux, codeParam);
+        return requireDailyTimeframe(codeParam)
+                .then(resultCache.getMono("getRangeOfHighAndLowPoint", codeParam,
+                        () -> compileScreen(() -> stockScreener.compile(codeParam))
+                                .flatMap(screenPipeline -> getRangeOfHighAndLowPoint(
+                                        scanMetrics.timeStage("fetch", stockFinder.getStockDataWithKlineCnt(codeParam)), codeParam, screenPipeline))));
+    }
+
+    /**
+     * 區間計算 篩選與MA只以日K計算, 其他週期回傳400, 避免以日K結果回應
+     * 需在讀取快取前檢查, 快取key不含timeframe
+     *
+     * @param codeParam 查詢bean
+     * @return Mono<Void>
+     */
+    private Mono<Void> requireDailyTimeframe(CodeParam codeParam) {
+        return Mono.<Void>fromRunnable(() -> {
+                    if (Timeframe.of(codeParam.getTimeframe()) != Timeframe.DAY) {
+                        throw new IllegalArgumentException("timeframe " + codeParam.getTimeframe() + " is only supported by findStockInfo and getCandlestickPatterns");
+                    }
+                })
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
 
-        return stockCalculator.getRangeOfHighAndLowPoint(stockDataFlux, codeParam)
-                .filter(stockBumpy -> stockBumpy.getLowestTradeVolume().compareTo(codeParam.getTradeVolumeLimit()) >= 0)
+    /**
+     * 篩選條件編譯後各階段的執行順序
+     *
+     * @param codeParam 查詢bean
+     * @return 階段 -> 條件
+     */
+    @RequestMapping("/explainScreen")
+    public Mono<Map<ScreenStage, List<String>>> explainScreen(@RequestBody CodeParam codeParam) {
+        return compileScreen(() -> stockScreener.compileScan(codeParam)).map(ScreenPipeline::getOrder);
+    }
+
+    /**
+     * 編譯篩選條件, 語法錯誤回傳400
+     *
+     * @param compiler 編譯方式
+     * @return Mono<ScreenPipeline>
+     */
+    private Mono<ScreenPipeline> compileScreen(Supplier<ScreenPipeline> compiler) {
+        return Mono.fromSupplier(compiler)
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
+
+    /**
+     * calc stock by 已取得的股價資料
+     * BAR階段需最後一筆, 因此先收集為list
+     *
+     * @param stockDataFlux  股價資料flux
+     * @param codeParam      查詢bean
+     * @param screenPipeline 篩選條件
+     * @return Mono<StockBumpy>
+     */
+    private Mono<StockBumpy> getRangeOfHighAndLowPoint(Flux<StockData> stockDataFlux, CodeParam codeParam, ScreenPipeline screenPipeline) {
+        return stockDataFlux.collectList()
+                .filter(stockDataList -> !stockDataList.isEmpty())
+                .flatMap(stockDataList -> {
+                    ScreenContext screenContext = new ScreenContext(stockDataList.get(stockDataList.size() - 1));
+                    if (!scanMetrics.recordStage("preFilter", () -> screenPipeline.test(ScreenStage.BAR, screenContext))) {
+                        return Mono.empty();
+                    }
+                    return screen(scanMetrics.timeStage("rangeStatistics",
+                                    stockCalculator.getRangeOfHighAndLowPoint(Flux.fromIterable(stockDataList), codeParam)),
+                            codeParam, screenPipeline, screenContext);
+                });
+    }
+
+    /**
+     * calc stock by ES aggregation取得的區間極值, 只以最後一筆做預先過濾
+     *
+     * @param stockRangeExtremes 區間極值
+     * @param codeParam          查詢bean
+     * @param screenPipeline     篩選條件
+     * @return Mono<StockBumpy>
+     */
+    private Mono<StockBumpy> getRangeOfHighAndLowPoint(StockRangeExtremes stockRangeExtremes, CodeParam codeParam, ScreenPipeline screenPipeline) {
+        ScreenContext screenContext = new ScreenContext(stockRangeExtremes.getLastStockData());
+        if (!scanMetrics.recordStage("preFilter", () -> screenPipeline.test(ScreenStage.BAR, screenContext))) {
+            return Mono.empty();
+        }
+        return screen(scanMetrics.timeStage("rangeStatistics", stockCalculator.getRangeOfHighAndLowPoint(stockRangeExtremes, codeParam)),
+                codeParam, screenPipeline, screenContext);
+    }
+
+    /**
+     * 依區間統計條件過濾後才查詢MA, 再依MA條件過濾, 通過者補上最後一筆MA
+     *
+     * @param stockBumpyMono 計算結果
+     * @param codeParam      查詢bean
+     * @param screenPipeline 篩選條件
+     * @param screenContext  已通過BAR階段的篩選資料
+     * @return Mono<StockBumpy>
+     */
+    private Mono<StockBumpy> screen(Mono<StockBumpy> stockBumpyMono, CodeParam codeParam, ScreenPipeline screenPipeline, ScreenContext screenContext) {
+        return stockBumpyMono
+                .filter(stockBumpy -> {
+                    screenContext.setStockBumpy(stockBumpy);
+                    return screenPipeline.test(ScreenStage.RANGE, screenContext);
+                })
                 .flatMap(stockBumpy -> {
                     CodeParam stockMAParam = new CodeParam();
                     stockMAParam.setCode(codeParam.getCode());
                     stockMAParam.setBeginDate(stockBumpy.getEndDate());
                     stockMAParam.setEndDate(stockBumpy.getEndDate());
-                    return getStockMa(stockMAParam).last(new StockMAResult())
+                    return scanMetrics.timeStage("maFetch", scanExecutor.fetch(() -> getStockMa(stockMAParam).last(new StockMAResult())))
                             .filter(stockMAResult -> null != stockMAResult.getPrice())
-                            .flatMap(stockMAResult -> filterClosingPriceWithMaPrice(stockMAResult, stockBumpy, codeParam.getClosingPriceCompareTargetHigher(), codeParam.getClosingPriceCompareTargetLower()));
+                            .filter(stockMAResult -> scanMetrics.recordStage("maFilter", () -> {
+                                screenContext.setStockMAResult(stockMAResult);
+                                return screenPipeline.test(ScreenStage.MA, screenContext);
+                            }))
+                            .map(stockMAResult -> {
+                                stockBumpy.setLastStockMA(stockMAResult);
+                                return stockBumpy;
+                            });
+                })
+                .flatMap(stockBumpy -> {
+                    if (!screenPipeline.hasPredicates(ScreenStage.INDICATOR)) {
+                        return Mono.just(stockBumpy);
+                    }
+                    return scanMetrics.timeStage("indicatorFetch", scanExecutor.fetch(() ->
+                                    stockIndicator.getLastStockIndicator(codeParam.getCode(), LocalDate.parse(stockBumpy.getEndDate()))))
+                            .filter(stockIndicatorResult -> scanMetrics.recordStage("indicatorFilter", () -> {
+                                screenContext.setStockIndicatorResult(stockIndicatorResult);
+                                return screenPipeline.test(ScreenStage.INDICATOR, screenContext);
+                            }))
+                            .map(stockIndicatorResult -> {
+                                stockBumpy.setLastStockIndicator(stockIndicatorResult);
+                                return stockBumpy;
+                            });
                 });
     }
 
-
     /**
-     * 過濾收盤價格需高於或低於季線
+     * calc by all or a range
      *
-     * @param stockMAResult  季線價格 bean
-     * @param stockBumpy     計算結果
-     * @param maTargetHigher 需高於哪個季線
-     * @param maTargetLower  需低於哪個季線
-     * @return
+     * @param codeParam 查詢bean
+     * @return FLux<StockBumpy>
      */
-    private Mono<StockBumpy> filterClosingPriceWithMaPrice(StockMAResult stockMAResult, StockBumpy stockBumpy, String maTargetHigher, String maTargetLower) {
-        BigDecimal price = stockMAResult.getPrice();
-        Optional<BigDecimal> maHigher = Optional.ofNullable(getMaTarget(stockMAResult, maTargetHigher));
-        Optional<BigDecimal> maLower = Optional.ofNullable(getMaTarget(stockMAResult, maTargetLower));
+    @RequestMapping("/getAllRangeOfHighAndLowPoint")
+    public Flux<StockBumpy> getAllRangeOfHighAndLowPoint(@RequestBody CodeParam codeParam) {
+        return requireDailyTimeframe(codeParam)
+                .thenMany(resultCache.getFlux("getAllRangeOfHighAndLowPoint", codeParam, () -> sortAllRangeOfHighAndLowPoint(codeParam)));
+    }
 
-        boolean isValid = maHigher.map(higher -> price.compareTo(higher) >= 0).orElse(true) &&
-                maLower.map(lower -> price.compareTo(lower) <= 0).orElse(true);
+    /**
+     * calc by all or a range, 依sortKey排序, 有topK時只取前K筆
+     *
+     * @param codeParam 查詢bean
+     * @return FLux<StockBumpy>
+     */
+    private Flux<StockBumpy> sortAllRangeOfHighAndLowPoint(CodeParam codeParam) {
+        Comparator<StockBumpy> comparator = getStockBumpyComparator(codeParam.getSortKey());
+        Flux<StockBumpy> stockBumpyFlux = scanAllRangeOfHighAndLowPoint(codeParam);
 
-        if (isValid) {
-            stockBumpy.setLastStockMA(stockMAResult);
-            return Mono.just(stockBumpy);
+        Integer topK = codeParam.getTopK();
+        if (null != topK && topK > 0) {
+            return scanMetrics.timeStage("scan", stockBumpyFlux
+                            .collect(() -> new BoundedTopK<>(topK, comparator), BoundedTopK::offer))
+                    .flatMapIterable(boundedTopK -> scanMetrics.recordStage("sort", boundedTopK::toSortedList));
         }
 
-        return Mono.empty();
+        return scanMetrics.timeStage("scan", stockBumpyFlux.sort(comparator));
     }
 
     /**
-     * 取得要比較的 ma price
+     * calc by all or a range, 通過篩選即推送, 不排序
      *
-     * @param stockMAResult 季線價格 bean
-     * @param maTarget
-     * @return
+     * @param codeParam 查詢bean
+     * @return FLux<StockBumpy> (NDJSON or SSE)
      */
-    private BigDecimal getMaTarget(StockMAResult stockMAResult, String maTarget) {
-        BigDecimal ma5 = stockMAResult.getMa5();
-        BigDecimal ma10 = stockMAResult.getMa10();
-        BigDecimal ma20 = stockMAResult.getMa20();
-        BigDecimal ma60 = stockMAResult.getMa60();
-
-        return switch (maTarget) {
-            case "none" -> null;
-            case "MA5" -> Optional.ofNullable(ma5).orElse(BigDecimal.ZERO);
-            case "MA10" -> Optional.ofNullable(ma10).orElse(BigDecimal.ZERO);
-            case "MA20" -> Optional.ofNullable(ma20).orElse(BigDecimal.ZERO);
-            case "MA60" -> Optional.ofNullable(ma60).orElse(BigDecimal.ZERO);
-            default -> BigDecimal.ZERO;
-        };
+    @RequestMapping(value = "/streamAllRangeOfHighAndLowPoint",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<StockBumpy> streamAllRangeOfHighAndLowPoint(@RequestBody CodeParam codeParam) {
+        return requireDailyTimeframe(codeParam)
+                .thenMany(Flux.defer(() -> scanAllRangeOfHighAndLowPoint(codeParam)));
     }
 
     /**
-     * calc by all or a range
+     * 依範圍逐檔計算並篩選, 結果依完成順序輸出
      *
      * @param codeParam 查詢bean
      * @return FLux<StockBumpy>
      */
-    @RequestMapping("/getAllRangeOfHighAndLowPoint")
-    public Flux<StockBumpy> getAllRangeOfHighAndLowPoint(@RequestBody CodeParam codeParam) {
-        BigDecimal bumpyHighLimit = codeParam.getBumpyHighLimit();
-        BigDecimal bumpyLowLimit = codeParam.getBumpyLowLimit();
-
+    private Flux<StockBumpy> scanAllRangeOfHighAndLowPoint(CodeParam codeParam) {
         Flux<CompanyStatus> companyStatusFlux = userStorage.getCodeRange(codeParam.getCode(), codeParam.isWithout4upCode());
-        Flux<CodeParam> codeParamFlux = userStorage.wrapperCodeParam(companyStatusFlux, codeParam);
+        Mono<List<CodeParam>> codeParamsMono = scanMetrics.timeStage("codeRange",
+                userStorage.wrapperCodeParam(companyStatusFlux, codeParam).collectList());
 
-        return codeParamFlux
+        return compileScreen(() -> stockScreener.compileScan(codeParam))
+                .flatMapMany(screenPipeline -> codeParamsMono
+                        .flatMapMany(codeParams -> stockRangeAggregator.isPreferred()
+                                ? aggregateRangeOfHighAndLowPoint(codeParams, screenPipeline)
+                                : fetchRangeOfHighAndLowPoint(codeParams, screenPipeline)));
+    }
+
+    /**
+     * 逐檔取得股價後計算
+     *
+     * @param codeParams     各檔查詢bean
+     * @param screenPipeline 篩選條件
+     * @return FLux<StockBumpy>
+     */
+    private Flux<StockBumpy> fetchRangeOfHighAndLowPoint(List<CodeParam> codeParams, ScreenPipeline screenPipeline) {
+        return Flux.fromIterable(codeParams)
+                .buffer(SCAN_BATCH_SIZE)
+                .flatMap(batch -> scanMetrics.timeStage("fetchBatch",
+                                scanExecutor.fetch(() -> stockFinder.getStockDataWithKlineCnt(batch).collectList())),
+                        scanExecutor.getMaxFetchConcurrency())
+                .flatMapIterable(tuple2s -> tuple2s)
                 .parallel()
                 .runOn(Schedulers.parallel())
-                .flatMap(this::getRangeOfHighAndLowPoint)
-                .sequential()
-                .filter(stockBumpy -> {
-                    if (bumpyHighLimit.compareTo(BigDecimal.ZERO) != 0) {
-                        return stockBumpy.getCalcResult().compareTo(bumpyHighLimit) < 0;
-                    } else {
-                        return true;
-                    }
+                .flatMap(tuple2 -> scanExecutor.calculate(() -> getRangeOfHighAndLowPoint(tuple2.getT2(), tuple2.getT1(), screenPipeline)),
+                        false, scanExecutor.getCalculationConcurrency())
+                .sequential();
+    }
+
+    /**
+     * 以ES aggregation取得各檔區間極值後計算, 不取回逐筆股價
+     * 有klineCnt時以交易日推算區間, 筆數不符(停牌, 新上市)或查無結果者改為逐檔取得股價
+     * aggregation失敗時全部改為逐檔取得股價
+     *
+     * @param codeParams     各檔查詢bean
+     * @param screenPipeline 篩選條件
+     * @return FLux<StockBumpy>
+     */
+    private Flux<StockBumpy> aggregateRangeOfHighAndLowPoint(List<CodeParam> codeParams, ScreenPipeline screenPipeline) {
+        if (codeParams.isEmpty()) {
+            return Flux.empty();
+        }
+
+        CodeParam firstCodeParam = codeParams.get(0);
+        Integer klineCnt = firstCodeParam.getKlineCnt();
+        boolean isKlineCnt = null != klineCnt && klineCnt > 0;
+        LocalDate endDate = LocalDate.parse(firstCodeParam.getEndDate());
+        Mono<LocalDate> beginDateMono = isKlineCnt
+                ? stockRangeAggregator.findTradingDateBefore(endDate, klineCnt)
+                : Mono.just(LocalDate.parse(firstCodeParam.getBeginDate()));
+        List<String> codes = codeParams.stream().map(CodeParam::getCode).toList();
+
+        return scanMetrics.timeStage("aggregate", beginDateMono
+                        .flatMap(beginDate -> scanExecutor.fetch(() -> stockRangeAggregator.aggregate(codes, beginDate, endDate))))
+                .onErrorResume(e -> {
+                    log.error("aggregate range error, fetch stock data instead {} ", e.getMessage());
+                    return Mono.empty();
                 })
-                .filter(stockBumpy -> stockBumpy.getCalcResult().compareTo(bumpyLowLimit) >= 0)
-                .sort(Comparator.comparing(stockBumpy -> stockBumpy.getLastStockMA().getPrice().negate()));
+                .defaultIfEmpty(Map.of())
+                .flatMapMany(stockRangeExtremesMap -> {
+                    List<CodeParam> fallbackCodeParams = new ArrayList<>();
+                    List<CodeParam> aggregatedCodeParams = new ArrayList<>();
+                    for (CodeParam codeParam : codeParams) {
+                        StockRangeExtremes stockRangeExtremes = stockRangeExtremesMap.get(codeParam.getCode());
+                        if (Objects.isNull(stockRangeExtremes) || (isKlineCnt && stockRangeExtremes.getBarCount() != klineCnt)) {
+                            fallbackCodeParams.add(codeParam);
+                        } else {
+                            aggregatedCodeParams.add(codeParam);
+                        }
+                    }
+
+                    Flux<StockBumpy> aggregatedFlux = Flux.fromIterable(aggregatedCodeParams)
+                            .flatMap(codeParam -> getRangeOfHighAndLowPoint(stockRangeExtremesMap.get(codeParam.getCode()), codeParam, screenPipeline));
+                    return Flux.merge(aggregatedFlux, fetchRangeOfHighAndLowPoint(fallbackCodeParams, screenPipeline));
+                });
+    }
+
+    /**
+     * 取得排序方式, 皆為由大到小
+     *
+     * @param sortKey price calcResult volume
+     * @return Comparator<StockBumpy>
+     */
+    private Comparator<StockBumpy> getStockBumpyComparator(String sortKey) {
+        return switch (Optional.ofNullable(sortKey).orElse("price")) {
+            case "calcResult" -> Comparator.comparing(StockBumpy::getCalcResult).reversed();
+            case "volume" -> Comparator.comparing(StockBumpy::getLowestTradeVolume).reversed();
+            default -> Comparator.comparing(stockBumpy -> stockBumpy.getLastStockMA().getPrice().negate());
+        };
     }
 
     /**
@@ -170,13 +390,119 @@ public class StockController {
      */
     @RequestMapping("/getStockMa")
     public Flux<StockMAResult> getStockMa(@RequestBody CodeParam codeParam) {
-        LocalDate beginDate = LocalDate.parse(codeParam.getBeginDate()).minusDays(1);
-        LocalDate endDate = LocalDate.parse(codeParam.getEndDate()).plusDays(1);
-        codeParam.setBeginDate(beginDate.minusMonths(6).toString());
+        return requireDailyTimeframe(codeParam)
+                .thenMany(resultCache.getFlux("getStockMa", codeParam, () -> findStockMa(codeParam)));
+    }
+
+    /**
+     * 取得股價MA, 不經快取
+     * 優先讀取stock_ma, 未涵蓋或查無資料時即時計算
+     *
+     * @param codeParam 查詢bean
+     * @return 計算結果
+     */
+    private Flux<StockMAResult> findStockMa(CodeParam codeParam) {
+        Flux<StockMAResult> indexedStockMAFlux = stockMAIndex.findStockMA(codeParam.getCode(),
+                LocalDate.parse(codeParam.getBeginDate()), LocalDate.parse(codeParam.getEndDate()));
 
-        Flux<StockData> stockDataFlux = findStockInfo(codeParam).cache();
+        return indexedStockMAFlux.switchIfEmpty(Flux.defer(() -> {
+            LocalDate beginDate = LocalDate.parse(codeParam.getBeginDate()).minusDays(1);
+            LocalDate endDate = LocalDate.parse(codeParam.getEndDate()).plusDays(1);
+            codeParam.setBeginDate(beginDate.minusMonths(6).toString());
 
-        return stockCalculator.getStockMa(stockDataFlux, codeParam.getCode(), beginDate, endDate);
+            Flux<StockData> stockDataFlux = stockFinder.findStockInfo(codeParam).cache();
+
+            return stockCalculator.getStockMa(stockDataFlux, codeParam.getCode(), beginDate, endDate);
+        }));
+    }
+
+    /**
+     * 取得技術指標 EMA12 EMA26 MACD RSI6 RSI12 KD 布林通道
+     *
+     * @param codeParam 查詢bean
+     * @return 計算結果
+     */
+    @RequestMapping("/getStockIndicator")
+    public Flux<StockIndicatorResult> getStockIndicator(@RequestBody CodeParam codeParam) {
+        return resultCache.getFlux("getStockIndicator", codeParam, () -> stockIndicator.getStockIndicator(codeParam));
+    }
+
+    /**
+     * 策略回測, 依進出場條件模擬範圍內所有股票的交易
+     *
+     * @param backtestParam 回測參數
+     * @return 交易統計
+     */
+    @RequestMapping("/backtest")
+    public Mono<BacktestResult> backtest(@RequestBody BacktestParam backtestParam) {
+        return stockBacktest.backtest(backtestParam)
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
+
+    /**
+     * 儲存告警規則, 新日K資料寫入時自動評估
+     *
+     * @param alertRule 告警規則
+     * @return 儲存結果
+     */
+    @RequestMapping("/saveAlertRule")
+    public Mono<AlertRule> saveAlertRule(@RequestBody AlertRule alertRule) {
+        return stockAlert.saveAlertRule(alertRule)
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
+
+    /**
+     * 取得用戶告警規則
+     *
+     * @param user 用戶名
+     * @return 告警規則
+     */
+    @RequestMapping("/getAlertRulesByUser")
+    public Flux<AlertRule> getAlertRulesByUser(@RequestBody String user) {
+        return stockAlert.getAlertRulesByUser(user);
+    }
+
+    /**
+     * 刪除告警規則
+     *
+     * @param alertRuleId 告警規則id
+     * @return 刪除結果
+     */
+    @RequestMapping("/deleteAlertRule")
+    public Mono<Void> deleteAlertRule(@RequestBody String alertRuleId) {
+        return stockAlert.deleteAlertRule(alertRuleId);
+    }
+
+    /**
+     * 取得用戶近期觸發的告警
+     *
+     * @param user 用戶名
+     * @param days 查詢天數
+     * @return 依日期新到舊
+     */
+    @RequestMapping("/getAlertEventsByUser")
+    public Flux<AlertEvent> getAlertEventsByUser(@RequestBody String user, @RequestParam(defaultValue = "7") int days) {
+        return stockAlert.getAlertEventsByUser(user, LocalDate.now().minusDays(days));
+    }
+
+    /**
+     * 重建stock_ma
+     *
+     * @return 寫入筆數
+     */
+    @RequestMapping("/rebuildStockMaIndex")
+    public Mono<Long> rebuildStockMaIndex() {
+        return stockMAIndex.backfill();
+    }
+
+    /**
+     * 由ES匯出股價snapshot, 供下次啟動時載入
+     *
+     * @return 檔案大小(bytes)
+     */
+    @RequestMapping("/exportStockSnapshot")
+    public Mono<Long> exportStockSnapshot() {
+        return stockPriceStore.exportSnapshot();
     }
 
     /**
@@ -187,7 +513,9 @@ public class StockController {
      */
     @RequestMapping("/saveCodeList")
     public Flux<CodeList> saveCodeList(@RequestBody CodeList codeList) {
-        return userStorage.saveCodeList(codeList);
+        // 快取key只含CodeList id, 內容變動後需失效
+        return userStorage.saveCodeList(codeList)
+                .doOnComplete(resultCache::invalidateAll);
     }
 
     /**
@@ -220,7 +548,8 @@ public class StockController {
      */
     @RequestMapping("/deleteCodeList")
     public Mono<Void> deleteCodeList(@RequestBody String codeListId) {
-        return codeListRepo.deleteById(codeListId);
+        return codeListRepo.deleteById(codeListId)
+                .doOnSuccess(unused -> resultCache.invalidateAll());
     }
 
     /**
@@ -234,6 +563,198 @@ public class StockController {
         return userStorage.getIntersectionFromCodeList(codeListIds);
     }
 
+    /**
+     * 取得複數CodeList的聯集
+     *
+     * @param codeListIds
+     * @return
+     */
+    @RequestMapping("/getUnionFromCodeList")
+    public Flux<CompanyStatus> getUnionFromCodeList(@RequestBody List<String> codeListIds) {
+        return userStorage.getUnionFromCodeList(codeListIds);
+    }
+
+    /**
+     * 取得第一個CodeList扣除其餘CodeList的差集
+     *
+     * @param codeListIds
+     * @return
+     */
+    @RequestMapping("/getDifferenceFromCodeList")
+    public Flux<CompanyStatus> getDifferenceFromCodeList(@RequestBody List<String> codeListIds) {
+        return userStorage.getDifferenceFromCodeList(codeListIds);
+    }
+
+    /**
+     * 取得複數CodeList的對稱差集
+     *
+     * @param codeListIds
+     * @return
+     */
+    @RequestMapping("/getSymmetricDifferenceFromCodeList")
+    public Flux<CompanyStatus> getSymmetricDifferenceFromCodeList(@RequestBody List<String> codeListIds) {
+        return userStorage.getSymmetricDifferenceFromCodeList(codeListIds);
+    }
+
+    /**
+     * 取得每日K棒型態
+     * 若有candlestickTypeList則只回傳符合型態的日期
+     *
+     * @param codeParam 查詢bean
+     * @return Flux<StockCandlestickResult>
+     */
+    @RequestMapping("/getCandlestickTypes")
+    public Flux<StockCandlestickResult> getCandlestickTypes(@RequestBody CodeParam codeParam) {
+        String code = codeParam.getCode();
+        List<String> candlestickTypeList = codeParam.getCandlestickTypeList();
+
+        return findStockInfo(codeParam)
+                .collectList()
+                .map(stockDataList -> StockSeries.of(code, stockDataList))
+                .flatMapMany(stockSeries -> {
+                    CandlestickType[] candlestickTypes = stockCandlestick.detectCandlestickTypes(stockSeries);
+                    return Flux.range(0, candlestickTypes.length)
+                            .map(index -> new StockCandlestickResult(code, stockSeries.getDate(index),
+                                    candlestickTypes[index], candlestickTypes[index].getName()));
+                })
+                .filter(result -> isInCandlestickTypeList(result, candlestickTypeList));
+    }
+
+    /**
+     * 取得範圍內所有股票在endDate的K棒型態
+     * 若有candlestickTypeList則只回傳符合型態的股票
+     *
+     * @param codeParam 查詢bean, code為範圍(all listed tpex 或 codeListId)
+     * @return Flux<StockCandlestickResult>
+     */
+    @RequestMapping("/getMarketCandlestickTypes")
+    public Flux<StockCandlestickResult> getMarketCandlestickTypes(@RequestBody CodeParam codeParam) {
+        LocalDate date = LocalDate.parse(codeParam.getEndDate());
+        List<String> candlestickTypeList = codeParam.getCandlestickTypeList();
+        CodeParam stockDataParam = new CodeParam();
+        stockDataParam.setBeginDate(date.toString());
+        stockDataParam.setEndDate(codeParam.getEndDate());
+
+        Flux<CompanyStatus> companyStatusFlux = userStorage.getCodeRange(codeParam.getCode(), codeParam.isWithout4upCode());
+
+        return userStorage.wrapperCodeParam(companyStatusFlux, stockDataParam)
+                .buffer(SCAN_BATCH_SIZE)
+                .flatMap(batch -> scanMetrics.timeStage("fetchBatch",
+                                scanExecutor.fetch(() -> stockFinder.getStockDataWithKlineCnt(batch).collectList())),
+                        scanExecutor.getMaxFetchConcurrency())
+                .flatMapIterable(tuple2s -> tuple2s)
+                .flatMap(tuple2 -> tuple2.getT2()
+                        .collectList()
+                        .map(stockDataList -> StockSeries.of(tuple2.getT1().getCode(), stockDataList)))
+                .collectList()
+                .flatMapIterable(stockSeriesList -> stockCandlestick.detectCandlestickTypes(stockSeriesList, date).entrySet())
+                .map(entry -> new StockCandlestickResult(entry.getKey(), date, entry.getValue(), entry.getValue().getName()))
+                .filter(result -> isInCandlestickTypeList(result, candlestickTypeList))
+                .sort(Comparator.comparing(StockCandlestickResult::getCode));
+    }
+
+    /**
+     * 取得區間內完成的多根K棒型態(吞噬 晨星 夜星 紅三兵 黑三兵 內包線)
+     * 若有candlestickPatternList則只比對指定型態
+     *
+     * @param codeParam 查詢bean
+     * @return Flux<StockPatternResult>
+     */
+    @RequestMapping("/getCandlestickPatterns")
+    public Flux<StockPatternResult> getCandlestickPatterns(@RequestBody CodeParam codeParam) {
+        return Mono.fromCallable(() -> toCandlestickPatterns(codeParam.getCandlestickPatternList()))
+                .flatMapMany(patterns -> {
+                    LocalDate beginDate = LocalDate.parse(codeParam.getBeginDate());
+                    LocalDate endDate = LocalDate.parse(codeParam.getEndDate());
+                    CodeParam stockDataParam = new CodeParam();
+                    stockDataParam.setCode(codeParam.getCode());
+                    stockDataParam.setBeginDate(Timeframe.of(codeParam.getTimeframe()).minusBars(beginDate, CandlestickPattern.MAX_LENGTH).toString());
+                    stockDataParam.setEndDate(codeParam.getEndDate());
+                    stockDataParam.setTimeframe(codeParam.getTimeframe());
+
+                    return stockFinder.findStockBars(stockDataParam)
+                            .collectList()
+                            .flatMapIterable(stockDataList -> stockCandlestick.detectPatterns(
+                                    StockSeries.of(codeParam.getCode(), stockDataList), patterns, beginDate, endDate));
+                })
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
+
+    /**
+     * 取得範圍內所有股票在endDate完成的多根K棒型態
+     * 若有candlestickPatternList則只比對指定型態
+     *
+     * @param codeParam 查詢bean, code為範圍(all listed tpex 或 codeListId)
+     * @return Flux<StockPatternResult>
+     */
+    @RequestMapping("/getMarketCandlestickPatterns")
+    public Flux<StockPatternResult> getMarketCandlestickPatterns(@RequestBody CodeParam codeParam) {
+        LocalDate date = LocalDate.parse(codeParam.getEndDate());
+        CodeParam stockDataParam = new CodeParam();
+        stockDataParam.setBeginDate(codeParam.getBeginDate());
+        stockDataParam.setEndDate(codeParam.getEndDate());
+        stockDataParam.setKlineCnt(CandlestickPattern.MAX_LENGTH);
+
+        return Mono.fromCallable(() -> toCandlestickPatterns(codeParam.getCandlestickPatternList()))
+                .flatMapMany(patterns -> {
+                    Flux<CompanyStatus> companyStatusFlux = userStorage.getCodeRange(codeParam.getCode(), codeParam.isWithout4upCode());
+                    return userStorage.wrapperCodeParam(companyStatusFlux, stockDataParam)
+                            .buffer(SCAN_BATCH_SIZE)
+                            .flatMap(batch -> scanMetrics.timeStage("fetchBatch",
+                                            scanExecutor.fetch(() -> stockFinder.getStockDataWithKlineCnt(batch).collectList())),
+                                    scanExecutor.getMaxFetchConcurrency())
+                            .flatMapIterable(tuple2s -> tuple2s)
+                            .parallel()
+                            .runOn(Schedulers.parallel())
+                            .flatMap(tuple2 -> scanExecutor.calculate(() -> tuple2.getT2()
+                                            .collectList()
+                                            .map(stockDataList -> stockCandlestick.detectPatterns(
+                                                    StockSeries.of(tuple2.getT1().getCode(), stockDataList), patterns, date))),
+                                    false, scanExecutor.getCalculationConcurrency())
+                            .sequential()
+                            .flatMapIterable(stockPatternResults -> stockPatternResults)
+                            .sort(Comparator.comparing(StockPatternResult::getCode));
+                })
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
+
+    /**
+     * 型態名稱轉為CandlestickPattern, 未指定則為全部型態
+     *
+     * @param candlestickPatternList 型態名稱list
+     * @return List<CandlestickPattern>
+     */
+    private List<CandlestickPattern> toCandlestickPatterns(List<String> candlestickPatternList) {
+        if (null == candlestickPatternList || candlestickPatternList.isEmpty()) {
+            return List.of(CandlestickPattern.values());
+        }
+        return candlestickPatternList.stream().map(CandlestickPattern::of).distinct().toList();
+    }
+
+    @RequestMapping("/getAllCandlestickPattern")
+    public Flux<Map<String, String>> getAllCandlestickPattern() {
+        return Flux
+                .fromArray(CandlestickPattern.values())
+                .map(candlestickPattern -> {
+                    Map<String, String> candlestickPatternMap = new HashMap<>();
+                    candlestickPatternMap.put("key", candlestickPattern.toString());
+                    candlestickPatternMap.put("name", candlestickPattern.getName());
+                    return candlestickPatternMap;
+                });
+    }
+
+    /**
+     * 是否符合指定的K棒型態
+     *
+     * @param result              K棒型態結果
+     * @param candlestickTypeList 型態名稱list, 未指定則皆符合
+     * @return boolean
+     */
+    private boolean isInCandlestickTypeList(StockCandlestickResult result, List<String> candlestickTypeList) {
+        return null == candlestickTypeList || candlestickTypeList.isEmpty()
+                || candlestickTypeList.contains(result.getCandlestickName());
+    }
+
     @RequestMapping("/getAllCandlestickType")
     public Flux<Map<String, String>> getAllCandlestickType() {
         return Flux
@@ -0,0 +1,205 @@
+package com.custom.stocksearcher.engine;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 限制同時執行數的limiter, 超過上限的請求排隊等候
+ * adaptive時以AIMD調整上限: 每次成功加 1/limit(約每輪加1), 延遲超過門檻或被拒絕(429, rejected, timeout)時乘以backoffRatio
+ * 同一輪(上次調降後才開始的請求)只調降一次, 避免同時完成的慢請求將上限直接壓到最小
+ */
+public class AdaptiveLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final boolean adaptive;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private double limit;
+    private int inFlight = 0;
+    private long lastBackoffNanos = System.nanoTime();
+
+    /**
+     * 固定上限
+     *
+     * @param limit 同時執行數
+     */
+    public AdaptiveLimiter(int limit) {
+        this(limit, limit, limit, Duration.ZERO, 1.0, false);
+    }
+
+    /**
+     * AIMD動態上限
+     *
+     * @param initialLimit     初始上限
+     * @param minLimit         最小上限
+     * @param maxLimit         最大上限
+     * @param latencyThreshold 延遲門檻, 超過視為過載
+     * @param backoffRatio     過載時上限乘數, 0 ~ 1
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold, double backoffRatio) {
+        this(initialLimit, minLimit, maxLimit, latencyThreshold, backoffRatio, true);
+    }
+
+    private AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold, double backoffRatio, boolean adaptive) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * 取得執行許可後才訂閱supplier, 結束或取消時釋放
+     *
+     * @param supplier 實際執行內容
+     * @return 結果flux
+     */
+    public <T> Flux<T> execute(Supplier<? extends Publisher<T>> supplier) {
+        return Flux.usingWhen(acquire(),
+                permit -> Flux.from(supplier.get()),
+                permit -> Mono.fromRunnable(() -> permit.release(null, true)),
+                (permit, e) -> Mono.fromRunnable(() -> permit.release(e, true)),
+                permit -> Mono.fromRunnable(() -> permit.release(null, false)));
+    }
+
+    /**
+     * 取得執行許可後才訂閱supplier, 結束或取消時釋放
+     *
+     * @param supplier 實際執行內容
+     * @return 結果mono
+     */
+    public <T> Mono<T> executeMono(Supplier<Mono<T>> supplier) {
+        return Mono.usingWhen(acquire(),
+                permit -> supplier.get(),
+                permit -> Mono.fromRunnable(() -> permit.release(null, true)),
+                (permit, e) -> Mono.fromRunnable(() -> permit.release(e, true)),
+                permit -> Mono.fromRunnable(() -> permit.release(null, false)));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, new Permit());
+            boolean granted;
+            synchronized (this) {
+                granted = inFlight < (int) limit;
+                if (granted) {
+                    inFlight++;
+                } else {
+                    queue.offer(waiter);
+                }
+            }
+            if (granted) {
+                waiter.grant();
+                return;
+            }
+            sink.onCancel(() -> {
+                boolean removed;
+                synchronized (this) {
+                    removed = queue.remove(waiter);
+                }
+                if (!removed) {
+                    // 已取得許可, 由permit確保只釋放一次
+                    waiter.permit().release(null, false);
+                }
+            });
+        });
+    }
+
+    /**
+     * 依結果調整上限後釋放許可, 並喚醒排隊中的請求
+     *
+     * @param startNanos   取得許可時間
+     * @param latencyNanos 執行時間, 負數代表不調整
+     * @param error        錯誤
+     */
+    private void release(long startNanos, long latencyNanos, Throwable error) {
+        List<Waiter> grantedWaiters = new ArrayList<>();
+        synchronized (this) {
+            if (adaptive && latencyNanos >= 0) {
+                if (isRejection(error) || (latencyThresholdNanos > 0 && latencyNanos > latencyThresholdNanos)) {
+                    if (startNanos - lastBackoffNanos > 0) {
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                        lastBackoffNanos = System.nanoTime();
+                    }
+                } else if (null == error) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+            inFlight--;
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                inFlight++;
+                grantedWaiters.add(queue.poll());
+            }
+        }
+        grantedWaiters.forEach(Waiter::grant);
+    }
+
+    /**
+     * 是否為過載造成的錯誤
+     *
+     * @param error 錯誤
+     * @return boolean
+     */
+    static boolean isRejection(Throwable error) {
+        for (Throwable cause = error; null != cause; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return true;
+            }
+            String message = String.valueOf(cause.getMessage());
+            if (message.contains("429") || message.contains("rejected_execution") || message.contains("Too Many Requests")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 排隊中的請求
+     */
+    private record Waiter(MonoSink<Permit> sink, Permit permit) {
+        void grant() {
+            permit.startNanos = System.nanoTime();
+            sink.success(permit);
+        }
+    }
+
+    /**
+     * 執行許可, 只會釋放一次
+     */
+    private class Permit {
+        private volatile long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release(Throwable error, boolean measure) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveLimiter.this.release(startNanos, measure ? System.nanoTime() - startNanos : -1, error);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.BacktestTrade;
+import com.custom.stocksearcher.models.StockSeries;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.custom.stocksearcher.models.StockSeries.NULL_VALUE;
+
+/**
+ * 回測引擎
+ * 每檔股票獨立模擬, 以fork-join依股票切分平行執行
+ * 訊號當日以收盤價進出場, 同一時間每檔最多持有一筆
+ */
+public class BacktestEngine {
+    /**
+     * 切分至此檔數以下即直接計算
+     */
+    private static final int SPLIT_THRESHOLD = 16;
+
+    private final BacktestRule entryRule;
+    private final BacktestRule exitRule;
+    private final int holdingDays;
+    private final long takeProfitThreshold;
+    private final long stopLossThreshold;
+    private final LocalDate beginDate;
+    private final LocalDate endDate;
+
+    /**
+     * @param entryRule   進場條件
+     * @param exitRule    出場條件, null代表不使用
+     * @param holdingDays 最多持有交易日數, 0代表不限
+     * @param takeProfit  停利百分比, null代表不使用
+     * @param stopLoss    停損百分比(正數), null代表不使用
+     * @param beginDate   開始日期(含)
+     * @param endDate     結束日期(含)
+     */
+    public BacktestEngine(BacktestRule entryRule, BacktestRule exitRule, int holdingDays,
+                          BigDecimal takeProfit, BigDecimal stopLoss, LocalDate beginDate, LocalDate endDate) {
+        this.entryRule = Objects.requireNonNull(entryRule, "entry rule is required");
+        this.exitRule = exitRule;
+        this.holdingDays = holdingDays;
+        this.takeProfitThreshold = Objects.isNull(takeProfit) ? Long.MAX_VALUE : StockSeries.toRatioThreshold(takeProfit);
+        this.stopLossThreshold = Objects.isNull(stopLoss) ? Long.MIN_VALUE : -StockSeries.toRatioThreshold(stopLoss);
+        this.beginDate = beginDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * 平行回測多檔股票, 於forkJoinPool內執行, 不阻塞呼叫端
+     *
+     * @param forkJoinPool    執行的pool
+     * @param stockSeriesList 欄式股價資料
+     * @return 全部交易, 依傳入順序
+     */
+    public CompletableFuture<List<BacktestTrade>> runAll(ForkJoinPool forkJoinPool, List<StockSeries> stockSeriesList) {
+        return CompletableFuture.supplyAsync(() -> new BacktestTask(stockSeriesList, 0, stockSeriesList.size()).invoke(), forkJoinPool);
+    }
+
+    /**
+     * 回測單檔股票, beginDate前的資料只用於計算MA
+     *
+     * @param stockSeries 欄式股價資料
+     * @return 交易
+     */
+    public List<BacktestTrade> run(StockSeries stockSeries) {
+        List<BacktestTrade> trades = new ArrayList<>();
+        int from = stockSeries.indexOfDateOnOrAfter(beginDate);
+        int to = stockSeries.indexOfDateOnOrBefore(endDate);
+        if (from < 0 || to < from) {
+            return trades;
+        }
+
+        boolean isMaRequired = entryRule.isMaRequired() || (Objects.nonNull(exitRule) && exitRule.isMaRequired());
+        long[][] maColumns = isMaRequired ? MovingAverageEngine.calculateColumns(stockSeries) : null;
+
+        int entryIndex = -1;
+        for (int i = from; i <= to; i++) {
+            if (entryIndex < 0) {
+                if (i < to && stockSeries.getClosingPrice(i) != 0 && entryRule.test(stockSeries, i, maColumns)) {
+                    entryIndex = i;
+                }
+                continue;
+            }
+            if (stockSeries.getClosingPrice(i) == NULL_VALUE) {
+                continue;
+            }
+
+            String exitReason = getExitReason(stockSeries, entryIndex, i, maColumns);
+            if (Objects.nonNull(exitReason)) {
+                trades.add(toTrade(stockSeries, entryIndex, i, exitReason));
+                entryIndex = -1;
+            }
+        }
+        if (entryIndex >= 0) {
+            int lastIndex = to;
+            while (lastIndex > entryIndex && stockSeries.getClosingPrice(lastIndex) == NULL_VALUE) {
+                lastIndex--;
+            }
+            trades.add(toTrade(stockSeries, entryIndex, lastIndex, "end"));
+        }
+        return trades;
+    }
+
+    /**
+     * 依停損 停利 出場條件 持有天數順序判斷是否出場
+     *
+     * @return 出場原因, 不出場時為null
+     */
+    private String getExitReason(StockSeries stockSeries, int entryIndex, int index, long[][] maColumns) {
+        long entryPrice = stockSeries.getClosingPrice(entryIndex);
+        if (entryPrice == 0 || entryPrice == NULL_VALUE) {
+            return null;
+        }
+        long ratio = StockSeries.toRatio(stockSeries.getClosingPrice(index), entryPrice);
+        if (ratio <= stopLossThreshold) {
+            return "stopLoss";
+        }
+        if (ratio >= takeProfitThreshold) {
+            return "takeProfit";
+        }
+        if (Objects.nonNull(exitRule) && exitRule.test(stockSeries, index, maColumns)) {
+            return "exitRule";
+        }
+        if (holdingDays > 0 && index - entryIndex >= holdingDays) {
+            return "holdingDays";
+        }
+        return null;
+    }
+
+    private BacktestTrade toTrade(StockSeries stockSeries, int entryIndex, int exitIndex, String exitReason) {
+        long entryPrice = stockSeries.getClosingPrice(entryIndex);
+        long exitPrice = stockSeries.getClosingPrice(exitIndex);
+
+        BacktestTrade trade = new BacktestTrade();
+        trade.setCode(stockSeries.getCode());
+        trade.setEntryDate(stockSeries.getDate(entryIndex));
+        trade.setEntryPrice(StockSeries.toDecimal(entryPrice, stockSeries.getPriceScale()));
+        trade.setExitDate(stockSeries.getDate(exitIndex));
+        trade.setExitPrice(StockSeries.toDecimal(exitPrice, stockSeries.getPriceScale()));
+        trade.setHoldingDays(exitIndex - entryIndex);
+        trade.setReturnRate(BigDecimal.valueOf(StockSeries.toRatio(exitPrice, entryPrice), 2));
+        trade.setExitReason(exitReason);
+        return trade;
+    }
+
+    private class BacktestTask extends RecursiveTask<List<BacktestTrade>> {
+        private final List<StockSeries> stockSeriesList;
+        private final int from;
+        private final int to;
+
+        BacktestTask(List<StockSeries> stockSeriesList, int from, int to) {
+            this.stockSeriesList = stockSeriesList;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<BacktestTrade> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                List<BacktestTrade> trades = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    trades.addAll(run(stockSeriesList.get(i)));
+                }
+                return trades;
+            }
+            int middle = (from + to) >>> 1;
+            BacktestTask left = new BacktestTask(stockSeriesList, from, middle);
+            left.fork();
+            List<BacktestTrade> rightTrades = new BacktestTask(stockSeriesList, middle, to).compute();
+            List<BacktestTrade> trades = left.join();
+            trades.addAll(rightTrades);
+            return trades;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.CandlestickType;
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.models.StockSeries;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.custom.stocksearcher.models.StockSeries.NULL_VALUE;
+
+/**
+ * 回測用的單日條件, 由CodeParam編譯為定點數門檻
+ * 判斷邏輯與StockScreener的priceRange calcLimit candlestickType maCompare相同, 直接讀取StockSeries欄位
+ */
+public class BacktestRule {
+    /**
+     * MA比較目標不使用
+     */
+    static final int MA_NONE = -1;
+    /**
+     * 無法辨識的MA比較目標, 與篩選相同視為0
+     */
+    static final int MA_UNKNOWN = -2;
+
+    private final boolean hasPriceRange;
+    private final long priceLowLimit;
+    private final long priceHighLimit;
+    private final boolean hasOpenCalcLimit;
+    private final long openCalcThreshold;
+    private final boolean hasCloseCalcLimit;
+    private final long closeCalcThreshold;
+    private final Set<CandlestickType> candlestickTypes;
+    private final int maHigherIndex;
+    private final int maLowerIndex;
+
+    private BacktestRule(CodeParam codeParam) {
+        BigDecimal low = Optional.ofNullable(codeParam.getPriceLowLimit()).orElse(BigDecimal.ZERO);
+        BigDecimal high = Optional.ofNullable(codeParam.getPriceHighLimit()).orElse(BigDecimal.ZERO);
+        this.hasPriceRange = low.signum() != 0 || high.signum() != 0;
+        this.priceLowLimit = StockSeries.toFixed(low);
+        this.priceHighLimit = high.signum() > 0 ? StockSeries.toFixed(high) : Long.MAX_VALUE;
+
+        this.hasOpenCalcLimit = Objects.nonNull(codeParam.getLastOpenCalcLimit());
+        this.openCalcThreshold = hasOpenCalcLimit ? StockSeries.toRatioThreshold(codeParam.getLastOpenCalcLimit()) : 0;
+        this.hasCloseCalcLimit = Objects.nonNull(codeParam.getLastCloseCalcLimit());
+        this.closeCalcThreshold = hasCloseCalcLimit ? StockSeries.toRatioThreshold(codeParam.getLastCloseCalcLimit()) : 0;
+
+        List<String> candlestickTypeList = codeParam.getCandlestickTypeList();
+        if (Objects.isNull(candlestickTypeList) || candlestickTypeList.isEmpty()) {
+            this.candlestickTypes = null;
+        } else {
+            Set<CandlestickType> types = EnumSet.noneOf(CandlestickType.class);
+            Arrays.stream(CandlestickType.values())
+                    .filter(candlestickType -> candlestickTypeList.contains(candlestickType.getName()))
+                    .forEach(types::add);
+            this.candlestickTypes = types;
+        }
+
+        this.maHigherIndex = toMaIndex(codeParam.getClosingPriceCompareTargetHigher());
+        this.maLowerIndex = toMaIndex(codeParam.getClosingPriceCompareTargetLower());
+    }
+
+    /**
+     * 編譯條件
+     * 回測逐日判斷, 不支援需要區間統計或另外查詢的條件(bumpy tradeVolumeLimit screenExpression)
+     *
+     * @param codeParam 條件, null代表無條件
+     * @return BacktestRule, codeParam為null時為null
+     */
+    public static BacktestRule of(CodeParam codeParam) {
+        if (Objects.isNull(codeParam)) {
+            return null;
+        }
+        String screenExpression = codeParam.getScreenExpression();
+        if (Objects.nonNull(screenExpression) && !screenExpression.isBlank()) {
+            throw new IllegalArgumentException("screenExpression is not supported in backtest");
+        }
+        return new BacktestRule(codeParam);
+    }
+
+    /**
+     * 是否需要MA欄位
+     *
+     * @return boolean
+     */
+    public boolean isMaRequired() {
+        return maHigherIndex != MA_NONE || maLowerIndex != MA_NONE;
+    }
+
+    /**
+     * 判斷第index筆是否符合條件
+     *
+     * @param stockSeries 欄式股價資料
+     * @param index       第幾筆
+     * @param maColumns   依MovingAverageEngine.PERIODS順序的MA(定點數), 不需MA時可為null
+     * @return boolean
+     */
+    public boolean test(StockSeries stockSeries, int index, long[][] maColumns) {
+        long openingPrice = stockSeries.getOpeningPrice(index);
+        long highestPrice = stockSeries.getHighestPrice(index);
+        long lowestPrice = stockSeries.getLowestPrice(index);
+        long closingPrice = stockSeries.getClosingPrice(index);
+        if (openingPrice == NULL_VALUE || highestPrice == NULL_VALUE || lowestPrice == NULL_VALUE || closingPrice == NULL_VALUE) {
+            return false;
+        }
+
+        if (hasPriceRange && (closingPrice < priceLowLimit || closingPrice > priceHighLimit)) {
+            return false;
+        }
+        if ((hasOpenCalcLimit || hasCloseCalcLimit) && lowestPrice == 0) {
+            return false;
+        }
+        if (hasOpenCalcLimit && StockSeries.toRatio(openingPrice, lowestPrice) < openCalcThreshold) {
+            return false;
+        }
+        if (hasCloseCalcLimit && StockSeries.toRatio(closingPrice, lowestPrice) < closeCalcThreshold) {
+            return false;
+        }
+        if (Objects.nonNull(candlestickTypes)
+                && !candlestickTypes.contains(CandlestickClassifier.classify(openingPrice, highestPrice, lowestPrice, closingPrice))) {
+            return false;
+        }
+        if (maHigherIndex != MA_NONE && closingPrice < getMa(maColumns, maHigherIndex, index)) {
+            return false;
+        }
+        return maLowerIndex == MA_NONE || closingPrice <= getMa(maColumns, maLowerIndex, index);
+    }
+
+    private long getMa(long[][] maColumns, int maIndex, int index) {
+        return maIndex == MA_UNKNOWN ? 0L : maColumns[maIndex][index];
+    }
+
+    private static int toMaIndex(String maTarget) {
+        if (Objects.isNull(maTarget) || "none".equals(maTarget)) {
+            return MA_NONE;
+        }
+        for (int i = 0; i < MovingAverageEngine.PERIODS.length; i++) {
+            if (("MA" + MovingAverageEngine.PERIODS[i]).equals(maTarget)) {
+                return i;
+            }
+        }
+        return MA_UNKNOWN;
+    }
+}
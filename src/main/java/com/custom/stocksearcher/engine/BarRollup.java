@@ -0,0 +1,74 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.Timeframe;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 日K彙總為週K/月K
+ * 依日期排序的日K單次走訪, 同一週期的資料相鄰, 只暫存目前週期
+ */
+public final class BarRollup {
+
+    private BarRollup() {
+    }
+
+    /**
+     * 彙總日K
+     *
+     * @param stockDataFlux 依日期排序的日K
+     * @param timeframe     週期
+     * @return 依日期排序的週期K
+     */
+    public static Flux<StockData> rollup(Flux<StockData> stockDataFlux, Timeframe timeframe) {
+        if (timeframe == Timeframe.DAY) {
+            return stockDataFlux;
+        }
+        return stockDataFlux
+                .bufferUntilChanged(stockData -> timeframe.getPeriodStart(stockData.getDate()))
+                .map(BarRollup::merge);
+    }
+
+    /**
+     * 同一週期的日K合併為一筆
+     * 日期為週期內最後交易日, 開盤取第一筆, 收盤取最後一筆, 最高最低取極值,
+     * 成交量/成交金額/成交筆數/漲跌為加總
+     *
+     * @param stockDataList 同一週期依日期排序的日K
+     * @return 週期K
+     */
+    public static StockData merge(List<StockData> stockDataList) {
+        StockData first = stockDataList.get(0);
+        StockData last = stockDataList.get(stockDataList.size() - 1);
+
+        StockData bar = new StockData();
+        bar.setDate(last.getDate());
+        bar.setOpeningPrice(first.getOpeningPrice());
+        bar.setClosingPrice(last.getClosingPrice());
+        for (StockData stockData : stockDataList) {
+            bar.setHighestPrice(max(bar.getHighestPrice(), stockData.getHighestPrice()));
+            bar.setLowestPrice(min(bar.getLowestPrice(), stockData.getLowestPrice()));
+            bar.setTradeVolume(sum(bar.getTradeVolume(), stockData.getTradeVolume()));
+            bar.setTradeValue(sum(bar.getTradeValue(), stockData.getTradeValue()));
+            bar.setTransaction(sum(bar.getTransaction(), stockData.getTransaction()));
+            bar.setChange(sum(bar.getChange(), stockData.getChange()));
+        }
+        return bar;
+    }
+
+    private static BigDecimal max(BigDecimal a, BigDecimal b) {
+        return Objects.isNull(a) ? b : Objects.isNull(b) ? a : a.max(b);
+    }
+
+    private static BigDecimal min(BigDecimal a, BigDecimal b) {
+        return Objects.isNull(a) ? b : Objects.isNull(b) ? a : a.min(b);
+    }
+
+    private static BigDecimal sum(BigDecimal a, BigDecimal b) {
+        return Objects.isNull(a) ? b : Objects.isNull(b) ? a : a.add(b);
+    }
+}
@@ -0,0 +1,55 @@
+package com.custom.stocksearcher.engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 以固定大小heap保留前K筆資料
+ * heap頂端為目前第K名, 新資料優於第K名時才替換, 記憶體用量固定為K
+ *
+ * @param <T> 資料型別
+ */
+public class BoundedTopK<T> {
+    private final int k;
+    private final Comparator<T> comparator;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param k          保留筆數
+     * @param comparator 排序方式, 排越前面越優先
+     */
+    public BoundedTopK(int k, Comparator<T> comparator) {
+        this.k = k;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<>(k + 1, comparator.reversed());
+    }
+
+    /**
+     * 加入一筆資料
+     *
+     * @param element 資料
+     * @return this
+     */
+    public BoundedTopK<T> offer(T element) {
+        if (heap.size() < k) {
+            heap.offer(element);
+        } else if (comparator.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.offer(element);
+        }
+        return this;
+    }
+
+    /**
+     * 取得排序後結果
+     *
+     * @return 依comparator排序的前K筆
+     */
+    public List<T> toSortedList() {
+        List<T> result = new ArrayList<>(heap);
+        result.sort(comparator);
+        return result;
+    }
+}
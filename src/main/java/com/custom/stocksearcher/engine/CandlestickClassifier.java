@@ -0,0 +1,90 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.CandlestickType;
+
+import java.math.BigDecimal;
+
+import static com.custom.stocksearcher.constant.Constant.CYLINDER_LIMIT;
+import static com.custom.stocksearcher.constant.Constant.HAMMER_LIMIT;
+
+/**
+ * 日K型態判斷(定點數版本)
+ * 價格皆為相同倍率的定點數, 全程僅使用long運算, 不產生物件
+ * 影線/實體比例取小數4位無條件捨去, 與BigDecimal版本判斷結果一致
+ */
+public final class CandlestickClassifier {
+    private static final int RATIO_SCALE = 4;
+    private static final long RATIO_ONE = 10_000L;
+    private static final long HAMMER_RATIO = toRatio(HAMMER_LIMIT);
+    private static final long CYLINDER_RATIO = toRatio(CYLINDER_LIMIT);
+
+    private CandlestickClassifier() {
+    }
+
+    /**
+     * 判斷日K型態
+     *
+     * @param openingPrice 開盤價(定點數)
+     * @param highestPrice 最高價(定點數)
+     * @param lowestPrice  最低價(定點數)
+     * @param closingPrice 收盤價(定點數)
+     * @return CandlestickType
+     */
+    public static CandlestickType classify(long openingPrice, long highestPrice, long lowestPrice, long closingPrice) {
+        long body = openingPrice - closingPrice;
+        long upperShadowLine = highestPrice - Math.max(openingPrice, closingPrice);
+        long lowerShadowLine = Math.min(openingPrice, closingPrice) - lowestPrice;
+
+        if (body == 0) {
+            return blackCharge(upperShadowLine, lowerShadowLine);
+        }
+
+        long bodyShadowRatio = Math.floorDiv(Math.max(upperShadowLine, lowerShadowLine) * RATIO_ONE, Math.abs(body));
+        boolean isShadowLineSameLong = upperShadowLine == lowerShadowLine;
+        boolean isUpperShadowLineLong = upperShadowLine > lowerShadowLine;
+        boolean isHammer = bodyShadowRatio > HAMMER_RATIO;
+        boolean isCylinder = bodyShadowRatio > CYLINDER_RATIO;
+
+        if (body < 0) {
+            if (isHammer) {
+                return isShadowLineSameLong ? CandlestickType.BullishHammer
+                        : isUpperShadowLineLong ? CandlestickType.BullishUpperHammer : CandlestickType.BullishLowerHammer;
+            } else if (isCylinder) {
+                return isShadowLineSameLong ? CandlestickType.BullishHighWave
+                        : isUpperShadowLineLong ? CandlestickType.BullishUpperShadow : CandlestickType.BullishLowerShadow;
+            }
+            return CandlestickType.BullishLine;
+        }
+
+        if (isHammer) {
+            return isShadowLineSameLong ? CandlestickType.BearishHammer
+                    : isUpperShadowLineLong ? CandlestickType.BearishUpperHammer : CandlestickType.BearishLowerHammer;
+        } else if (isCylinder) {
+            return isShadowLineSameLong ? CandlestickType.BearishHighWave
+                    : isUpperShadowLineLong ? CandlestickType.BearishUpperShadow : CandlestickType.BearishLowerShadow;
+        }
+        return CandlestickType.BearishLine;
+    }
+
+    /**
+     * 開盤等於收盤時依上下影線判斷
+     *
+     * @param upperShadowLine 上影線
+     * @param lowerShadowLine 下影線
+     * @return CandlestickType
+     */
+    private static CandlestickType blackCharge(long upperShadowLine, long lowerShadowLine) {
+        if (upperShadowLine == 0) {
+            return lowerShadowLine == 0 ? CandlestickType.DashLine : CandlestickType.TLine;
+        } else if (lowerShadowLine == 0) {
+            return CandlestickType.InvertedTLine;
+        } else if (upperShadowLine == lowerShadowLine) {
+            return CandlestickType.CrossLine;
+        }
+        return upperShadowLine > lowerShadowLine ? CandlestickType.CrossLineUp : CandlestickType.CrossLineDown;
+    }
+
+    private static long toRatio(BigDecimal limit) {
+        return limit.movePointRight(RATIO_SCALE).longValueExact();
+    }
+}
@@ -0,0 +1,158 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.CandlestickType;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 多根K棒型態
+ * 以每根K棒的CandlestickType序列加上K棒間的相對價格條件定義, 價格皆為定點數
+ */
+public enum CandlestickPattern {
+    /**
+     * 陰線後接實體完全包覆前一根的陽線
+     */
+    BULLISH_ENGULFING("多頭吞噬", List.of(TypeGroup.BEARISH, TypeGroup.BULLISH),
+            (o, h, l, c, s) -> o[s + 1] <= c[s] && c[s + 1] >= o[s] && c[s + 1] - o[s + 1] > o[s] - c[s]),
+    /**
+     * 陽線後接實體完全包覆前一根的陰線
+     */
+    BEARISH_ENGULFING("空頭吞噬", List.of(TypeGroup.BULLISH, TypeGroup.BEARISH),
+            (o, h, l, c, s) -> o[s + 1] >= c[s] && c[s + 1] <= o[s] && o[s + 1] - c[s + 1] > c[s] - o[s]),
+    /**
+     * 陰線, 實體在其收盤下方的小實體, 收盤高於第一根實體中點的陽線
+     */
+    MORNING_STAR("晨星", List.of(TypeGroup.BEARISH, TypeGroup.SMALL_BODY, TypeGroup.BULLISH),
+            (o, h, l, c, s) -> Math.max(o[s + 1], c[s + 1]) <= c[s] && c[s + 2] * 2 > o[s] + c[s]),
+    /**
+     * 陽線, 實體在其收盤上方的小實體, 收盤低於第一根實體中點的陰線
+     */
+    EVENING_STAR("夜星", List.of(TypeGroup.BULLISH, TypeGroup.SMALL_BODY, TypeGroup.BEARISH),
+            (o, h, l, c, s) -> Math.min(o[s + 1], c[s + 1]) >= c[s] && c[s + 2] * 2 < o[s] + c[s]),
+    /**
+     * 連續三根陽線, 收盤逐日走高, 開盤在前一根實體內
+     */
+    THREE_WHITE_SOLDIERS("紅三兵", List.of(TypeGroup.BULLISH, TypeGroup.BULLISH, TypeGroup.BULLISH),
+            (o, h, l, c, s) -> c[s + 1] > c[s] && c[s + 2] > c[s + 1]
+                    && o[s + 1] >= o[s] && o[s + 1] <= c[s]
+                    && o[s + 2] >= o[s + 1] && o[s + 2] <= c[s + 1]),
+    /**
+     * 連續三根陰線, 收盤逐日走低, 開盤在前一根實體內
+     */
+    THREE_BLACK_CROWS("黑三兵", List.of(TypeGroup.BEARISH, TypeGroup.BEARISH, TypeGroup.BEARISH),
+            (o, h, l, c, s) -> c[s + 1] < c[s] && c[s + 2] < c[s + 1]
+                    && o[s + 1] <= o[s] && o[s + 1] >= c[s]
+                    && o[s + 2] <= o[s + 1] && o[s + 2] >= c[s + 1]),
+    /**
+     * 最高價低於且最低價高於前一根
+     */
+    INSIDE_BAR("內包線", List.of(TypeGroup.ANY, TypeGroup.ANY),
+            (o, h, l, c, s) -> h[s + 1] < h[s] && l[s + 1] > l[s]);
+
+    /**
+     * 所有型態中最多的K棒數
+     */
+    public static final int MAX_LENGTH = 3;
+
+    private final String name;
+    private final List<Set<CandlestickType>> sequence;
+    private final PriceCondition priceCondition;
+
+    CandlestickPattern(String name, List<Set<CandlestickType>> sequence, PriceCondition priceCondition) {
+        this.name = name;
+        this.sequence = sequence;
+        this.priceCondition = priceCondition;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * K棒數
+     *
+     * @return int
+     */
+    public int getLength() {
+        return sequence.size();
+    }
+
+    /**
+     * 判斷以end結尾的K棒是否形成此型態
+     *
+     * @param candlestickTypes 與價格相同index的日K型態
+     * @param o                開盤價
+     * @param h                最高價
+     * @param l                最低價
+     * @param c                收盤價
+     * @param end              最後一根的index
+     * @return boolean
+     */
+    boolean matches(CandlestickType[] candlestickTypes, long[] o, long[] h, long[] l, long[] c, int end) {
+        int start = end - sequence.size() + 1;
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < sequence.size(); i++) {
+            if (!sequence.get(i).contains(candlestickTypes[start + i])) {
+                return false;
+            }
+        }
+        return priceCondition.test(o, h, l, c, start);
+    }
+
+    /**
+     * 依enum名稱或中文名稱取得型態
+     *
+     * @param name 名稱
+     * @return CandlestickPattern
+     */
+    public static CandlestickPattern of(String name) {
+        return Arrays.stream(values())
+                .filter(pattern -> pattern.name().equalsIgnoreCase(name.trim()) || pattern.name.equals(name.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("unknown candlestick pattern: " + name));
+    }
+
+    /**
+     * K棒間的相對價格條件
+     */
+    @FunctionalInterface
+    interface PriceCondition {
+        /**
+         * @param o     開盤價
+         * @param h     最高價
+         * @param l     最低價
+         * @param c     收盤價
+         * @param start 第一根的index
+         * @return boolean
+         */
+        boolean test(long[] o, long[] h, long[] l, long[] c, int start);
+    }
+
+    /**
+     * 型態序列使用的CandlestickType分類
+     */
+    private static final class TypeGroup {
+        static final Set<CandlestickType> BULLISH = EnumSet.of(
+                CandlestickType.BullishLine, CandlestickType.BullishHighWave,
+                CandlestickType.BullishUpperShadow, CandlestickType.BullishLowerShadow,
+                CandlestickType.BullishHammer, CandlestickType.BullishUpperHammer, CandlestickType.BullishLowerHammer);
+        static final Set<CandlestickType> BEARISH = EnumSet.of(
+                CandlestickType.BearishLine, CandlestickType.BearishHighWave,
+                CandlestickType.BearishUpperShadow, CandlestickType.BearishLowerShadow,
+                CandlestickType.BearishHammer, CandlestickType.BearishUpperHammer, CandlestickType.BearishLowerHammer);
+        /**
+         * 十字線類與影線遠長於實體的錘線
+         */
+        static final Set<CandlestickType> SMALL_BODY = EnumSet.of(
+                CandlestickType.CrossLine, CandlestickType.CrossLineUp, CandlestickType.CrossLineDown,
+                CandlestickType.DashLine, CandlestickType.TLine, CandlestickType.InvertedTLine,
+                CandlestickType.BullishHammer, CandlestickType.BullishUpperHammer, CandlestickType.BullishLowerHammer,
+                CandlestickType.BearishHammer, CandlestickType.BearishUpperHammer, CandlestickType.BearishLowerHammer);
+        static final Set<CandlestickType> ANY = EnumSet.allOf(CandlestickType.class);
+    }
+}
@@ -0,0 +1,66 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.CandlestickType;
+import com.custom.stocksearcher.models.StockPatternResult;
+import com.custom.stocksearcher.models.StockSeries;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.custom.stocksearcher.models.StockSeries.NULL_VALUE;
+
+/**
+ * 多根K棒型態比對
+ * 依序走訪一次StockSeries, 每根K棒只判斷一次日K型態, 以結尾在該根的滑動視窗比對所有型態
+ * 價格先複製至比對區間大小的陣列, 不直接使用StockSeries的欄位
+ */
+public final class CandlestickPatternMatcher {
+
+    private CandlestickPatternMatcher() {
+    }
+
+    /**
+     * 找出結尾日期在from~to之間的型態
+     *
+     * @param stockSeries 欄式股價資料
+     * @param patterns    要比對的型態
+     * @param from        第一個結尾index(含)
+     * @param to          最後一個結尾index(含)
+     * @return 依日期排序的結果
+     */
+    public static List<StockPatternResult> match(StockSeries stockSeries, Collection<CandlestickPattern> patterns, int from, int to) {
+        List<StockPatternResult> results = new ArrayList<>();
+        if (from < 0 || to < from || patterns.isEmpty()) {
+            return results;
+        }
+
+        int base = Math.max(0, from - CandlestickPattern.MAX_LENGTH + 1);
+        int length = to - base + 1;
+        long[] o = new long[length];
+        long[] h = new long[length];
+        long[] l = new long[length];
+        long[] c = new long[length];
+        CandlestickType[] candlestickTypes = new CandlestickType[length];
+        for (int k = 0; k < length; k++) {
+            int i = base + k;
+            o[k] = stockSeries.getOpeningPrice(i);
+            h[k] = stockSeries.getHighestPrice(i);
+            l[k] = stockSeries.getLowestPrice(i);
+            c[k] = stockSeries.getClosingPrice(i);
+            if (o[k] != NULL_VALUE && h[k] != NULL_VALUE && l[k] != NULL_VALUE && c[k] != NULL_VALUE) {
+                candlestickTypes[k] = CandlestickClassifier.classify(o[k], h[k], l[k], c[k]);
+            }
+            if (i < from) {
+                continue;
+            }
+            for (CandlestickPattern pattern : patterns) {
+                if (pattern.matches(candlestickTypes, o, h, l, c, k)) {
+                    results.add(new StockPatternResult(stockSeries.getCode(), stockSeries.getDate(i - pattern.getLength() + 1),
+                            stockSeries.getDate(i), pattern, pattern.getName()));
+                }
+            }
+        }
+        return results;
+    }
+}
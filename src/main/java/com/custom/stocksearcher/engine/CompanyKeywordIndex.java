@@ -0,0 +1,141 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.CompanyStatus;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 公司關鍵字索引
+ * 對股票代號與公司名稱建立bigram索引(中文以單字為單位, 即CJK bigram)
+ * 查詢時取交集後再確認是否包含關鍵字, 並依符合程度排序
+ */
+public class CompanyKeywordIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final CompanyStatus[] companies;
+    private final String[] normalizedCodes;
+    private final String[] normalizedNames;
+    private final Map<String, int[]> postings;
+
+    public CompanyKeywordIndex(Collection<CompanyStatus> companyStatuses) {
+        companies = companyStatuses.toArray(CompanyStatus[]::new);
+        normalizedCodes = new String[companies.length];
+        normalizedNames = new String[companies.length];
+
+        Map<String, List<Integer>> gramMap = new HashMap<>();
+        for (int i = 0; i < companies.length; i++) {
+            normalizedCodes[i] = normalize(companies[i].getCode());
+            normalizedNames[i] = normalize(companies[i].getName());
+
+            Set<String> grams = new HashSet<>();
+            grams.addAll(toBigrams(normalizedCodes[i]));
+            grams.addAll(toBigrams(normalizedNames[i]));
+            for (String gram : grams) {
+                gramMap.computeIfAbsent(gram, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        postings = new HashMap<>(gramMap.size() * 2);
+        gramMap.forEach((gram, ids) -> postings.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * 關鍵字查詢
+     * 排序: 代號完全相符 > 代號開頭相符 > 名稱完全相符 > 名稱開頭相符 > 代號包含 > 名稱包含
+     *
+     * @param keyword 關鍵字(至少兩個字)
+     * @param limit   最多筆數
+     * @param filter  額外過濾條件
+     * @return 依符合程度排序的結果
+     */
+    public List<CompanyStatus> search(String keyword, int limit, Predicate<CompanyStatus> filter) {
+        String normalizedKeyword = normalize(keyword);
+        List<String> grams = toBigrams(normalizedKeyword);
+        if (grams.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        int[] candidates = null;
+        for (String gram : grams.stream().distinct().sorted(Comparator.comparingInt(gram -> getPosting(gram).length)).toList()) {
+            candidates = Objects.isNull(candidates) ? getPosting(gram) : intersect(candidates, getPosting(gram));
+            if (candidates.length == 0) {
+                return List.of();
+            }
+        }
+
+        List<int[]> rankedIds = new ArrayList<>();
+        for (int id : candidates) {
+            int rank = rank(id, normalizedKeyword);
+            if (rank >= 0 && filter.test(companies[id])) {
+                rankedIds.add(new int[]{rank, id});
+            }
+        }
+
+        return rankedIds.stream()
+                .sorted(Comparator.<int[]>comparingInt(rankedId -> rankedId[0])
+                        .thenComparing(rankedId -> normalizedCodes[rankedId[1]]))
+                .limit(limit)
+                .map(rankedId -> companies[rankedId[1]])
+                .toList();
+    }
+
+    private int rank(int id, String keyword) {
+        String code = normalizedCodes[id];
+        String name = normalizedNames[id];
+        if (code.equals(keyword)) {
+            return 0;
+        } else if (code.startsWith(keyword)) {
+            return 1;
+        } else if (name.equals(keyword)) {
+            return 2;
+        } else if (name.startsWith(keyword)) {
+            return 3;
+        } else if (code.contains(keyword)) {
+            return 4;
+        } else if (name.contains(keyword)) {
+            return 5;
+        }
+        return -1;
+    }
+
+    private int[] getPosting(String gram) {
+        return postings.getOrDefault(gram, EMPTY);
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] result = new int[Math.min(left.length, right.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] == right[j]) {
+                result[size++] = left[i];
+                i++;
+                j++;
+            } else if (left[i] < right[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static String normalize(String text) {
+        return Objects.isNull(text) ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 以code point切出bigram
+     *
+     * @param text 已正規化文字
+     * @return bigram list
+     */
+    private static List<String> toBigrams(String text) {
+        int[] codePoints = text.codePoints().toArray();
+        List<String> grams = new ArrayList<>(Math.max(codePoints.length - 1, 0));
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 2));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,65 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockIndicatorResult;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * 技術指標計算引擎
+ * 依日期順序走訪一次股價資料, 以IndicatorState同時計算EMA MACD RSI KD 布林通道
+ */
+@Component
+public class IndicatorEngine {
+
+    /**
+     * 計算技術指標
+     * 輸入需依日期排序, beginDate之前的資料只用於暖機
+     *
+     * @param stockDataFlux 股價資料flux
+     * @param code          股票代號
+     * @param beginDate     開始日期(含)
+     * @param endDate       結束日期(含)
+     * @return 計算結果StockIndicatorResult Flux
+     */
+    public Flux<StockIndicatorResult> calculate(Flux<StockData> stockDataFlux, String code, LocalDate beginDate, LocalDate endDate) {
+        return Flux.defer(() -> {
+            IndicatorState indicatorState = new IndicatorState();
+            return stockDataFlux
+                    .filter(this::isValid)
+                    .takeWhile(stockData -> !stockData.getDate().isAfter(endDate))
+                    .handle((stockData, sink) -> {
+                        indicatorState.next(stockData);
+                        if (!stockData.getDate().isBefore(beginDate)) {
+                            sink.next(indicatorState.toResult(code));
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 由既有狀態接續加入資料
+     *
+     * @param indicatorState 既有狀態, 不會被修改
+     * @param stockDataList  依日期排序的新資料, 不晚於既有狀態最後日期者略過
+     * @return 新狀態
+     */
+    public IndicatorState resume(IndicatorState indicatorState, Iterable<StockData> stockDataList) {
+        IndicatorState resumedState = indicatorState.copy();
+        for (StockData stockData : stockDataList) {
+            if (isValid(stockData) && (Objects.isNull(resumedState.getLastDate()) || stockData.getDate().isAfter(resumedState.getLastDate()))) {
+                resumedState.next(stockData);
+            }
+        }
+        return resumedState;
+    }
+
+    private boolean isValid(StockData stockData) {
+        return Objects.nonNull(stockData.getClosingPrice())
+                && Objects.nonNull(stockData.getHighestPrice())
+                && Objects.nonNull(stockData.getLowestPrice());
+    }
+}
@@ -0,0 +1,224 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockIndicatorResult;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * 技術指標的計算狀態
+ * 每個指標只保存固定大小的狀態(EMA值, RSI平均漲跌幅, KD與布林通道的環狀陣列),
+ * 依日期順序逐筆next即可接續計算, 不需重新走訪歷史資料
+ * 非thread safe, 共用時需先copy
+ */
+public class IndicatorState {
+    private static final int EMA_SHORT = 12;
+    private static final int EMA_LONG = 26;
+    private static final int MACD_SIGNAL = 9;
+    private static final int RSI_SHORT = 6;
+    private static final int RSI_LONG = 12;
+    private static final int KD_PERIOD = 9;
+    private static final int BOLLINGER_PERIOD = 20;
+    private static final double BOLLINGER_WIDTH = 2;
+    private static final int PRICE_SCALE = 4;
+    private static final int PERCENT_SCALE = 2;
+
+    private LocalDate lastDate;
+    private BigDecimal lastClosingPrice;
+    private double lastClose = Double.NaN;
+    private int count;
+
+    private double emaShort;
+    private double emaLong;
+    private double dea;
+
+    private final Rsi rsiShort;
+    private final Rsi rsiLong;
+
+    private final double[] highs;
+    private final double[] lows;
+    private double k = 50;
+    private double d = 50;
+
+    private final double[] closes;
+    private double closeSum;
+
+    public IndicatorState() {
+        this.rsiShort = new Rsi(RSI_SHORT);
+        this.rsiLong = new Rsi(RSI_LONG);
+        this.highs = new double[KD_PERIOD];
+        this.lows = new double[KD_PERIOD];
+        this.closes = new double[BOLLINGER_PERIOD];
+    }
+
+    private IndicatorState(IndicatorState source) {
+        this.lastDate = source.lastDate;
+        this.lastClosingPrice = source.lastClosingPrice;
+        this.lastClose = source.lastClose;
+        this.count = source.count;
+        this.emaShort = source.emaShort;
+        this.emaLong = source.emaLong;
+        this.dea = source.dea;
+        this.rsiShort = source.rsiShort.copy();
+        this.rsiLong = source.rsiLong.copy();
+        this.highs = source.highs.clone();
+        this.lows = source.lows.clone();
+        this.k = source.k;
+        this.d = source.d;
+        this.closes = source.closes.clone();
+        this.closeSum = source.closeSum;
+    }
+
+    /**
+     * 複製目前狀態
+     *
+     * @return IndicatorState
+     */
+    public IndicatorState copy() {
+        return new IndicatorState(this);
+    }
+
+    /**
+     * 加入下一筆資料, 需依日期順序且OHLC不為null
+     *
+     * @param stockData 股價資料
+     */
+    public void next(StockData stockData) {
+        double close = stockData.getClosingPrice().doubleValue();
+        double high = stockData.getHighestPrice().doubleValue();
+        double low = stockData.getLowestPrice().doubleValue();
+
+        if (count == 0) {
+            emaShort = close;
+            emaLong = close;
+        } else {
+            emaShort = ema(emaShort, close, EMA_SHORT);
+            emaLong = ema(emaLong, close, EMA_LONG);
+            rsiShort.next(close - lastClose);
+            rsiLong.next(close - lastClose);
+        }
+        double dif = emaShort - emaLong;
+        dea = count == 0 ? dif : ema(dea, dif, MACD_SIGNAL);
+
+        highs[count % KD_PERIOD] = high;
+        lows[count % KD_PERIOD] = low;
+        int bollingerIndex = count % BOLLINGER_PERIOD;
+        if (count >= BOLLINGER_PERIOD) {
+            closeSum -= closes[bollingerIndex];
+        }
+        closes[bollingerIndex] = close;
+        closeSum += close;
+
+        count++;
+        lastClose = close;
+        lastClosingPrice = stockData.getClosingPrice();
+        lastDate = stockData.getDate();
+
+        if (count >= KD_PERIOD) {
+            double highest = Arrays.stream(highs).max().orElse(high);
+            double lowest = Arrays.stream(lows).min().orElse(low);
+            double rsv = highest == lowest ? 50 : (close - lowest) / (highest - lowest) * 100;
+            k = k * 2 / 3 + rsv / 3;
+            d = d * 2 / 3 + k / 3;
+        }
+    }
+
+    public LocalDate getLastDate() {
+        return lastDate;
+    }
+
+    /**
+     * 目前(最後一筆)的指標值
+     *
+     * @param code 股票代號
+     * @return StockIndicatorResult, 尚無資料時為null
+     */
+    public StockIndicatorResult toResult(String code) {
+        if (count == 0) {
+            return null;
+        }
+        StockIndicatorResult stockIndicatorResult = new StockIndicatorResult();
+        stockIndicatorResult.setCode(code);
+        stockIndicatorResult.setDate(lastDate);
+        stockIndicatorResult.setPrice(lastClosingPrice);
+
+        if (count >= EMA_SHORT) {
+            stockIndicatorResult.setEma12(toDecimal(emaShort, PRICE_SCALE));
+        }
+        if (count >= EMA_LONG) {
+            double dif = emaShort - emaLong;
+            stockIndicatorResult.setEma26(toDecimal(emaLong, PRICE_SCALE));
+            stockIndicatorResult.setDif(toDecimal(dif, PRICE_SCALE));
+            stockIndicatorResult.setMacd(toDecimal(dea, PRICE_SCALE));
+            stockIndicatorResult.setOsc(toDecimal(dif - dea, PRICE_SCALE));
+        }
+        stockIndicatorResult.setRsi6(rsiShort.getValue());
+        stockIndicatorResult.setRsi12(rsiLong.getValue());
+        if (count >= KD_PERIOD) {
+            stockIndicatorResult.setK(toDecimal(k, PERCENT_SCALE));
+            stockIndicatorResult.setD(toDecimal(d, PERCENT_SCALE));
+        }
+        if (count >= BOLLINGER_PERIOD) {
+            double mean = closeSum / BOLLINGER_PERIOD;
+            double variance = 0;
+            for (double close : closes) {
+                variance += (close - mean) * (close - mean);
+            }
+            double width = Math.sqrt(variance / BOLLINGER_PERIOD) * BOLLINGER_WIDTH;
+            stockIndicatorResult.setBollingerMiddle(toDecimal(mean, PRICE_SCALE));
+            stockIndicatorResult.setBollingerUpper(toDecimal(mean + width, PRICE_SCALE));
+            stockIndicatorResult.setBollingerLower(toDecimal(mean - width, PRICE_SCALE));
+        }
+        return stockIndicatorResult;
+    }
+
+    private static double ema(double previous, double value, int period) {
+        return previous + (value - previous) * 2 / (period + 1);
+    }
+
+    private static BigDecimal toDecimal(double value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Wilder平滑的RSI, 前period筆漲跌以簡單平均起始
+     */
+    private static class Rsi {
+        private final int period;
+        private int count;
+        private double averageGain;
+        private double averageLoss;
+
+        Rsi(int period) {
+            this.period = period;
+        }
+
+        void next(double change) {
+            double gain = Math.max(change, 0);
+            double loss = Math.max(-change, 0);
+            count++;
+            int divisor = Math.min(count, period);
+            averageGain += (gain - averageGain) / divisor;
+            averageLoss += (loss - averageLoss) / divisor;
+        }
+
+        BigDecimal getValue() {
+            if (count < period) {
+                return null;
+            }
+            double total = averageGain + averageLoss;
+            return toDecimal(total == 0 ? 50 : averageGain / total * 100, PERCENT_SCALE);
+        }
+
+        Rsi copy() {
+            Rsi rsi = new Rsi(period);
+            rsi.count = count;
+            rsi.averageGain = averageGain;
+            rsi.averageLoss = averageLoss;
+            return rsi;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockMAResult;
+import com.custom.stocksearcher.models.StockSeries;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MA計算引擎
+ * 依日期順序走訪一次股價資料, 以各週期的累計和(running sum)同時計算MA5 MA10 MA20 MA60
+ * 累計和以定點數long保存, 不產生BigDecimal中間值
+ */
+@Component
+public class MovingAverageEngine {
+    /**
+     * 計算週期
+     */
+    public static final int[] PERIODS = {5, 10, 20, 60};
+    private static final int MAX_PERIOD = 60;
+    private static final int MIN_PERIOD = 5;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L};
+
+    /**
+     * 計算MA
+     * 輸入需依日期排序, 輸出亦依日期排序
+     *
+     * @param stockDataFlux 股價資料flux
+     * @param code          股票代號
+     * @param beginDate     開始日期(不含)
+     * @param endDate       結束日期(不含)
+     * @return 計算結果StockMAResult Flux
+     */
+    public Flux<StockMAResult> calculate(Flux<StockData> stockDataFlux, String code, LocalDate beginDate, LocalDate endDate) {
+        LocalDate calcBeginDate = beginDate.minusMonths(3);
+
+        return stockDataFlux
+                .filter(data -> !data.getDate().isBefore(calcBeginDate) && !data.getDate().isAfter(endDate))
+                .collect(() -> new StockSeries.Builder(code, 128), StockSeries.Builder::add)
+                .flatMapIterable(builder -> calculate(builder.build(), code, beginDate, endDate));
+    }
+
+    /**
+     * 以定點數計算MA, 只在輸出時轉為BigDecimal
+     *
+     * @param stockSeries 欄式股價資料
+     * @param code        股票代號
+     * @param beginDate   開始日期(不含)
+     * @param endDate     結束日期(不含)
+     * @return 計算結果, 依日期排序
+     */
+    public List<StockMAResult> calculate(StockSeries stockSeries, String code, LocalDate beginDate, LocalDate endDate) {
+        int from = stockSeries.indexOfDateOnOrAfter(beginDate.minusMonths(3));
+        int to = stockSeries.indexOfDateOnOrBefore(endDate);
+        RunningSum runningSum = new RunningSum(stockSeries.getPriceScale());
+        List<StockMAResult> stockMAResults = new ArrayList<>(Math.max(to - from + 1, 0));
+        for (int i = from; i <= to; i++) {
+            runningSum.next(stockSeries.getClosingPrice(i));
+            LocalDate date = stockSeries.getDate(i);
+            if (runningSum.count >= MIN_PERIOD && date.isAfter(beginDate) && date.isBefore(endDate)) {
+                StockMAResult stockMAResult = new StockMAResult();
+                stockMAResult.setCode(code);
+                stockMAResult.setDate(date);
+                stockMAResult.setPrice(StockSeries.toDecimal(stockSeries.getClosingPrice(i), stockSeries.getPriceScale()));
+                stockMAResult.setMa5(runningSum.getMa(0));
+                stockMAResult.setMa10(runningSum.getMa(1));
+                stockMAResult.setMa20(runningSum.getMa(2));
+                stockMAResult.setMa60(runningSum.getMa(3));
+                stockMAResults.add(stockMAResult);
+            }
+        }
+        return stockMAResults;
+    }
+
+    /**
+     * 計算每一筆的MA(定點數), 供回測逐日比較
+     * 與calculate相同的四捨五入方式, 資料筆數不足週期時為0
+     *
+     * @param stockSeries 欄式股價資料
+     * @return 依PERIODS順序的MA欄位
+     */
+    public static long[][] calculateColumns(StockSeries stockSeries) {
+        long[][] maColumns = new long[PERIODS.length][stockSeries.size()];
+        RunningSum runningSum = new RunningSum(stockSeries.getPriceScale());
+        for (int i = 0; i < stockSeries.size(); i++) {
+            runningSum.next(stockSeries.getClosingPrice(i));
+            for (int periodIndex = 0; periodIndex < PERIODS.length; periodIndex++) {
+                long ma = runningSum.getFixedMa(periodIndex);
+                maColumns[periodIndex][i] = ma == StockSeries.NULL_VALUE ? 0L : ma;
+            }
+        }
+        return maColumns;
+    }
+
+    /**
+     * 各週期定點數累計和, 以環狀陣列保存最近MAX_PERIOD筆收盤價
+     */
+    private static class RunningSum {
+        private final long[] closingPrices = new long[MAX_PERIOD];
+        private final long[] sums = new long[PERIODS.length];
+        private final int priceScale;
+        private int count = 0;
+
+        RunningSum(int priceScale) {
+            this.priceScale = priceScale;
+        }
+
+        /**
+         * 加入一筆收盤價, null視為0
+         *
+         * @param closingPrice 收盤價(定點數)
+         */
+        void next(long closingPrice) {
+            long price = closingPrice == StockSeries.NULL_VALUE ? 0L : closingPrice;
+            for (int i = 0; i < PERIODS.length; i++) {
+                if (count >= PERIODS[i]) {
+                    sums[i] -= closingPrices[(count - PERIODS[i]) % MAX_PERIOD];
+                }
+                sums[i] += price;
+            }
+            closingPrices[count % MAX_PERIOD] = price;
+            count++;
+        }
+
+        /**
+         * 累計和除以週期, 以原始價格小數位數四捨五入
+         *
+         * @param periodIndex 週期index
+         * @return MA, 資料筆數不足週期時為null
+         */
+        BigDecimal getMa(int periodIndex) {
+            return StockSeries.toDecimal(getFixedMa(periodIndex), priceScale);
+        }
+
+        /**
+         * 同getMa, 以定點數回傳
+         *
+         * @param periodIndex 週期index
+         * @return MA(定點數), 資料筆數不足週期時為NULL_VALUE
+         */
+        long getFixedMa(int periodIndex) {
+            int period = PERIODS[periodIndex];
+            if (count < period) {
+                return StockSeries.NULL_VALUE;
+            }
+            long scaleFactor = POWERS_OF_TEN[StockSeries.FIXED_SCALE - priceScale];
+            long divisor = period * scaleFactor;
+            long sum = sums[periodIndex];
+            long ma = sum >= 0 ? (sum * 2 + divisor) / (divisor * 2) : -((-sum * 2 + divisor) / (divisor * 2));
+            return ma * scaleFactor;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.StockSeries;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+import static com.custom.stocksearcher.models.StockSeries.NULL_VALUE;
+
+/**
+ * 區間統計(定點數版本)
+ * 單次走訪StockSeries即取得區間最高價, 最低價, 最低成交量的index, 全程僅使用long比較
+ * 數值相同時以較晚的資料為準
+ */
+@Getter
+public class RangeStatistics {
+    private final StockSeries stockSeries;
+    private int highestIndex = -1;
+    private long highestPrice = NULL_VALUE;
+    private int lowestIndex = -1;
+    private long lowestPrice = NULL_VALUE;
+    private int lowestTradeVolumeIndex = -1;
+
+    private RangeStatistics(StockSeries stockSeries) {
+        this.stockSeries = stockSeries;
+    }
+
+    /**
+     * 計算區間統計
+     *
+     * @param stockSeries 欄式股價資料
+     * @return RangeStatistics
+     */
+    public static RangeStatistics of(StockSeries stockSeries) {
+        RangeStatistics rangeStatistics = new RangeStatistics(stockSeries);
+        for (int i = 0; i < stockSeries.size(); i++) {
+            rangeStatistics.accept(i);
+        }
+        return rangeStatistics;
+    }
+
+    private void accept(int index) {
+        long highest = stockSeries.getHighestPrice(index);
+        long lowest = stockSeries.getLowestPrice(index);
+        long opening = stockSeries.getOpeningPrice(index);
+        long closing = stockSeries.getClosingPrice(index);
+        long dayHighest = max(max(highest, lowest), max(opening, closing));
+        long dayLowest = min(min(highest, lowest), min(opening, closing));
+
+        if (dayHighest != NULL_VALUE && (highestIndex < 0 || dayHighest >= highestPrice)) {
+            highestIndex = index;
+            highestPrice = dayHighest;
+        }
+        if (dayLowest != NULL_VALUE && (lowestIndex < 0 || dayLowest <= lowestPrice)) {
+            lowestIndex = index;
+            lowestPrice = dayLowest;
+        }
+
+        long tradeVolume = stockSeries.getTradeVolume(index);
+        if (tradeVolume != NULL_VALUE
+                && (lowestTradeVolumeIndex < 0 || tradeVolume <= stockSeries.getTradeVolume(lowestTradeVolumeIndex))) {
+            lowestTradeVolumeIndex = index;
+        }
+    }
+
+    /**
+     * 忽略null(NULL_VALUE)的最大值
+     */
+    private static long max(long a, long b) {
+        return a == NULL_VALUE ? b : b == NULL_VALUE ? a : Math.max(a, b);
+    }
+
+    /**
+     * 忽略null(NULL_VALUE)的最小值
+     */
+    private static long min(long a, long b) {
+        return a == NULL_VALUE ? b : b == NULL_VALUE ? a : Math.min(a, b);
+    }
+
+    /**
+     * 是否已取得完整統計結果
+     *
+     * @return boolean
+     */
+    public boolean isComplete() {
+        return highestIndex >= 0 && lowestIndex >= 0 && lowestTradeVolumeIndex >= 0;
+    }
+
+    /**
+     * 區間漲幅比例, (最高-最低)/最低 取小數4位無條件捨去
+     *
+     * @return 定點數比例(放大10^4)
+     */
+    public long getRangeRatio() {
+        return StockSeries.toRatio(highestPrice, lowestPrice);
+    }
+
+    public BigDecimal getHighestPriceDecimal() {
+        return StockSeries.toDecimal(highestPrice, stockSeries.getPriceScale());
+    }
+
+    public BigDecimal getLowestPriceDecimal() {
+        return StockSeries.toDecimal(lowestPrice, stockSeries.getPriceScale());
+    }
+
+    public BigDecimal getLowestTradeVolume() {
+        return BigDecimal.valueOf(stockSeries.getTradeVolume(lowestTradeVolumeIndex));
+    }
+}
@@ -0,0 +1,45 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.CandlestickType;
+import com.custom.stocksearcher.models.StockBumpy;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockIndicatorResult;
+import com.custom.stocksearcher.models.StockMAResult;
+import com.custom.stocksearcher.models.StockSeries;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Objects;
+
+/**
+ * 單一股票篩選時的資料, 隨階段逐步補上
+ */
+@Getter
+@Setter
+public class ScreenContext {
+    private final StockData lastStockData;
+    private CandlestickType candlestickType;
+    private StockBumpy stockBumpy;
+    private StockMAResult stockMAResult;
+    private StockIndicatorResult stockIndicatorResult;
+
+    public ScreenContext(StockData lastStockData) {
+        this.lastStockData = lastStockData;
+    }
+
+    /**
+     * 最後一筆日K型態, 需要時才判斷
+     *
+     * @return CandlestickType
+     */
+    public CandlestickType getCandlestickType() {
+        if (Objects.isNull(candlestickType)) {
+            candlestickType = CandlestickClassifier.classify(
+                    StockSeries.toFixed(lastStockData.getOpeningPrice()),
+                    StockSeries.toFixed(lastStockData.getHighestPrice()),
+                    StockSeries.toFixed(lastStockData.getLowestPrice()),
+                    StockSeries.toFixed(lastStockData.getClosingPrice()));
+        }
+        return candlestickType;
+    }
+}
@@ -0,0 +1,515 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.CandlestickType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 篩選語法解析
+ * <pre>
+ * expression := or
+ * or         := and ('OR' and)*
+ * and        := unary ('AND' unary)*
+ * unary      := 'NOT' unary | '(' expression ')' | comparison
+ * comparison := 'candlestick' 'IN' '(' type (',' type)* ')' | operand ('>'|'>='|'<'|'<='|'=='|'!=') operand
+ * operand    := term (('+'|'-') term)*
+ * term       := factor (('*'|'/') factor)*
+ * factor     := '-' factor | '(' operand ')' | number | field
+ * </pre>
+ * 例: close > ma20 * 1.05 AND bumpy < 30 AND candlestick IN (BullishLine, BullishLowerHammer)
+ * 欄位見ScreenField, 欄位無資料或除以0時該比較結果為未知
+ * AND OR NOT依三值邏輯處理未知, NOT未知仍為未知, 最外層結果未知時視為不通過
+ * 最外層AND拆為各自獨立的條件, 由ScreenPipeline決定執行順序
+ */
+public final class ScreenExpressionParser {
+    /**
+     * 篩選語法條件的metrics名稱
+     */
+    public static final String SCREEN_EXPRESSION = "screenExpression";
+    private static final int DIVIDE_SCALE = 8;
+    private static final int CANDLESTICK_COST = 3;
+    private static final Set<String> COMPARE_SYMBOLS = Set.of(">", ">=", "<", "<=", "==", "=", "!=");
+    private static final Set<String> ARITHMETIC_SYMBOLS = Set.of("+", "-", "*", "/");
+
+    private final String expression;
+    private final List<Token> tokens;
+    private int position = 0;
+
+    private ScreenExpressionParser(String expression) {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+    }
+
+    /**
+     * 解析篩選語法
+     *
+     * @param expression 篩選語法
+     * @return 最外層AND拆開後的條件
+     * @throws IllegalArgumentException 語法錯誤
+     */
+    public static List<ScreenPredicate> parse(String expression) {
+        ScreenExpressionParser parser = new ScreenExpressionParser(expression);
+        Node node = parser.parseOr();
+        if (parser.peek().type() != TokenType.END) {
+            throw parser.error("unexpected '" + parser.peek().text() + "'");
+        }
+
+        List<Node> conjuncts = node instanceof AndNode andNode ? andNode.children() : List.of(node);
+        return conjuncts.stream()
+                .map(conjunct -> ScreenPredicate.of(SCREEN_EXPRESSION, conjunct.text(), conjunct.stage(), conjunct.cost(),
+                        screenContext -> Boolean.TRUE.equals(conjunct.test(screenContext))))
+                .toList();
+    }
+
+    private Node parseOr() {
+        List<Node> children = new ArrayList<>();
+        children.add(parseAnd());
+        while (acceptKeyword("OR")) {
+            children.add(parseAnd());
+        }
+        return children.size() == 1 ? children.get(0) : new OrNode(children);
+    }
+
+    private Node parseAnd() {
+        List<Node> children = new ArrayList<>();
+        children.add(parseUnary());
+        while (acceptKeyword("AND")) {
+            Node child = parseUnary();
+            if (child instanceof AndNode andNode) {
+                children.addAll(andNode.children());
+            } else {
+                children.add(child);
+            }
+        }
+        return children.size() == 1 ? children.get(0) : new AndNode(children);
+    }
+
+    private Node parseUnary() {
+        if (acceptKeyword("NOT")) {
+            return new NotNode(parseUnary());
+        }
+        if (isSymbol(peek(), "(")) {
+            // 括號可能包住條件或運算式, 先嘗試條件, 後面接運算子時改為運算式
+            int saved = position;
+            try {
+                position++;
+                Node node = parseOr();
+                expectSymbol(")");
+                if (!COMPARE_SYMBOLS.contains(peek().text()) && !ARITHMETIC_SYMBOLS.contains(peek().text())) {
+                    return node;
+                }
+            } catch (IllegalArgumentException e) {
+                // 改為運算式
+            }
+            position = saved;
+        }
+        return parseComparison();
+    }
+
+    private Node parseComparison() {
+        Token token = peek();
+        if (token.type() == TokenType.IDENT && token.text().equalsIgnoreCase("candlestick")) {
+            position++;
+            if (!acceptKeyword("IN")) {
+                throw error("expected IN after candlestick");
+            }
+            expectSymbol("(");
+            Set<CandlestickType> candlestickTypes = EnumSet.noneOf(CandlestickType.class);
+            do {
+                candlestickTypes.add(toCandlestickType(next()));
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+            return new CandlestickNode(candlestickTypes);
+        }
+
+        Operand left = parseOperand();
+        Token operator = next();
+        if (operator.type() != TokenType.SYMBOL || !COMPARE_SYMBOLS.contains(operator.text())) {
+            throw error("expected comparison operator but got '" + operator.text() + "'");
+        }
+        Operand right = parseOperand();
+        return new CompareNode(left, "=".equals(operator.text()) ? "==" : operator.text(), right);
+    }
+
+    private Operand parseOperand() {
+        Operand operand = parseTerm();
+        while (isSymbol(peek(), "+") || isSymbol(peek(), "-")) {
+            operand = new ArithmeticOperand(operand, next().text(), parseTerm());
+        }
+        return operand;
+    }
+
+    private Operand parseTerm() {
+        Operand operand = parseFactor();
+        while (isSymbol(peek(), "*") || isSymbol(peek(), "/")) {
+            operand = new ArithmeticOperand(operand, next().text(), parseFactor());
+        }
+        return operand;
+    }
+
+    private Operand parseFactor() {
+        Token token = next();
+        if (isSymbol(token, "-")) {
+            return new ArithmeticOperand(new ConstantOperand(BigDecimal.ZERO), "-", parseFactor());
+        }
+        if (isSymbol(token, "(")) {
+            Operand operand = parseOperand();
+            expectSymbol(")");
+            return operand;
+        }
+        if (token.type() == TokenType.NUMBER) {
+            return new ConstantOperand(new BigDecimal(token.text()));
+        }
+        if (token.type() == TokenType.IDENT) {
+            return ScreenField.of(token.text())
+                    .<Operand>map(FieldOperand::new)
+                    .orElseThrow(() -> error("unknown field '" + token.text() + "'"));
+        }
+        throw error("unexpected '" + token.text() + "'");
+    }
+
+    private CandlestickType toCandlestickType(Token token) {
+        if (token.type() != TokenType.IDENT) {
+            throw error("expected candlestick type but got '" + token.text() + "'");
+        }
+        return Arrays.stream(CandlestickType.values())
+                .filter(candlestickType -> candlestickType.name().equalsIgnoreCase(token.text())
+                        || candlestickType.getName().equals(token.text()))
+                .findFirst()
+                .orElseThrow(() -> error("unknown candlestick type '" + token.text() + "'"));
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token next() {
+        Token token = tokens.get(position);
+        if (token.type() != TokenType.END) {
+            position++;
+        }
+        return token;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (peek().type() == TokenType.IDENT && peek().text().equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptSymbol(String symbol) {
+        if (isSymbol(peek(), symbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectSymbol(String symbol) {
+        if (!acceptSymbol(symbol)) {
+            throw error("expected '" + symbol + "' but got '" + peek().text() + "'");
+        }
+    }
+
+    private boolean isSymbol(Token token, String symbol) {
+        return token.type() == TokenType.SYMBOL && token.text().equals(symbol);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("screenExpression " + message + " at " + peek().position() + ": " + expression);
+    }
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < expression.length() && Character.isDigit(expression.charAt(i + 1)))) {
+                int start = i;
+                while (i < expression.length() && (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, expression.substring(start, i), start));
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < expression.length() && (Character.isLetterOrDigit(expression.charAt(i)) || expression.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.IDENT, expression.substring(start, i), start));
+            } else if (i + 1 < expression.length() && Set.of(">=", "<=", "==", "!=").contains(expression.substring(i, i + 2))) {
+                tokens.add(new Token(TokenType.SYMBOL, expression.substring(i, i + 2), i));
+                i += 2;
+            } else if ("><=()+-*/,".indexOf(c) >= 0) {
+                tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c), i));
+                i++;
+            } else {
+                throw new IllegalArgumentException("screenExpression unexpected '" + c + "' at " + i + ": " + expression);
+            }
+        }
+        tokens.add(new Token(TokenType.END, "<end>", expression.length()));
+        return tokens;
+    }
+
+    private static ScreenStage maxStage(ScreenStage stage1, ScreenStage stage2) {
+        return stage1.compareTo(stage2) >= 0 ? stage1 : stage2;
+    }
+
+    private enum TokenType {
+        NUMBER, IDENT, SYMBOL, END
+    }
+
+    private record Token(TokenType type, String text, int position) {
+    }
+
+    private interface Node {
+        /**
+         * 評估條件
+         *
+         * @param screenContext 篩選資料
+         * @return true false, 欄位無資料而無法判斷時為null
+         */
+        Boolean test(ScreenContext screenContext);
+
+        ScreenStage stage();
+
+        int cost();
+
+        String text();
+    }
+
+    private interface Operand {
+        BigDecimal eval(ScreenContext screenContext);
+
+        ScreenStage stage();
+
+        int cost();
+
+        String text();
+    }
+
+    private record AndNode(List<Node> children) implements Node {
+        @Override
+        public Boolean test(ScreenContext screenContext) {
+            boolean unknown = false;
+            for (Node child : children) {
+                Boolean result = child.test(screenContext);
+                if (Boolean.FALSE.equals(result)) {
+                    return Boolean.FALSE;
+                }
+                unknown |= Objects.isNull(result);
+            }
+            return unknown ? null : Boolean.TRUE;
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return children.stream().map(Node::stage).reduce(ScreenStage.BAR, ScreenExpressionParser::maxStage);
+        }
+
+        @Override
+        public int cost() {
+            return children.stream().mapToInt(Node::cost).sum();
+        }
+
+        @Override
+        public String text() {
+            return children.stream().map(Node::text).collect(Collectors.joining(" AND ", "(", ")"));
+        }
+    }
+
+    private record OrNode(List<Node> children) implements Node {
+        @Override
+        public Boolean test(ScreenContext screenContext) {
+            boolean unknown = false;
+            for (Node child : children) {
+                Boolean result = child.test(screenContext);
+                if (Boolean.TRUE.equals(result)) {
+                    return Boolean.TRUE;
+                }
+                unknown |= Objects.isNull(result);
+            }
+            return unknown ? null : Boolean.FALSE;
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return children.stream().map(Node::stage).reduce(ScreenStage.BAR, ScreenExpressionParser::maxStage);
+        }
+
+        @Override
+        public int cost() {
+            return children.stream().mapToInt(Node::cost).sum();
+        }
+
+        @Override
+        public String text() {
+            return children.stream().map(Node::text).collect(Collectors.joining(" OR ", "(", ")"));
+        }
+    }
+
+    private record NotNode(Node child) implements Node {
+        @Override
+        public Boolean test(ScreenContext screenContext) {
+            Boolean result = child.test(screenContext);
+            return Objects.isNull(result) ? null : !result;
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return child.stage();
+        }
+
+        @Override
+        public int cost() {
+            return child.cost();
+        }
+
+        @Override
+        public String text() {
+            return "NOT " + child.text();
+        }
+    }
+
+    private record CandlestickNode(Set<CandlestickType> candlestickTypes) implements Node {
+        @Override
+        public Boolean test(ScreenContext screenContext) {
+            if (Objects.isNull(screenContext.getLastStockData())) {
+                return null;
+            }
+            return candlestickTypes.contains(screenContext.getCandlestickType());
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return ScreenStage.BAR;
+        }
+
+        @Override
+        public int cost() {
+            return CANDLESTICK_COST;
+        }
+
+        @Override
+        public String text() {
+            return candlestickTypes.stream().map(Enum::name).collect(Collectors.joining(", ", "candlestick IN (", ")"));
+        }
+    }
+
+    private record CompareNode(Operand left, String operator, Operand right) implements Node {
+        @Override
+        public Boolean test(ScreenContext screenContext) {
+            BigDecimal leftValue = left.eval(screenContext);
+            BigDecimal rightValue = right.eval(screenContext);
+            if (Objects.isNull(leftValue) || Objects.isNull(rightValue)) {
+                return null;
+            }
+            int compare = leftValue.compareTo(rightValue);
+            return switch (operator) {
+                case ">" -> compare > 0;
+                case ">=" -> compare >= 0;
+                case "<" -> compare < 0;
+                case "<=" -> compare <= 0;
+                case "==" -> compare == 0;
+                default -> compare != 0;
+            };
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return maxStage(left.stage(), right.stage());
+        }
+
+        @Override
+        public int cost() {
+            return left.cost() + right.cost();
+        }
+
+        @Override
+        public String text() {
+            return left.text() + " " + operator + " " + right.text();
+        }
+    }
+
+    private record FieldOperand(ScreenField screenField) implements Operand {
+        @Override
+        public BigDecimal eval(ScreenContext screenContext) {
+            return screenField.getValue(screenContext);
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return screenField.getStage();
+        }
+
+        @Override
+        public int cost() {
+            return 1;
+        }
+
+        @Override
+        public String text() {
+            return screenField.getFieldName();
+        }
+    }
+
+    private record ConstantOperand(BigDecimal value) implements Operand {
+        @Override
+        public BigDecimal eval(ScreenContext screenContext) {
+            return value;
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return ScreenStage.BAR;
+        }
+
+        @Override
+        public int cost() {
+            return 0;
+        }
+
+        @Override
+        public String text() {
+            return value.stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private record ArithmeticOperand(Operand left, String operator, Operand right) implements Operand {
+        @Override
+        public BigDecimal eval(ScreenContext screenContext) {
+            BigDecimal leftValue = left.eval(screenContext);
+            BigDecimal rightValue = right.eval(screenContext);
+            if (Objects.isNull(leftValue) || Objects.isNull(rightValue)) {
+                return null;
+            }
+            return switch (operator) {
+                case "+" -> leftValue.add(rightValue);
+                case "-" -> leftValue.subtract(rightValue);
+                case "*" -> leftValue.multiply(rightValue);
+                default -> rightValue.signum() == 0 ? null : leftValue.divide(rightValue, DIVIDE_SCALE, RoundingMode.HALF_UP);
+            };
+        }
+
+        @Override
+        public ScreenStage stage() {
+            return maxStage(left.stage(), right.stage());
+        }
+
+        @Override
+        public int cost() {
+            return left.cost() + right.cost() + 1;
+        }
+
+        @Override
+        public String text() {
+            return "(" + left.text() + " " + operator + " " + right.text() + ")";
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.StockBumpy;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockIndicatorResult;
+import com.custom.stocksearcher.models.StockMAResult;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 篩選語法可使用的數值欄位
+ */
+public enum ScreenField {
+    OPEN("open", ScreenStage.BAR, bar(StockData::getOpeningPrice)),
+    HIGH("high", ScreenStage.BAR, bar(StockData::getHighestPrice)),
+    LOW("low", ScreenStage.BAR, bar(StockData::getLowestPrice)),
+    CLOSE("close", ScreenStage.BAR, bar(StockData::getClosingPrice)),
+    CHANGE("change", ScreenStage.BAR, bar(StockData::getChange)),
+    VOLUME("volume", ScreenStage.BAR, bar(StockData::getTradeVolume)),
+    TRADE_VALUE("tradeValue", ScreenStage.BAR, bar(StockData::getTradeValue)),
+    TRANSACTION("transaction", ScreenStage.BAR, bar(StockData::getTransaction)),
+    /**
+     * (開盤-最低)/最低 百分比
+     */
+    OPEN_CALC("openCalc", ScreenStage.BAR, bar(stockData -> calcFromLowest(stockData.getOpeningPrice(), stockData.getLowestPrice()))),
+    /**
+     * (收盤-最低)/最低 百分比
+     */
+    CLOSE_CALC("closeCalc", ScreenStage.BAR, bar(stockData -> calcFromLowest(stockData.getClosingPrice(), stockData.getLowestPrice()))),
+
+    RANGE_HIGH("rangeHigh", ScreenStage.RANGE, range(StockBumpy::getHighestPrice)),
+    RANGE_LOW("rangeLow", ScreenStage.RANGE, range(StockBumpy::getLowestPrice)),
+    MIN_VOLUME("minVolume", ScreenStage.RANGE, range(StockBumpy::getLowestTradeVolume)),
+    BUMPY("bumpy", ScreenStage.RANGE, range(StockBumpy::getCalcResult)),
+
+    MA5("ma5", ScreenStage.MA, ma(StockMAResult::getMa5)),
+    MA10("ma10", ScreenStage.MA, ma(StockMAResult::getMa10)),
+    MA20("ma20", ScreenStage.MA, ma(StockMAResult::getMa20)),
+    MA60("ma60", ScreenStage.MA, ma(StockMAResult::getMa60)),
+
+    EMA12("ema12", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getEma12)),
+    EMA26("ema26", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getEma26)),
+    DIF("dif", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getDif)),
+    MACD("macd", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getMacd)),
+    OSC("osc", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getOsc)),
+    RSI6("rsi6", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getRsi6)),
+    RSI12("rsi12", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getRsi12)),
+    K("k", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getK)),
+    D("d", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getD)),
+    BB_UPPER("bbUpper", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getBollingerUpper)),
+    BB_MIDDLE("bbMiddle", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getBollingerMiddle)),
+    BB_LOWER("bbLower", ScreenStage.INDICATOR, indicator(StockIndicatorResult::getBollingerLower));
+
+    private static final Map<String, ScreenField> FIELD_MAP = Arrays.stream(values())
+            .collect(Collectors.toUnmodifiableMap(screenField -> screenField.fieldName.toLowerCase(), screenField -> screenField));
+
+    private final String fieldName;
+    private final ScreenStage stage;
+    private final Function<ScreenContext, BigDecimal> extractor;
+
+    ScreenField(String fieldName, ScreenStage stage, Function<ScreenContext, BigDecimal> extractor) {
+        this.fieldName = fieldName;
+        this.stage = stage;
+        this.extractor = extractor;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public ScreenStage getStage() {
+        return stage;
+    }
+
+    /**
+     * 取值, 資料不存在時為null
+     *
+     * @param screenContext 篩選資料
+     * @return BigDecimal
+     */
+    public BigDecimal getValue(ScreenContext screenContext) {
+        return extractor.apply(screenContext);
+    }
+
+    /**
+     * 依名稱取得欄位, 不分大小寫
+     *
+     * @param fieldName 欄位名稱
+     * @return Optional<ScreenField>
+     */
+    public static Optional<ScreenField> of(String fieldName) {
+        return Optional.ofNullable(FIELD_MAP.get(fieldName.toLowerCase()));
+    }
+
+    private static Function<ScreenContext, BigDecimal> bar(Function<StockData, BigDecimal> getter) {
+        return screenContext -> Optional.ofNullable(screenContext.getLastStockData()).map(getter).orElse(null);
+    }
+
+    private static Function<ScreenContext, BigDecimal> range(Function<StockBumpy, BigDecimal> getter) {
+        return screenContext -> Optional.ofNullable(screenContext.getStockBumpy()).map(getter).orElse(null);
+    }
+
+    private static Function<ScreenContext, BigDecimal> ma(Function<StockMAResult, BigDecimal> getter) {
+        return screenContext -> Optional.ofNullable(screenContext.getStockMAResult()).map(getter).orElse(null);
+    }
+
+    private static Function<ScreenContext, BigDecimal> indicator(Function<StockIndicatorResult, BigDecimal> getter) {
+        return screenContext -> Optional.ofNullable(screenContext.getStockIndicatorResult()).map(getter).orElse(null);
+    }
+
+    private static BigDecimal calcFromLowest(BigDecimal price, BigDecimal lowestPrice) {
+        if (Objects.isNull(price) || Objects.isNull(lowestPrice) || lowestPrice.signum() == 0) {
+            return null;
+        }
+        return price.subtract(lowestPrice).divide(lowestPrice, 4, RoundingMode.FLOOR).multiply(BigDecimal.valueOf(100));
+    }
+}
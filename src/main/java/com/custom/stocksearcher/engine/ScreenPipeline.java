@@ -0,0 +1,131 @@
+package com.custom.stocksearcher.engine;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 編譯後的篩選條件
+ * 各階段的條件依 成本 / 淘汰率 由小到大執行, 遇到不通過即停止
+ * 淘汰率取自共用的通過率統計, 執行期間每REORDER_INTERVAL次重新排序
+ */
+public class ScreenPipeline {
+    private static final int REORDER_INTERVAL = 256;
+
+    private final Map<ScreenStage, Chain> chainMap = new EnumMap<>(ScreenStage.class);
+    private final BiConsumer<String, Boolean> filterRecorder;
+
+    /**
+     * @param screenPredicates 篩選條件
+     * @param statsProvider    條件key -> 共用的通過率統計
+     * @param filterRecorder   每次判斷結果(name, passed), 用於metrics
+     */
+    public ScreenPipeline(List<ScreenPredicate> screenPredicates, Function<String, PredicateStats> statsProvider,
+                          BiConsumer<String, Boolean> filterRecorder) {
+        this.filterRecorder = filterRecorder;
+        for (ScreenStage stage : ScreenStage.values()) {
+            List<StatsPredicate> statsPredicates = screenPredicates.stream()
+                    .filter(screenPredicate -> screenPredicate.getStage() == stage)
+                    .map(screenPredicate -> new StatsPredicate(screenPredicate, statsProvider.apply(screenPredicate.getKey())))
+                    .toList();
+            chainMap.put(stage, new Chain(statsPredicates));
+        }
+    }
+
+    /**
+     * 執行單一階段的條件
+     *
+     * @param stage         階段
+     * @param screenContext 篩選資料, 需已具備該階段資料
+     * @return 是否全部通過
+     */
+    public boolean test(ScreenStage stage, ScreenContext screenContext) {
+        return chainMap.get(stage).test(screenContext);
+    }
+
+    /**
+     * 該階段是否有條件, 無條件時可略過該階段資料的查詢
+     *
+     * @param stage 階段
+     * @return boolean
+     */
+    public boolean hasPredicates(ScreenStage stage) {
+        return chainMap.get(stage).ordered.length > 0;
+    }
+
+    /**
+     * 目前各階段的執行順序
+     *
+     * @return 階段 -> 條件key
+     */
+    public Map<ScreenStage, List<String>> getOrder() {
+        Map<ScreenStage, List<String>> order = new EnumMap<>(ScreenStage.class);
+        chainMap.forEach((stage, chain) -> order.put(stage,
+                Arrays.stream(chain.ordered).map(statsPredicate -> statsPredicate.screenPredicate().getKey()).toList()));
+        return order;
+    }
+
+    private record StatsPredicate(ScreenPredicate screenPredicate, PredicateStats predicateStats) {
+        /**
+         * 排序依據, 成本低且淘汰率高者優先
+         */
+        double rank() {
+            return (screenPredicate.getCost() + 1) / Math.max(1 - predicateStats.getPassRate(), 0.01);
+        }
+    }
+
+    private class Chain {
+        private volatile StatsPredicate[] ordered;
+        private final AtomicLong evaluations = new AtomicLong();
+
+        Chain(List<StatsPredicate> statsPredicates) {
+            this.ordered = sort(statsPredicates.toArray(StatsPredicate[]::new));
+        }
+
+        boolean test(ScreenContext screenContext) {
+            if (evaluations.incrementAndGet() % REORDER_INTERVAL == 0) {
+                ordered = sort(ordered.clone());
+            }
+            for (StatsPredicate statsPredicate : ordered) {
+                boolean passed = statsPredicate.screenPredicate().test(screenContext);
+                statsPredicate.predicateStats().record(passed);
+                filterRecorder.accept(statsPredicate.screenPredicate().getName(), passed);
+                if (!passed) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private StatsPredicate[] sort(StatsPredicate[] statsPredicates) {
+            Arrays.sort(statsPredicates, Comparator.comparingDouble(StatsPredicate::rank));
+            return statsPredicates;
+        }
+    }
+
+    /**
+     * 單一條件的通過率統計, 可跨查詢共用
+     */
+    public static class PredicateStats {
+        private final LongAdder evaluated = new LongAdder();
+        private final LongAdder passed = new LongAdder();
+
+        public void record(boolean isPassed) {
+            evaluated.increment();
+            if (isPassed) {
+                passed.increment();
+            }
+        }
+
+        /**
+         * 通過率, 無資料時為0.5
+         *
+         * @return 0 ~ 1
+         */
+        public double getPassRate() {
+            return (passed.sum() + 1.0) / (evaluated.sum() + 2.0);
+        }
+    }
+}
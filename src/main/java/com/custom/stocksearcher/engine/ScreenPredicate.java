@@ -0,0 +1,72 @@
+package com.custom.stocksearcher.engine;
+
+import java.util.function.Predicate;
+
+/**
+ * 單一篩選條件
+ */
+public interface ScreenPredicate {
+    /**
+     * metrics使用的名稱
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * 條件內容, 相同內容共用通過率統計
+     *
+     * @return key
+     */
+    String getKey();
+
+    /**
+     * 所需資料階段
+     *
+     * @return ScreenStage
+     */
+    ScreenStage getStage();
+
+    /**
+     * 同階段內的相對成本
+     *
+     * @return cost
+     */
+    int getCost();
+
+    boolean test(ScreenContext screenContext);
+
+    static ScreenPredicate of(String name, String key, ScreenStage stage, int cost, Predicate<ScreenContext> predicate) {
+        return new ScreenPredicate() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public ScreenStage getStage() {
+                return stage;
+            }
+
+            @Override
+            public int getCost() {
+                return cost;
+            }
+
+            @Override
+            public boolean test(ScreenContext screenContext) {
+                return predicate.test(screenContext);
+            }
+
+            @Override
+            public String toString() {
+                return key;
+            }
+        };
+    }
+}
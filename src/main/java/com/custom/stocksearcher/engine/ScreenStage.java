@@ -0,0 +1,24 @@
+package com.custom.stocksearcher.engine;
+
+/**
+ * 篩選條件所需資料的階段, 依序取得
+ * 後面的階段需要較多查詢或計算, 前面階段未通過者不進入後面階段
+ */
+public enum ScreenStage {
+    /**
+     * 最後一筆日K
+     */
+    BAR,
+    /**
+     * 區間統計(最高/最低/最低成交量/漲幅)
+     */
+    RANGE,
+    /**
+     * 最後一筆MA, 需另外查詢
+     */
+    MA,
+    /**
+     * 最後一筆技術指標(EMA MACD RSI KD 布林通道), 需另外查詢
+     */
+    INDICATOR
+}
@@ -0,0 +1,51 @@
+package com.custom.stocksearcher.engine;
+
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合併同時進行中的相同查詢
+ * 同key的訂閱共用一個上游訂閱(replay().refCount()), 上游結束或全部取消後即移除, 不保留結果
+ *
+ * @param <K> key型別
+ * @param <T> 資料型別
+ */
+public class SingleFlight<K, T> {
+    private final Map<K, Flux<T>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 執行或加入進行中的查詢
+     *
+     * @param key      查詢key
+     * @param supplier 實際查詢, 只在沒有進行中的查詢時呼叫
+     * @return 共用的查詢結果
+     */
+    public Flux<T> execute(K key, Supplier<Flux<T>> supplier) {
+        return Flux.defer(() -> inFlight.computeIfAbsent(key, k -> share(k, supplier.get())));
+    }
+
+    /**
+     * 進行中的查詢數
+     *
+     * @return size
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private Flux<T> share(K key, Flux<T> source) {
+        Holder<T> holder = new Holder<>();
+        holder.shared = source
+                .doFinally(signalType -> inFlight.remove(key, holder.shared))
+                .replay()
+                .refCount();
+        return holder.shared;
+    }
+
+    private static class Holder<T> {
+        private volatile Flux<T> shared;
+    }
+}
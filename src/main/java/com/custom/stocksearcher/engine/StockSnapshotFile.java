@@ -0,0 +1,160 @@
+package com.custom.stocksearcher.engine;
+
+import com.custom.stocksearcher.models.StockSeries;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 股價snapshot二進位檔, 以memory-mapped NIO讀寫
+ * <pre>
+ * header : magic(int) version(int) snapshotDate(int, epoch day) fromDate(int, epoch day) codeCount(int)
+ * index  : codeCount * [code(16 bytes, UTF-8補0) priceScale(int) size(int) offset(long)]
+ * block  : 每檔一段, 欄式存放 8個long欄位(開高低收 漲跌 量 金額 筆數)各size筆, 接著dates(int)size筆
+ * </pre>
+ * 每段分別map, 單檔超過2GB亦可讀取
+ */
+public final class StockSnapshotFile {
+    private static final int MAGIC = 0x53544B53;
+    private static final int VERSION = 1;
+    private static final int CODE_BYTES = 16;
+    private static final int HEADER_BYTES = 4 * 5;
+    private static final int INDEX_ENTRY_BYTES = CODE_BYTES + 4 + 4 + 8;
+    private static final int LONG_COLUMNS = 8;
+
+    private StockSnapshotFile() {
+    }
+
+    /**
+     * snapshot內容
+     *
+     * @param snapshotDate 匯出日期
+     * @param fromDate     資料起始日期
+     * @param seriesMap    code -> StockSeries
+     */
+    public record Snapshot(LocalDate snapshotDate, LocalDate fromDate, Map<String, StockSeries> seriesMap) {
+    }
+
+    /**
+     * 寫入snapshot, 先寫暫存檔再搬移取代, 讀取端不會看到寫一半的檔案
+     *
+     * @param path         檔案路徑
+     * @param snapshotDate 匯出日期
+     * @param fromDate     資料起始日期
+     * @param seriesList   股價資料
+     * @return 檔案大小(bytes)
+     */
+    public static long write(Path path, LocalDate snapshotDate, LocalDate fromDate, Collection<StockSeries> seriesList) throws IOException {
+        List<StockSeries> writableSeriesList = seriesList.stream()
+                .filter(series -> series.getCode().getBytes(StandardCharsets.UTF_8).length <= CODE_BYTES)
+                .toList();
+
+        long indexEnd = HEADER_BYTES + (long) INDEX_ENTRY_BYTES * writableSeriesList.size();
+        long fileSize = indexEnd;
+        for (StockSeries series : writableSeriesList) {
+            fileSize += blockBytes(series.size());
+        }
+
+        Path absolutePath = path.toAbsolutePath();
+        Files.createDirectories(absolutePath.getParent());
+        Path tempPath = absolutePath.resolveSibling(absolutePath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer indexBuffer = map(channel, FileChannel.MapMode.READ_WRITE, 0, indexEnd);
+            indexBuffer.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt((int) snapshotDate.toEpochDay())
+                    .putInt((int) fromDate.toEpochDay())
+                    .putInt(writableSeriesList.size());
+
+            long offset = indexEnd;
+            for (StockSeries series : writableSeriesList) {
+                byte[] code = new byte[CODE_BYTES];
+                byte[] codeBytes = series.getCode().getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(codeBytes, 0, code, 0, codeBytes.length);
+                indexBuffer.put(code).putInt(series.getPriceScale()).putInt(series.size()).putLong(offset);
+
+                long blockBytes = blockBytes(series.size());
+                if (blockBytes > 0) {
+                    MappedByteBuffer blockBuffer = map(channel, FileChannel.MapMode.READ_WRITE, offset, blockBytes);
+                    for (LongBuffer column : series.getLongColumnViews()) {
+                        blockBuffer.asLongBuffer().put(column);
+                        blockBuffer.position(blockBuffer.position() + series.size() * Long.BYTES);
+                    }
+                    blockBuffer.asIntBuffer().put(series.getDateView());
+                    blockBuffer.force();
+                }
+                offset += blockBytes;
+            }
+            indexBuffer.force();
+        }
+        Files.move(tempPath, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return fileSize;
+    }
+
+    /**
+     * 讀取snapshot, 各段以bulk get複製至StockSeries欄位陣列
+     *
+     * @param path 檔案路徑
+     * @return Snapshot
+     */
+    public static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer headerBuffer = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (headerBuffer.getInt() != MAGIC || headerBuffer.getInt() != VERSION) {
+                throw new IOException("unsupported stock snapshot: " + path);
+            }
+            LocalDate snapshotDate = LocalDate.ofEpochDay(headerBuffer.getInt());
+            LocalDate fromDate = LocalDate.ofEpochDay(headerBuffer.getInt());
+            int codeCount = headerBuffer.getInt();
+
+            MappedByteBuffer indexBuffer = map(channel, FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) INDEX_ENTRY_BYTES * codeCount);
+            Map<String, StockSeries> seriesMap = new HashMap<>(codeCount * 2);
+            byte[] codeBytes = new byte[CODE_BYTES];
+            for (int i = 0; i < codeCount; i++) {
+                indexBuffer.get(codeBytes);
+                String code = new String(codeBytes, StandardCharsets.UTF_8).trim();
+                int priceScale = indexBuffer.getInt();
+                int size = indexBuffer.getInt();
+                long offset = indexBuffer.getLong();
+
+                long[][] columns = new long[LONG_COLUMNS][size];
+                int[] dates = new int[size];
+                if (size > 0) {
+                    MappedByteBuffer blockBuffer = map(channel, FileChannel.MapMode.READ_ONLY, offset, blockBytes(size));
+                    for (long[] column : columns) {
+                        blockBuffer.asLongBuffer().get(column);
+                        blockBuffer.position(blockBuffer.position() + size * Long.BYTES);
+                    }
+                    blockBuffer.asIntBuffer().get(dates);
+                }
+                seriesMap.put(code, StockSeries.ofColumns(code, priceScale, dates,
+                        columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], columns[6], columns[7]));
+            }
+            return new Snapshot(snapshotDate, fromDate, seriesMap);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long blockBytes(int size) {
+        return (long) size * (LONG_COLUMNS * Long.BYTES + Integer.BYTES);
+    }
+}
@@ -0,0 +1,28 @@
+package com.custom.stocksearcher.event;
+
+import com.custom.stocksearcher.models.StockData;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 股價資料更新事件
+ * 偵測到listed_stock/tpex_stock有新的updateDate資料時發布
+ */
+@ToString
+@Getter
+@AllArgsConstructor
+public class StockDataUpdatedEvent {
+    /**
+     * 有新資料的股票代號與其新資料
+     */
+    private final Map<String, Collection<StockData>> stockDataMap;
+    /**
+     * 新資料中最新的交易日期
+     */
+    private final LocalDate latestDate;
+}
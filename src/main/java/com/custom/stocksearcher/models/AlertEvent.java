@@ -0,0 +1,43 @@
+package com.custom.stocksearcher.models;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 告警觸發紀錄
+ * id為 alertRuleId_code_date, 同一日資料重複評估時覆寫而不重複
+ */
+@ToString
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(indexName = "alert_event")
+public class AlertEvent implements Serializable {
+    @Id
+    @Field(type = FieldType.Keyword)
+    private String alertEventId;
+    @Field(type = FieldType.Keyword)
+    private String alertRuleId;
+    @Field(type = FieldType.Keyword)
+    private String ruleName;
+    @Field(type = FieldType.Keyword)
+    private String user;
+    @Field(type = FieldType.Keyword)
+    private String code;
+    @Field(type = FieldType.Keyword)
+    private String name;
+    @Field(type = FieldType.Date, pattern = "yyyy-MM-dd")
+    private LocalDate date;
+    @Field(type = FieldType.Keyword)
+    private BigDecimal closingPrice;
+    @Field(type = FieldType.Date, pattern = "yyyy-MM-dd")
+    private LocalDate updateDate;
+}
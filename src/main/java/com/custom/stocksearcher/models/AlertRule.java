@@ -0,0 +1,42 @@
+package com.custom.stocksearcher.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 告警規則
+ * 範圍同CodeParam.code(all, listed, tpex, codeListId), 新日K資料寫入時以condition評估
+ */
+@ToString
+@NoArgsConstructor
+@Getter
+@Setter
+@Document(indexName = "alert_rule")
+public class AlertRule implements Serializable {
+    @Id
+    @Field(type = FieldType.Keyword)
+    private String alertRuleId;
+    @Field(type = FieldType.Keyword)
+    private String name;
+    @Field(type = FieldType.Keyword)
+    private String user;
+    @Field(type = FieldType.Keyword)
+    private String code;
+    @Field(type = FieldType.Boolean)
+    private boolean without4upCode;
+    @Field(type = FieldType.Boolean)
+    private boolean enabled = true;
+    @Field(type = FieldType.Object)
+    private CodeParam condition;
+    @Field(type = FieldType.Date, pattern = "yyyy-MM-dd")
+    private LocalDate date;
+}
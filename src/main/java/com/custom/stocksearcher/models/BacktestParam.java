@@ -0,0 +1,56 @@
+package com.custom.stocksearcher.models;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 回測參數bean
+ */
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BacktestParam implements Serializable {
+    /**
+     * 回測範圍, 同getCodeRange的keyword
+     */
+    private String code;
+    private boolean without4upCode;
+    /**
+     * 回測起始日期
+     */
+    private String beginDate;
+    /**
+     * 回測結束日期
+     */
+    private String endDate;
+    /**
+     * 進場條件, 只使用單日條件:
+     * priceLowLimit priceHighLimit lastOpenCalcLimit lastCloseCalcLimit candlestickTypeList
+     * closingPriceCompareTargetHigher closingPriceCompareTargetLower
+     */
+    private CodeParam entry;
+    /**
+     * 出場條件, 同entry, null代表不使用
+     */
+    private CodeParam exit;
+    /**
+     * 最多持有交易日數, null或0代表不限
+     */
+    private Integer holdingDays;
+    /**
+     * 停利百分比, null代表不使用
+     */
+    private BigDecimal takeProfit;
+    /**
+     * 停損百分比(正數), null代表不使用
+     */
+    private BigDecimal stopLoss;
+    /**
+     * 是否回傳每筆交易, 預設只回傳統計
+     */
+    private boolean withTrades;
+}
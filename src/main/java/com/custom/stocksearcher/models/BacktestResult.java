@@ -0,0 +1,42 @@
+package com.custom.stocksearcher.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 回測結果
+ */
+@ToString
+@NoArgsConstructor
+@Getter
+@Setter
+public class BacktestResult implements Serializable {
+    private int codeCount;
+    private int tradeCount;
+    private int winCount;
+    /**
+     * 勝率百分比
+     */
+    private BigDecimal winRate;
+    /**
+     * 平均每筆報酬率百分比
+     */
+    private BigDecimal averageReturn;
+    private BigDecimal maxReturn;
+    private BigDecimal minReturn;
+    private BigDecimal averageHoldingDays;
+    /**
+     * 計算耗時(不含載入資料)
+     */
+    private long elapsedMillis;
+    /**
+     * withTrades時才有值, 依代號與進場日期排序
+     */
+    private List<BacktestTrade> trades;
+}
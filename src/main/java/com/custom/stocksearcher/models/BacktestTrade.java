@@ -0,0 +1,37 @@
+package com.custom.stocksearcher.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 回測單筆交易
+ */
+@ToString
+@NoArgsConstructor
+@Getter
+@Setter
+public class BacktestTrade implements Serializable {
+    private String code;
+    private LocalDate entryDate;
+    private BigDecimal entryPrice;
+    private LocalDate exitDate;
+    private BigDecimal exitPrice;
+    /**
+     * 持有交易日數
+     */
+    private int holdingDays;
+    /**
+     * 報酬率百分比
+     */
+    private BigDecimal returnRate;
+    /**
+     * 出場原因 exitRule holdingDays takeProfit stopLoss end
+     */
+    private String exitReason;
+}
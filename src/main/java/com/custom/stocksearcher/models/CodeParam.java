@@ -51,8 +51,31 @@ public class CodeParam implements Serializable {
     private String closingPriceCompareTargetLower;
 
     private List<String> candlestickTypeList;
+    /**
+     * 多根K棒型態, enum名稱或中文名稱, 見CandlestickPattern
+     */
+    private List<String> candlestickPatternList;
 
     private boolean without4upCode;
     private BigDecimal priceLowLimit;
     private BigDecimal priceHighLimit;
+
+    /**
+     * 只取排序後前K筆, null或0代表全部
+     */
+    private Integer topK;
+    /**
+     * 排序依據 price calcResult volume, 預設price
+     */
+    private String sortKey;
+    /**
+     * 篩選語法, 與其他條件同時成立, 見ScreenExpressionParser
+     * 例: close > ma20 * 1.05 AND bumpy < 30
+     */
+    private String screenExpression;
+    /**
+     * K線週期 DAY WEEK MONTH, 預設DAY, 見Timeframe
+     * 只用於findStockInfo與getCandlestickPatterns, 區間計算與MA查詢只接受DAY
+     */
+    private String timeframe;
 }
@@ -34,4 +34,9 @@ public class StockBumpy implements Serializable {
     private BigDecimal calcResult;
 
     private StockMAResult lastStockMA;
+
+    /**
+     * 篩選條件使用技術指標時才有值
+     */
+    private StockIndicatorResult lastStockIndicator;
 }
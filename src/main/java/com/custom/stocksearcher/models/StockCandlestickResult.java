@@ -0,0 +1,25 @@
+package com.custom.stocksearcher.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 日K型態結果封裝
+ */
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class StockCandlestickResult implements Serializable {
+    private String code;
+    private LocalDate date;
+    private CandlestickType candlestickType;
+    private String candlestickName;
+}
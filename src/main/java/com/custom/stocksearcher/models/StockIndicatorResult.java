@@ -0,0 +1,55 @@
+package com.custom.stocksearcher.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 技術指標封裝
+ * 資料筆數不足該指標週期時為null
+ */
+@ToString
+@NoArgsConstructor
+@Getter
+@Setter
+public class StockIndicatorResult implements Serializable {
+    private String code;
+    private LocalDate date;
+    private BigDecimal price;
+
+    private BigDecimal ema12;
+    private BigDecimal ema26;
+    /**
+     * MACD DIF = EMA12 - EMA26
+     */
+    private BigDecimal dif;
+    /**
+     * MACD訊號線 DEA = DIF的EMA9
+     */
+    private BigDecimal macd;
+    /**
+     * MACD柱狀體 OSC = DIF - DEA
+     */
+    private BigDecimal osc;
+
+    private BigDecimal rsi6;
+    private BigDecimal rsi12;
+
+    /**
+     * KD(9,3,3)
+     */
+    private BigDecimal k;
+    private BigDecimal d;
+
+    /**
+     * 布林通道(20, 2倍標準差)
+     */
+    private BigDecimal bollingerUpper;
+    private BigDecimal bollingerMiddle;
+    private BigDecimal bollingerLower;
+}
@@ -0,0 +1,39 @@
+package com.custom.stocksearcher.models;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 每日MA計算結果bean, 依code與日期保存
+ */
+@ToString
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(indexName = "stock_ma")
+public class StockMA implements Serializable {
+    @Id
+    private StockMAId stockMAId;
+    @Field(type = FieldType.Date, pattern = "yyyy-MM-dd")
+    private LocalDate date;
+    @Field(type = FieldType.Keyword)
+    private BigDecimal ma5;
+    @Field(type = FieldType.Keyword)
+    private BigDecimal ma10;
+    @Field(type = FieldType.Keyword)
+    private BigDecimal ma20;
+    @Field(type = FieldType.Keyword)
+    private BigDecimal ma60;
+    @Field(type = FieldType.Keyword)
+    private BigDecimal price;
+    @Field(type = FieldType.Date, pattern = "yyyy-MM-dd")
+    private LocalDate updateDate;
+}
@@ -0,0 +1,33 @@
+package com.custom.stocksearcher.models;
+
+import com.custom.stocksearcher.engine.CandlestickPattern;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 多根K棒型態結果封裝
+ */
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class StockPatternResult implements Serializable {
+    private String code;
+    /**
+     * 型態第一根K棒日期
+     */
+    private LocalDate beginDate;
+    /**
+     * 型態完成(最後一根K棒)日期
+     */
+    private LocalDate date;
+    private CandlestickPattern pattern;
+    private String patternName;
+}
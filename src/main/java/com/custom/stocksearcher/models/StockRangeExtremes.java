@@ -0,0 +1,37 @@
+package com.custom.stocksearcher.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 單一股票日期區間內的極值(由ES aggregation取得)
+ * 數值相同時以較晚的資料為準, 與逐筆計算結果一致
+ */
+@ToString
+@NoArgsConstructor
+@Getter
+@Setter
+public class StockRangeExtremes implements Serializable {
+    private String code;
+    /**
+     * 區間內有效資料筆數
+     */
+    private long barCount;
+    private LocalDate firstDate;
+    private LocalDate lastDate;
+    /**
+     * 當日最高價(開高低收取最大)最高的一筆
+     */
+    private StockData highestStockData;
+    /**
+     * 當日最低價(開高低收取最小)最低的一筆
+     */
+    private StockData lowestStockData;
+    private StockData lowestTradeVolumeStockData;
+    private StockData lastStockData;
+}
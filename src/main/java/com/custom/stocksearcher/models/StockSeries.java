@@ -0,0 +1,468 @@
+package com.custom.stocksearcher.models;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 單一股票的欄式(columnar)股價資料
+ * 日期以epoch day保存, 價格以定點數(放大10^FIXED_SCALE)保存, 成交量/成交金額/成交筆數以long保存
+ * 建立後不可變動, 依日期遞增排序
+ * 欄位陣列由快取共用, 不對外公開, 僅提供依index讀取
+ */
+public class StockSeries implements Serializable {
+    /**
+     * 價格定點數小數位數
+     */
+    public static final int FIXED_SCALE = 4;
+    /**
+     * 代表原始資料為null
+     */
+    public static final long NULL_VALUE = Long.MIN_VALUE;
+
+    @Getter
+    private final String code;
+    /**
+     * 原始價格的小數位數, 轉回BigDecimal時使用
+     */
+    @Getter
+    private final int priceScale;
+    private final int[] dates;
+    private final long[] openingPrices;
+    private final long[] highestPrices;
+    private final long[] lowestPrices;
+    private final long[] closingPrices;
+    private final long[] changes;
+    private final long[] tradeVolumes;
+    private final long[] tradeValues;
+    private final long[] transactions;
+
+    private StockSeries(String code, int priceScale, int[] dates,
+                        long[] openingPrices, long[] highestPrices, long[] lowestPrices, long[] closingPrices, long[] changes,
+                        long[] tradeVolumes, long[] tradeValues, long[] transactions) {
+        this.code = code;
+        this.priceScale = priceScale;
+        this.dates = dates;
+        this.openingPrices = openingPrices;
+        this.highestPrices = highestPrices;
+        this.lowestPrices = lowestPrices;
+        this.closingPrices = closingPrices;
+        this.changes = changes;
+        this.tradeVolumes = tradeVolumes;
+        this.tradeValues = tradeValues;
+        this.transactions = transactions;
+    }
+
+    /**
+     * 由StockData集合建立
+     *
+     * @param code          股票代號
+     * @param stockDataList 股價資料(不需排序)
+     * @return StockSeries
+     */
+    public static StockSeries of(String code, List<StockData> stockDataList) {
+        Builder builder = new Builder(code, stockDataList.size());
+        stockDataList.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * 由欄位陣列直接建立, 不複製也不排序
+     * 陣列需等長, 且日期遞增不重複
+     *
+     * @param code       股票代號
+     * @param priceScale 原始價格小數位數
+     * @return StockSeries
+     */
+    public static StockSeries ofColumns(String code, int priceScale, int[] dates,
+                                        long[] openingPrices, long[] highestPrices, long[] lowestPrices, long[] closingPrices, long[] changes,
+                                        long[] tradeVolumes, long[] tradeValues, long[] transactions) {
+        return new StockSeries(code, priceScale, dates, openingPrices, highestPrices, lowestPrices, closingPrices, changes,
+                tradeVolumes, tradeValues, transactions);
+    }
+
+    /**
+     * 資料筆數
+     *
+     * @return size
+     */
+    public int size() {
+        return dates.length;
+    }
+
+    public LocalDate getDate(int index) {
+        return LocalDate.ofEpochDay(dates[index]);
+    }
+
+    public int getEpochDay(int index) {
+        return dates[index];
+    }
+
+    public long getOpeningPrice(int index) {
+        return openingPrices[index];
+    }
+
+    public long getHighestPrice(int index) {
+        return highestPrices[index];
+    }
+
+    public long getLowestPrice(int index) {
+        return lowestPrices[index];
+    }
+
+    public long getClosingPrice(int index) {
+        return closingPrices[index];
+    }
+
+    public long getChange(int index) {
+        return changes[index];
+    }
+
+    public long getTradeVolume(int index) {
+        return tradeVolumes[index];
+    }
+
+    public long getTradeValue(int index) {
+        return tradeValues[index];
+    }
+
+    public long getTransaction(int index) {
+        return transactions[index];
+    }
+
+    /**
+     * 定點數欄位的唯讀view, 供bulk複製
+     * 順序同ofColumns: opening highest lowest closing change tradeVolume tradeValue transaction
+     *
+     * @return LongBuffer list
+     */
+    public List<LongBuffer> getLongColumnViews() {
+        return Stream.of(openingPrices, highestPrices, lowestPrices, closingPrices, changes, tradeVolumes, tradeValues, transactions)
+                .map(column -> LongBuffer.wrap(column).asReadOnlyBuffer())
+                .toList();
+    }
+
+    /**
+     * 日期(epoch day)欄位的唯讀view, 供bulk複製
+     *
+     * @return IntBuffer
+     */
+    public IntBuffer getDateView() {
+        return IntBuffer.wrap(dates).asReadOnlyBuffer();
+    }
+
+    public LocalDate getFirstDate() {
+        return size() == 0 ? null : getDate(0);
+    }
+
+    public LocalDate getLastDate() {
+        return size() == 0 ? null : getDate(size() - 1);
+    }
+
+    /**
+     * 第一筆日期大於等於date的index
+     *
+     * @param date 日期
+     * @return index, 若皆小於date則回傳size()
+     */
+    public int indexOfDateOnOrAfter(LocalDate date) {
+        int index = Arrays.binarySearch(dates, (int) date.toEpochDay());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * 最後一筆日期小於等於date的index
+     *
+     * @param date 日期
+     * @return index, 若皆大於date則回傳-1
+     */
+    public int indexOfDateOnOrBefore(LocalDate date) {
+        int index = Arrays.binarySearch(dates, (int) date.toEpochDay());
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * 轉換單筆資料為StockData
+     *
+     * @param index index
+     * @return StockData
+     */
+    public StockData toStockData(int index) {
+        StockData stockData = new StockData();
+        stockData.setDate(getDate(index));
+        stockData.setOpeningPrice(toDecimal(openingPrices[index], priceScale));
+        stockData.setHighestPrice(toDecimal(highestPrices[index], priceScale));
+        stockData.setLowestPrice(toDecimal(lowestPrices[index], priceScale));
+        stockData.setClosingPrice(toDecimal(closingPrices[index], priceScale));
+        stockData.setChange(toDecimal(changes[index], priceScale));
+        stockData.setTradeVolume(toDecimal(tradeVolumes[index]));
+        stockData.setTradeValue(toDecimal(tradeValues[index]));
+        stockData.setTransaction(toDecimal(transactions[index]));
+        return stockData;
+    }
+
+    /**
+     * 取得日期區間內的StockData
+     *
+     * @param beginDate 開始日期(含)
+     * @param endDate   結束日期(含)
+     * @return StockData list, 依日期排序
+     */
+    public List<StockData> toStockDataList(LocalDate beginDate, LocalDate endDate) {
+        int from = indexOfDateOnOrAfter(beginDate);
+        int to = indexOfDateOnOrBefore(endDate);
+        List<StockData> stockDataList = new ArrayList<>(Math.max(to - from + 1, 0));
+        for (int i = from; i <= to; i++) {
+            stockDataList.add(toStockData(i));
+        }
+        return stockDataList;
+    }
+
+    /**
+     * 合併新資料, 同日期以新資料為準
+     *
+     * @param stockDataList 新資料
+     * @return 新的StockSeries
+     */
+    public StockSeries merge(List<StockData> stockDataList) {
+        Builder builder = new Builder(code, size() + stockDataList.size());
+        for (int i = 0; i < size(); i++) {
+            builder.add(this, i);
+        }
+        stockDataList.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * BigDecimal轉定點數
+     *
+     * @param value 數值
+     * @return 定點數
+     */
+    public static long toFixed(BigDecimal value) {
+        if (Objects.isNull(value)) {
+            return NULL_VALUE;
+        }
+        return value.setScale(FIXED_SCALE, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    /**
+     * 定點數轉BigDecimal
+     *
+     * @param value 定點數
+     * @param scale 小數位數
+     * @return BigDecimal
+     */
+    public static BigDecimal toDecimal(long value, int scale) {
+        if (value == NULL_VALUE) {
+            return null;
+        }
+        return BigDecimal.valueOf(value, FIXED_SCALE).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * (price-base)/base 比例, 取小數4位無條件捨去
+     *
+     * @param price 價格(定點數)
+     * @param base  基準價格(定點數)
+     * @return 定點數比例(放大10^4)
+     */
+    public static long toRatio(long price, long base) {
+        return Math.floorDiv((price - base) * 10_000L, base);
+    }
+
+    /**
+     * 百分比條件轉為與toRatio比較的門檻值
+     * 比例取小數4位無條件捨去後乘100, 因此門檻為percent*100無條件進位
+     *
+     * @param percent 百分比條件
+     * @return 門檻值
+     */
+    public static long toRatioThreshold(BigDecimal percent) {
+        return percent.movePointRight(2).setScale(0, RoundingMode.CEILING).longValueExact();
+    }
+
+    private static int maxScale(StockData stockData) {
+        return Stream.of(stockData.getOpeningPrice(), stockData.getHighestPrice(), stockData.getLowestPrice(),
+                        stockData.getClosingPrice(), stockData.getChange())
+                .filter(Objects::nonNull)
+                .mapToInt(value -> Math.min(value.scale(), FIXED_SCALE))
+                .max()
+                .orElse(0);
+    }
+
+    private static long toLong(BigDecimal value) {
+        return Objects.isNull(value) ? NULL_VALUE : value.longValue();
+    }
+
+    private static BigDecimal toDecimal(long value) {
+        return value == NULL_VALUE ? null : BigDecimal.valueOf(value);
+    }
+
+    /**
+     * 逐筆累積建立StockSeries, 資料不需依日期排序
+     * 同日期重複時以後加入者為準
+     */
+    public static class Builder {
+        private final String code;
+        private int priceScale = 0;
+        private int size = 0;
+        private int[] dates;
+        private long[] openingPrices;
+        private long[] highestPrices;
+        private long[] lowestPrices;
+        private long[] closingPrices;
+        private long[] changes;
+        private long[] tradeVolumes;
+        private long[] tradeValues;
+        private long[] transactions;
+
+        public Builder(String code, int capacity) {
+            this.code = code;
+            int initialCapacity = Math.max(capacity, 16);
+            dates = new int[initialCapacity];
+            openingPrices = new long[initialCapacity];
+            highestPrices = new long[initialCapacity];
+            lowestPrices = new long[initialCapacity];
+            closingPrices = new long[initialCapacity];
+            changes = new long[initialCapacity];
+            tradeVolumes = new long[initialCapacity];
+            tradeValues = new long[initialCapacity];
+            transactions = new long[initialCapacity];
+        }
+
+        public Builder add(StockData stockData) {
+            ensureCapacity();
+            priceScale = Math.max(priceScale, maxScale(stockData));
+            dates[size] = (int) stockData.getDate().toEpochDay();
+            openingPrices[size] = toFixed(stockData.getOpeningPrice());
+            highestPrices[size] = toFixed(stockData.getHighestPrice());
+            lowestPrices[size] = toFixed(stockData.getLowestPrice());
+            closingPrices[size] = toFixed(stockData.getClosingPrice());
+            changes[size] = toFixed(stockData.getChange());
+            tradeVolumes[size] = toLong(stockData.getTradeVolume());
+            tradeValues[size] = toLong(stockData.getTradeValue());
+            transactions[size] = toLong(stockData.getTransaction());
+            size++;
+            return this;
+        }
+
+        private void add(StockSeries series, int index) {
+            ensureCapacity();
+            priceScale = Math.max(priceScale, series.priceScale);
+            dates[size] = series.dates[index];
+            openingPrices[size] = series.openingPrices[index];
+            highestPrices[size] = series.highestPrices[index];
+            lowestPrices[size] = series.lowestPrices[index];
+            closingPrices[size] = series.closingPrices[index];
+            changes[size] = series.changes[index];
+            tradeVolumes[size] = series.tradeVolumes[index];
+            tradeValues[size] = series.tradeValues[index];
+            transactions[size] = series.transactions[index];
+            size++;
+        }
+
+        private void ensureCapacity() {
+            if (size < dates.length) {
+                return;
+            }
+            int capacity = dates.length * 2;
+            dates = Arrays.copyOf(dates, capacity);
+            openingPrices = Arrays.copyOf(openingPrices, capacity);
+            highestPrices = Arrays.copyOf(highestPrices, capacity);
+            lowestPrices = Arrays.copyOf(lowestPrices, capacity);
+            closingPrices = Arrays.copyOf(closingPrices, capacity);
+            changes = Arrays.copyOf(changes, capacity);
+            tradeVolumes = Arrays.copyOf(tradeVolumes, capacity);
+            tradeValues = Arrays.copyOf(tradeValues, capacity);
+            transactions = Arrays.copyOf(transactions, capacity);
+        }
+
+        /**
+         * 依日期排序並去除重複日期(保留最後加入者)
+         *
+         * @return StockSeries
+         */
+        public StockSeries build() {
+            if (isStrictlyAscending()) {
+                return new StockSeries(code, priceScale,
+                        Arrays.copyOf(dates, size),
+                        Arrays.copyOf(openingPrices, size),
+                        Arrays.copyOf(highestPrices, size),
+                        Arrays.copyOf(lowestPrices, size),
+                        Arrays.copyOf(closingPrices, size),
+                        Arrays.copyOf(changes, size),
+                        Arrays.copyOf(tradeVolumes, size),
+                        Arrays.copyOf(tradeValues, size),
+                        Arrays.copyOf(transactions, size));
+            }
+
+            Integer[] order = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+            Arrays.sort(order, Comparator.<Integer>comparingInt(i -> dates[i]).thenComparingInt(i -> i));
+
+            int[] keep = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int index = order[i];
+                if (count > 0 && dates[keep[count - 1]] == dates[index]) {
+                    keep[count - 1] = index;
+                } else {
+                    keep[count++] = index;
+                }
+            }
+
+            return new StockSeries(code, priceScale,
+                    pick(dates, keep, count),
+                    pick(openingPrices, keep, count),
+                    pick(highestPrices, keep, count),
+                    pick(lowestPrices, keep, count),
+                    pick(closingPrices, keep, count),
+                    pick(changes, keep, count),
+                    pick(tradeVolumes, keep, count),
+                    pick(tradeValues, keep, count),
+                    pick(transactions, keep, count));
+        }
+
+        /**
+         * 加入順序已依日期遞增且不重複時, 不需排序
+         *
+         * @return boolean
+         */
+        private boolean isStrictlyAscending() {
+            for (int i = 1; i < size; i++) {
+                if (dates[i - 1] >= dates[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int[] pick(int[] source, int[] keep, int count) {
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = source[keep[i]];
+            }
+            return result;
+        }
+
+        private static long[] pick(long[] source, int[] keep, int count) {
+            long[] result = new long[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = source[keep[i]];
+            }
+            return result;
+        }
+    }
+}
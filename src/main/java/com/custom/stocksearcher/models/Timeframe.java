@@ -0,0 +1,82 @@
+package com.custom.stocksearcher.models;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Objects;
+
+/**
+ * K線週期
+ */
+public enum Timeframe {
+    DAY,
+    /**
+     * 週K, 以週一為週期起點
+     */
+    WEEK,
+    /**
+     * 月K, 以每月1日為週期起點
+     */
+    MONTH;
+
+    /**
+     * 依名稱取得週期, 不分大小寫, null或空白為日K
+     *
+     * @param name 名稱
+     * @return Timeframe
+     */
+    public static Timeframe of(String name) {
+        if (Objects.isNull(name) || name.isBlank()) {
+            return DAY;
+        }
+        for (Timeframe timeframe : values()) {
+            if (timeframe.name().equalsIgnoreCase(name.trim())) {
+                return timeframe;
+            }
+        }
+        throw new IllegalArgumentException("unknown timeframe: " + name);
+    }
+
+    /**
+     * 日期所屬週期的起始日
+     *
+     * @param date 日期
+     * @return 週期起始日
+     */
+    public LocalDate getPeriodStart(LocalDate date) {
+        return switch (this) {
+            case DAY -> date;
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+        };
+    }
+
+    /**
+     * 往前推算至少涵蓋count根K棒的日期
+     * 日K以週計算, 一般連假下仍足夠
+     *
+     * @param date  基準日期
+     * @param count K棒數
+     * @return 日期
+     */
+    public LocalDate minusBars(LocalDate date, int count) {
+        return switch (this) {
+            case DAY, WEEK -> date.minusWeeks(count + 1L);
+            case MONTH -> date.minusMonths(count + 1L);
+        };
+    }
+
+    /**
+     * 週期起始日的下一個週期起始日
+     *
+     * @param periodStart 週期起始日
+     * @return 下一個週期起始日
+     */
+    public LocalDate nextPeriodStart(LocalDate periodStart) {
+        return switch (this) {
+            case DAY -> periodStart.plusDays(1);
+            case WEEK -> periodStart.plusWeeks(1);
+            case MONTH -> periodStart.plusMonths(1);
+        };
+    }
+}
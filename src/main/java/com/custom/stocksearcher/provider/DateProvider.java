@@ -1,5 +1,6 @@
 package com.custom.stocksearcher.provider;
 
+import com.custom.stocksearcher.models.Timeframe;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDate;
@@ -36,6 +37,26 @@ public class DateProvider {
         return monthList;
     }
 
+    /**
+     * 取得開始與結束日期涵蓋的各週期起始日
+     *
+     * @param beginDate 開始日期
+     * @param endDate   結束日期
+     * @param timeframe 週期
+     * @return List<週期起始日>
+     */
+    public List<LocalDate> calculatePeriodList(LocalDate beginDate, LocalDate endDate, Timeframe timeframe) {
+        List<LocalDate> periodList = new ArrayList<>();
+        LocalDate currentPeriod = timeframe.getPeriodStart(beginDate);
+
+        while (!currentPeriod.isAfter(endDate)) {
+            periodList.add(currentPeriod);
+            currentPeriod = timeframe.nextPeriodStart(currentPeriod);
+        }
+
+        return periodList;
+    }
+
     /**
      * 取得系統日期
      *
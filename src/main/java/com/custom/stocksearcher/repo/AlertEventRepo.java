@@ -0,0 +1,13 @@
+package com.custom.stocksearcher.repo;
+
+import com.custom.stocksearcher.models.AlertEvent;
+import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+@Repository
+public interface AlertEventRepo extends ReactiveElasticsearchRepository<AlertEvent, String> {
+    Flux<AlertEvent> findByUserAndDateGreaterThanEqualOrderByDateDesc(String user, LocalDate date);
+}
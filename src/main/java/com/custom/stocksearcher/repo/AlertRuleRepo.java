@@ -0,0 +1,13 @@
+package com.custom.stocksearcher.repo;
+
+import com.custom.stocksearcher.models.AlertRule;
+import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface AlertRuleRepo extends ReactiveElasticsearchRepository<AlertRule, String> {
+    Flux<AlertRule> findByUser(String user);
+
+    Flux<AlertRule> findByEnabledTrue();
+}
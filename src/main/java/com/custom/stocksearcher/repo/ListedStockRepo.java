@@ -2,13 +2,23 @@ package com.custom.stocksearcher.repo;
 
 import com.custom.stocksearcher.models.listed.ListedStock;
 import com.custom.stocksearcher.models.listed.ListedStockId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
 import java.time.LocalDate;
+import java.util.Collection;
 
 @Repository
 public interface ListedStockRepo extends ReactiveElasticsearchRepository<ListedStock, ListedStockId> {
     Flux<ListedStock> findByListedStockId_CodeAndDateBetweenOrderByDate(String code, LocalDate begin, LocalDate end);
+
+    Flux<ListedStock> findByListedStockId_CodeAndDateLessThanEqualOrderByDateDesc(String code, LocalDate date, Pageable pageable);
+
+    Flux<ListedStock> findByListedStockId_CodeInAndDateBetweenOrderByDate(Collection<String> codes, LocalDate begin, LocalDate end);
+
+    Flux<ListedStock> findByDateGreaterThanEqual(LocalDate date);
+
+    Flux<ListedStock> findByUpdateDate(LocalDate updateDate);
 }
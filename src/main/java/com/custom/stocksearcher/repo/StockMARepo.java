@@ -0,0 +1,19 @@
+package com.custom.stocksearcher.repo;
+
+import com.custom.stocksearcher.models.StockMA;
+import com.custom.stocksearcher.models.StockMAId;
+import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+@Repository
+public interface StockMARepo extends ReactiveElasticsearchRepository<StockMA, StockMAId> {
+    Flux<StockMA> findByStockMAId_CodeAndDateBetweenOrderByDate(String code, LocalDate begin, LocalDate end);
+
+    Mono<StockMA> findFirstByOrderByDateAsc();
+
+    Mono<StockMA> findFirstByOrderByDateDesc();
+}
@@ -2,13 +2,23 @@ package com.custom.stocksearcher.repo;
 
 import com.custom.stocksearcher.models.tpex.TPExStock;
 import com.custom.stocksearcher.models.tpex.TPExStockId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
 import java.time.LocalDate;
+import java.util.Collection;
 
 @Repository
 public interface TPExStockRepo extends ReactiveElasticsearchRepository<TPExStock, TPExStockId> {
     Flux<TPExStock> findByTpExStockId_CodeAndDateBetweenOrderByDate(String code, LocalDate begin, LocalDate end);
+
+    Flux<TPExStock> findByTpExStockId_CodeAndDateLessThanEqualOrderByDateDesc(String code, LocalDate date, Pageable pageable);
+
+    Flux<TPExStock> findByTpExStockId_CodeInAndDateBetweenOrderByDate(Collection<String> codes, LocalDate begin, LocalDate end);
+
+    Flux<TPExStock> findByDateGreaterThanEqual(LocalDate date);
+
+    Flux<TPExStock> findByUpdateDate(LocalDate updateDate);
 }
@@ -0,0 +1,44 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.CompanyStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Predicate;
+
+/**
+ * 常駐記憶體的公司代號目錄
+ */
+public interface CompanyDirectory {
+    /**
+     * 根據股票代號取得公司
+     *
+     * @param code 股票代號
+     * @return Mono<CompanyStatus>
+     */
+    Mono<CompanyStatus> findByCode(String code);
+
+    /**
+     * 取得全部公司
+     *
+     * @return Flux<CompanyStatus>
+     */
+    Flux<CompanyStatus> findAll();
+
+    /**
+     * 以關鍵字查詢代號或名稱, 依符合程度排序(代號完全相符優先)
+     *
+     * @param keyword 關鍵字
+     * @param limit   最多筆數
+     * @param filter  額外過濾條件
+     * @return Flux<CompanyStatus>
+     */
+    Flux<CompanyStatus> search(String keyword, int limit, Predicate<CompanyStatus> filter);
+
+    /**
+     * company_status今日有更新時重新載入
+     *
+     * @return Mono<Void>
+     */
+    Mono<Void> refresh();
+}
@@ -0,0 +1,38 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.CodeParam;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * 查詢結果快取, 以正規化後的CodeParam為key
+ * 收到新交易日資料, CodeList儲存/刪除, 公司目錄重新載入時全部失效
+ */
+public interface ResultCache {
+    /**
+     * 取得快取結果, 未命中時計算並保存
+     *
+     * @param name      查詢名稱
+     * @param codeParam 查詢條件, 需在計算前傳入(計算過程可能修改codeParam)
+     * @param supplier  計算結果
+     * @return 結果flux
+     */
+    <T> Flux<T> getFlux(String name, CodeParam codeParam, Supplier<Flux<T>> supplier);
+
+    /**
+     * 取得快取結果, 未命中時計算並保存
+     *
+     * @param name      查詢名稱
+     * @param codeParam 查詢條件, 需在計算前傳入(計算過程可能修改codeParam)
+     * @param supplier  計算結果
+     * @return 結果mono
+     */
+    <T> Mono<T> getMono(String name, CodeParam codeParam, Supplier<Mono<T>> supplier);
+
+    /**
+     * 全部失效
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,42 @@
+package com.custom.stocksearcher.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * 全市場掃描的同時執行數控制
+ * ES查詢使用AIMD動態上限, 計算使用固定上限, 超過上限者排隊
+ * gauge: stock.scan.limit / stock.scan.in-flight / stock.scan.queue {type=fetch|calculation}
+ */
+public interface ScanExecutor {
+    /**
+     * 執行ES查詢
+     *
+     * @param supplier 查詢內容
+     * @return 結果
+     */
+    <T> Mono<T> fetch(Supplier<Mono<T>> supplier);
+
+    /**
+     * 執行CPU計算
+     *
+     * @param supplier 計算內容
+     * @return 結果
+     */
+    <T> Mono<T> calculate(Supplier<Mono<T>> supplier);
+
+    /**
+     * 上游flatMap的ES查詢並行數上限
+     *
+     * @return 動態上限的最大值
+     */
+    int getMaxFetchConcurrency();
+
+    /**
+     * 上游flatMap的計算並行數上限
+     *
+     * @return 計算上限
+     */
+    int getCalculationConcurrency();
+}
@@ -0,0 +1,48 @@
+package com.custom.stocksearcher.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * 全市場掃描的分段計時與篩選命中率
+ * 計時: stock.scan.stage{stage}, 篩選: stock.scan.filter{filter, result=pass|reject}
+ */
+public interface ScanMetrics {
+    /**
+     * 計時Flux, 由subscribe至結束(含上游)
+     *
+     * @param stage     階段名稱
+     * @param stageFlux 要計時的flux
+     * @return 計時後的flux
+     */
+    <T> Flux<T> timeStage(String stage, Flux<T> stageFlux);
+
+    /**
+     * 計時Mono, 由subscribe至結束(含上游)
+     *
+     * @param stage     階段名稱
+     * @param stageMono 要計時的mono
+     * @return 計時後的mono
+     */
+    <T> Mono<T> timeStage(String stage, Mono<T> stageMono);
+
+    /**
+     * 計時同步執行的階段
+     *
+     * @param stage    階段名稱
+     * @param supplier 執行內容
+     * @return 執行結果
+     */
+    <T> T recordStage(String stage, Supplier<T> supplier);
+
+    /**
+     * 記錄篩選結果
+     *
+     * @param filter 篩選條件名稱
+     * @param passed 是否通過
+     * @return passed
+     */
+    boolean recordFilter(String filter, boolean passed);
+}
@@ -0,0 +1,59 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.AlertEvent;
+import com.custom.stocksearcher.models.AlertRule;
+import com.custom.stocksearcher.models.StockData;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 告警規則Service
+ * 新日K資料寫入時, 只對有新資料的股票評估規則, 觸發結果存入alert_event
+ */
+public interface StockAlert {
+    /**
+     * 儲存告警規則
+     *
+     * @param alertRule 告警規則
+     * @return 儲存結果
+     * @throws IllegalArgumentException 條件語法錯誤或使用區間統計條件
+     */
+    Mono<AlertRule> saveAlertRule(AlertRule alertRule);
+
+    /**
+     * 取得歸屬於用戶的告警規則
+     *
+     * @param user 用戶名
+     * @return Flux<AlertRule>
+     */
+    Flux<AlertRule> getAlertRulesByUser(String user);
+
+    /**
+     * 刪除告警規則, 已觸發的紀錄保留
+     *
+     * @param alertRuleId 規則id
+     * @return Mono<Void>
+     */
+    Mono<Void> deleteAlertRule(String alertRuleId);
+
+    /**
+     * 取得用戶的告警觸發紀錄
+     *
+     * @param user      用戶名
+     * @param beginDate 資料日期起(含)
+     * @return 依日期新到舊
+     */
+    Flux<AlertEvent> getAlertEventsByUser(String user, LocalDate beginDate);
+
+    /**
+     * 以新資料評估所有啟用中的規則
+     *
+     * @param stockDataMap code -> 新日K資料
+     * @return 觸發筆數
+     */
+    Mono<Long> evaluate(Map<String, Collection<StockData>> stockDataMap);
+}
@@ -0,0 +1,18 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.BacktestParam;
+import com.custom.stocksearcher.models.BacktestResult;
+import reactor.core.publisher.Mono;
+
+/**
+ * 策略回測Service
+ */
+public interface StockBacktest {
+    /**
+     * 依進出場條件回測範圍內所有股票
+     *
+     * @param backtestParam 回測參數
+     * @return 交易統計, 條件不合法時為IllegalArgumentException
+     */
+    Mono<BacktestResult> backtest(BacktestParam backtestParam);
+}
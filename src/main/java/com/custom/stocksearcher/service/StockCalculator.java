@@ -4,6 +4,7 @@ import com.custom.stocksearcher.models.CodeParam;
 import com.custom.stocksearcher.models.StockBumpy;
 import com.custom.stocksearcher.models.StockData;
 import com.custom.stocksearcher.models.StockMAResult;
+import com.custom.stocksearcher.models.StockRangeExtremes;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -22,6 +23,15 @@ public interface StockCalculator {
      */
     Mono<StockBumpy> getRangeOfHighAndLowPoint(Flux<StockData> stockDataFlux, CodeParam codeParam);
 
+    /**
+     * 由已取得的區間極值計算, 不需逐筆股價
+     *
+     * @param stockRangeExtremes 區間極值
+     * @param codeParam          查詢bean
+     * @return result
+     */
+    Mono<StockBumpy> getRangeOfHighAndLowPoint(StockRangeExtremes stockRangeExtremes, CodeParam codeParam);
+
     /**
      * 取得StockMAResult Flux
      * 暫定為計算MA5 MA10 MA20 MA60
@@ -33,13 +43,4 @@ public interface StockCalculator {
      * @return 計算結果StockMAResult Flux
      */
     Flux<StockMAResult> getStockMa(Flux<StockData> stockDataFlux, String code, LocalDate beginDate, LocalDate endDate);
-
-    /**
-     * 預先過濾最後一筆資料
-     *
-     * @param stockDataFlux 股價資料flux
-     * @param codeParam     篩選條件
-     * @return 若有通過條件則回傳有有資料
-     */
-    Flux<StockData> preFilterLastStockData(Flux<StockData> stockDataFlux, CodeParam codeParam);
 }
@@ -1,7 +1,15 @@
 package com.custom.stocksearcher.service;
 
+import com.custom.stocksearcher.engine.CandlestickPattern;
 import com.custom.stocksearcher.models.CandlestickType;
 import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockPatternResult;
+import com.custom.stocksearcher.models.StockSeries;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface StockCandlestick {
     /**
@@ -11,4 +19,42 @@ public interface StockCandlestick {
      * @return CandlestickType
      */
     CandlestickType detectCandlestickType(StockData stockData);
+
+    /**
+     * 批次判斷整段股價的日K型態
+     *
+     * @param stockSeries 欄式股價資料
+     * @return 與stockSeries相同index的CandlestickType
+     */
+    CandlestickType[] detectCandlestickTypes(StockSeries stockSeries);
+
+    /**
+     * 批次判斷多檔股票在指定日期的日K型態
+     *
+     * @param stockSeriesCollection 欄式股價資料
+     * @param date                  日期
+     * @return 股票代號 -> CandlestickType, 當日無資料者不列入
+     */
+    Map<String, CandlestickType> detectCandlestickTypes(Collection<StockSeries> stockSeriesCollection, LocalDate date);
+
+    /**
+     * 找出結尾日期在區間內的多根K棒型態
+     *
+     * @param stockSeries 欄式股價資料, 需包含beginDate前的K棒
+     * @param patterns    要比對的型態
+     * @param beginDate   開始日期
+     * @param endDate     結束日期
+     * @return 依日期排序的結果
+     */
+    List<StockPatternResult> detectPatterns(StockSeries stockSeries, Collection<CandlestickPattern> patterns, LocalDate beginDate, LocalDate endDate);
+
+    /**
+     * 找出在指定日期完成的多根K棒型態, 全市場查詢時由呼叫端逐檔平行執行
+     *
+     * @param stockSeries 欄式股價資料, 需包含date前的K棒
+     * @param patterns    要比對的型態
+     * @param date        日期
+     * @return 結果, 當日無資料時為空
+     */
+    List<StockPatternResult> detectPatterns(StockSeries stockSeries, Collection<CandlestickPattern> patterns, LocalDate date);
 }
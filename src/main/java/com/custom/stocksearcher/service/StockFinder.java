@@ -4,6 +4,9 @@ import com.custom.stocksearcher.models.CodeParam;
 import com.custom.stocksearcher.models.CompanyStatus;
 import com.custom.stocksearcher.models.StockData;
 import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+
+import java.util.List;
 
 /**
  * 股價查詢Service
@@ -17,6 +20,16 @@ public interface StockFinder {
      */
     Flux<StockData> findStockInfo(CodeParam codeParam);
 
+    /**
+     * 依codeParam.timeframe查詢週期K
+     * 週K/月K由日K彙總, 已結束的週期會快取, 只重新計算尚未結束的週期
+     * 第一筆為beginDate所屬週期的完整資料
+     *
+     * @param codeParam 查詢bean
+     * @return 依日期排序的週期K, 日期為週期內最後交易日
+     */
+    Flux<StockData> findStockBars(CodeParam codeParam);
+
     /**
      * 根據關鍵字查找company
      *
@@ -25,6 +38,15 @@ public interface StockFinder {
      */
     Flux<CompanyStatus> findCompaniesByKeyWord(String keyword);
 
+    /**
+     * 根據關鍵字查找company, 依符合程度排序(代號完全相符優先)
+     *
+     * @param keyword 關鍵字
+     * @param limit   最多筆數
+     * @return Flux<CompanyStatus>
+     */
+    Flux<CompanyStatus> findCompaniesByKeyWord(String keyword, int limit);
+
     /**
      * 根據條件查找股價資料(以日K棒數為主)
      *
@@ -33,4 +55,13 @@ public interface StockFinder {
      */
     Flux<StockData> getStockDataWithKlineCnt(CodeParam codeParam);
 
+    /**
+     * 批次根據條件查找多檔股價資料(以日K棒數為主)
+     * 以少量大批次查詢取得多檔資料後, 依股票代號分流
+     *
+     * @param codeParams 查詢條件bean, 除股票代號外條件需相同
+     * @return Flux<Tuple2<查詢條件, 該股票的Flux<StockData>>>
+     */
+    Flux<Tuple2<CodeParam, Flux<StockData>>> getStockDataWithKlineCnt(List<CodeParam> codeParams);
+
 }
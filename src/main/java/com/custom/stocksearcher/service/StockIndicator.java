@@ -0,0 +1,31 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.models.StockIndicatorResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+/**
+ * 技術指標查詢Service(EMA MACD RSI KD 布林通道)
+ */
+public interface StockIndicator {
+    /**
+     * 查詢區間內每日技術指標
+     *
+     * @param codeParam 查詢bean, 使用code beginDate endDate
+     * @return 依日期排序的計算結果
+     */
+    Flux<StockIndicatorResult> getStockIndicator(CodeParam codeParam);
+
+    /**
+     * 查詢endDate(含)前最後一筆技術指標
+     * 各股票最新的計算狀態常駐快取, 新交易日資料只接續計算該日
+     *
+     * @param code    股票代號
+     * @param endDate 結束日期
+     * @return 計算結果, 查無資料時為empty
+     */
+    Mono<StockIndicatorResult> getLastStockIndicator(String code, LocalDate endDate);
+}
@@ -0,0 +1,39 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.StockMAResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+/**
+ * 持久化於stock_ma的每日MA
+ * 新日K資料出現時增量更新, MA查詢改為直接讀取
+ */
+public interface StockMAIndex {
+    /**
+     * 是否涵蓋自beginDate起的資料
+     *
+     * @param beginDate 開始日期
+     * @return boolean
+     */
+    boolean isCovered(LocalDate beginDate);
+
+    /**
+     * 讀取已計算的MA
+     * 未涵蓋日期區間, 該股票寫入失敗過, 或最後一筆早於endDate前最後一個交易日時回傳empty, 由呼叫端自行計算
+     *
+     * @param code      股票代號
+     * @param beginDate 開始日期(含)
+     * @param endDate   結束日期(含)
+     * @return 依日期排序的StockMAResult
+     */
+    Flux<StockMAResult> findStockMA(String code, LocalDate beginDate, LocalDate endDate);
+
+    /**
+     * 重建全部股票的MA, 各股票平行計算
+     *
+     * @return 寫入筆數
+     */
+    Mono<Long> backfill();
+}
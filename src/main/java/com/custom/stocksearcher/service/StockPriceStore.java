@@ -0,0 +1,75 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.StockSeries;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 常駐記憶體的欄式股價資料
+ */
+public interface StockPriceStore {
+    /**
+     * 是否已完成載入
+     *
+     * @return boolean
+     */
+    boolean isReady();
+
+    /**
+     * 是否涵蓋自beginDate起的資料
+     *
+     * @param beginDate 開始日期
+     * @return boolean
+     */
+    boolean isCovered(LocalDate beginDate);
+
+    /**
+     * 常駐資料確定完整的最後日期
+     * 由snapshot啟動且尚未補齊snapshot之後的資料時有值, 之後的日期需查ES
+     *
+     * @return 日期, null代表已與ES同步
+     */
+    LocalDate getCoveredTo();
+
+    /**
+     * 取得單一股票的欄式資料
+     *
+     * @param code 股票代號
+     * @return Optional<StockSeries>
+     */
+    Optional<StockSeries> getSeries(String code);
+
+    /**
+     * 取得全部股票的欄式資料
+     *
+     * @return code -> StockSeries
+     */
+    Map<String, StockSeries> getAllSeries();
+
+    /**
+     * 由常駐資料推算交易日曆, 取得date(含)往前第count個交易日
+     * 交易日曆為所有股票日期的聯集, 停牌不影響結果; 日曆隨資料版本重建一次, 查詢為二分搜尋
+     *
+     * @param date  基準日期
+     * @param count 交易日數
+     * @return 交易日, 未載入或超出常駐範圍時為empty
+     */
+    Optional<LocalDate> findTradingDateBefore(LocalDate date, int count);
+
+    /**
+     * 由listed_stock與tpex_stock重新載入
+     *
+     * @return Mono<Void>
+     */
+    Mono<Void> reload();
+
+    /**
+     * 由listed_stock與tpex_stock匯出snapshot二進位檔, 供下次啟動時快速載入
+     *
+     * @return 檔案大小(bytes)
+     */
+    Mono<Long> exportSnapshot();
+}
@@ -0,0 +1,41 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.models.StockRangeExtremes;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 以ES aggregation計算區間極值
+ * 全市場篩選時不需取回每一筆股價, 只取得每檔股票的最高/最低/最低成交量與最後一筆
+ */
+public interface StockRangeAggregator {
+    /**
+     * 是否應以aggregation取代逐筆查詢
+     * StockPriceStore可直接提供資料時不使用
+     *
+     * @return boolean
+     */
+    boolean isPreferred();
+
+    /**
+     * 取得endDate(含)前第count個交易日
+     *
+     * @param endDate 結束日期
+     * @param count   交易日數
+     * @return 交易日, 資料不足時為最早的交易日
+     */
+    Mono<LocalDate> findTradingDateBefore(LocalDate endDate, int count);
+
+    /**
+     * 計算日期區間內各股票的極值, 上市與上櫃各以一次terms aggregation取得
+     *
+     * @param codes     股票代號
+     * @param beginDate 開始日期(含)
+     * @param endDate   結束日期(含)
+     * @return 股票代號 -> 極值, 區間內無資料者不列入
+     */
+    Mono<Map<String, StockRangeExtremes>> aggregate(Collection<String> codes, LocalDate beginDate, LocalDate endDate);
+}
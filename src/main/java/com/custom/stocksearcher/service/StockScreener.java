@@ -0,0 +1,29 @@
+package com.custom.stocksearcher.service;
+
+import com.custom.stocksearcher.engine.ScreenPipeline;
+import com.custom.stocksearcher.models.CodeParam;
+
+/**
+ * 篩選條件編譯
+ * CodeParam的固定條件與screenExpression編譯為同一組依階段執行的條件
+ */
+public interface StockScreener {
+    /**
+     * 單檔查詢的條件
+     * 價格範圍, 日K型態, 開收盤計算上下限, 最低成交量, MA比較與screenExpression
+     *
+     * @param codeParam 查詢條件
+     * @return ScreenPipeline
+     * @throws IllegalArgumentException screenExpression語法錯誤
+     */
+    ScreenPipeline compile(CodeParam codeParam);
+
+    /**
+     * 全市場掃描的條件, 另含bumpyHighLimit與bumpyLowLimit
+     *
+     * @param codeParam 查詢條件
+     * @return ScreenPipeline
+     * @throws IllegalArgumentException screenExpression語法錯誤
+     */
+    ScreenPipeline compileScan(CodeParam codeParam);
+}
@@ -0,0 +1,15 @@
+package com.custom.stocksearcher.service;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 監看股價資料更新
+ */
+public interface StockUpdateWatcher {
+    /**
+     * 查詢今日updateDate的資料, 若有尚未處理過的新資料則發布StockDataUpdatedEvent
+     *
+     * @return Mono<Void>
+     */
+    Mono<Void> checkUpdate();
+}
@@ -35,6 +35,30 @@ public interface UserStorage {
      */
     Flux<CompanyStatus> getIntersectionFromCodeList(List<String> codeListIds);
 
+    /**
+     * 取得CodeList聯集
+     *
+     * @param codeListIds
+     * @return 聯集結果, 依出現順序
+     */
+    Flux<CompanyStatus> getUnionFromCodeList(List<String> codeListIds);
+
+    /**
+     * 取得CodeList差集, 第一個CodeList扣除其餘CodeList
+     *
+     * @param codeListIds
+     * @return 差集結果
+     */
+    Flux<CompanyStatus> getDifferenceFromCodeList(List<String> codeListIds);
+
+    /**
+     * 取得CodeList對稱差集, 只出現在其中一個CodeList的code
+     *
+     * @param codeListIds
+     * @return 對稱差集結果
+     */
+    Flux<CompanyStatus> getSymmetricDifferenceFromCodeList(List<String> codeListIds);
+
     /**
      * 取得篩選範圍
      *
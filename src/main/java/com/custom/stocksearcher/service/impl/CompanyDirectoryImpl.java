@@ -0,0 +1,138 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.CompanyKeywordIndex;
+import com.custom.stocksearcher.models.CompanyStatus;
+import com.custom.stocksearcher.repo.CompanyStatusRepo;
+import com.custom.stocksearcher.service.CompanyDirectory;
+import com.custom.stocksearcher.service.ResultCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+@Service
+@Slf4j
+public class CompanyDirectoryImpl implements CompanyDirectory {
+    private final CompanyStatusRepo companyStatusRepo;
+    private final ResultCache resultCache;
+    private final AtomicReference<Snapshot> snapshotRef = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    public CompanyDirectoryImpl(CompanyStatusRepo companyStatusRepo, ResultCache resultCache) {
+        this.companyStatusRepo = companyStatusRepo;
+        this.resultCache = resultCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        refresh()
+                .onErrorResume(e -> {
+                    log.error("init company directory error {} ", e.getMessage());
+                    return Mono.empty();
+                })
+                .subscribe();
+    }
+
+    /**
+     * 定期檢查company_status是否有更新, 不阻塞排程執行緒, 上次更新未完成時略過
+     */
+    @Scheduled(initialDelayString = "${stock.company.refresh-interval:300000}", fixedDelayString = "${stock.company.refresh-interval:300000}")
+    public void scheduledRefresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            log.info("refresh company directory still running, skipped");
+            return;
+        }
+        refresh()
+                .onErrorResume(e -> {
+                    log.error("refresh company directory error {} ", e.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signalType -> refreshing.set(false))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    @Override
+    public Mono<CompanyStatus> findByCode(String code) {
+        Snapshot snapshot = snapshotRef.get();
+        if (Objects.isNull(snapshot)) {
+            return companyStatusRepo.findById(code);
+        }
+        return Mono.justOrEmpty(snapshot.companyStatusMap().get(code));
+    }
+
+    @Override
+    public Flux<CompanyStatus> findAll() {
+        Snapshot snapshot = snapshotRef.get();
+        if (Objects.isNull(snapshot)) {
+            return companyStatusRepo.findAll();
+        }
+        return Flux.fromIterable(snapshot.companyStatusMap().values());
+    }
+
+    @Override
+    public Flux<CompanyStatus> search(String keyword, int limit, Predicate<CompanyStatus> filter) {
+        Snapshot snapshot = snapshotRef.get();
+        if (Objects.isNull(snapshot)) {
+            return companyStatusRepo
+                    .findAll()
+                    .filter(filter)
+                    .filter(companyStatus -> companyStatus.getCode().contains(keyword)
+                            || (Objects.nonNull(companyStatus.getName()) && companyStatus.getName().contains(keyword)))
+                    .take(limit);
+        }
+        return Flux.defer(() -> Flux.fromIterable(snapshot.keywordIndex().search(keyword, limit, filter)));
+    }
+
+    @Override
+    public Mono<Void> refresh() {
+        LocalDate today = LocalDate.now();
+        return companyStatusRepo
+                .countByUpdateDate(today)
+                .filter(updatedCount -> {
+                    Snapshot snapshot = snapshotRef.get();
+                    return Objects.isNull(snapshot)
+                            || !today.equals(snapshot.refreshDate())
+                            || updatedCount != snapshot.updatedCount();
+                })
+                .flatMap(updatedCount -> companyStatusRepo
+                        .findAll()
+                        .collect(LinkedHashMap<String, CompanyStatus>::new,
+                                (companyStatusMap, companyStatus) -> companyStatusMap.put(companyStatus.getCode(), companyStatus))
+                        .map(companyStatusMap -> new Snapshot(today, updatedCount, Collections.unmodifiableMap(companyStatusMap),
+                                new CompanyKeywordIndex(companyStatusMap.values()))))
+                .doOnNext(snapshot -> {
+                    snapshotRef.set(snapshot);
+                    // all/listed/tpex範圍的快取結果依目錄內容計算
+                    resultCache.invalidateAll();
+                    log.info("company directory refreshed, companies: {}, updated today: {}",
+                            snapshot.companyStatusMap().size(), snapshot.updatedCount());
+                })
+                .then();
+    }
+
+    /**
+     * 不可變動的目錄快照
+     *
+     * @param refreshDate      載入日期
+     * @param updatedCount     載入時company_status當日更新筆數
+     * @param companyStatusMap code -> CompanyStatus
+     * @param keywordIndex     代號與名稱的關鍵字索引
+     */
+    private record Snapshot(LocalDate refreshDate, long updatedCount, Map<String, CompanyStatus> companyStatusMap,
+                            CompanyKeywordIndex keywordIndex) {
+    }
+}
@@ -0,0 +1,159 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.event.StockDataUpdatedEvent;
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.service.ResultCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Service
+@Slf4j
+public class ResultCacheImpl implements ResultCache {
+    private final Cache<String, List<?>> cache;
+    private final boolean enabled;
+    private final int maxEntrySize;
+    /**
+     * 每次失效遞增, 計算期間若已失效則不寫入, 避免舊資料覆蓋
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public ResultCacheImpl(MeterRegistry meterRegistry,
+                           @Value("${stock.cache.enabled:true}") boolean enabled,
+                           @Value("${stock.cache.max-weight:2000000}") long maxWeight,
+                           @Value("${stock.cache.max-entry-size:20000}") int maxEntrySize,
+                           @Value("${stock.cache.expire-after-write:PT12H}") Duration expireAfterWrite) {
+        this.enabled = enabled;
+        this.maxEntrySize = maxEntrySize;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String key, List<?> value) -> value.size() + 1)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stock.result");
+    }
+
+    @Override
+    public <T> Flux<T> getFlux(String name, CodeParam codeParam, Supplier<Flux<T>> supplier) {
+        if (!enabled) {
+            return supplier.get();
+        }
+        String key = name + ":" + toKey(codeParam);
+        return Flux.defer(() -> {
+            @SuppressWarnings("unchecked")
+            List<T> cached = (List<T>) cache.getIfPresent(key);
+            if (Objects.nonNull(cached)) {
+                return Flux.fromIterable(cached);
+            }
+            long currentGeneration = generation.get();
+            return supplier.get()
+                    .collectList()
+                    .doOnNext(result -> put(key, result, currentGeneration))
+                    .flatMapIterable(result -> result);
+        });
+    }
+
+    @Override
+    public <T> Mono<T> getMono(String name, CodeParam codeParam, Supplier<Mono<T>> supplier) {
+        if (!enabled) {
+            return supplier.get();
+        }
+        String key = name + ":" + toKey(codeParam);
+        return Mono.defer(() -> {
+            @SuppressWarnings("unchecked")
+            List<T> cached = (List<T>) cache.getIfPresent(key);
+            if (Objects.nonNull(cached)) {
+                return Mono.justOrEmpty(cached.stream().findFirst());
+            }
+            long currentGeneration = generation.get();
+            return supplier.get()
+                    .map(List::of)
+                    .defaultIfEmpty(List.of())
+                    .doOnNext(result -> put(key, result, currentGeneration))
+                    .flatMap(result -> Mono.justOrEmpty(result.stream().findFirst()));
+        });
+    }
+
+    @Override
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * 新交易日資料寫入後, 既有結果皆可能過期
+     * 需排在StockPriceStore合併之後; 若先失效, 合併前進入的查詢會以舊資料與新generation寫回快取
+     *
+     * @param event 更新事件
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onStockDataUpdated(StockDataUpdatedEvent event) {
+        invalidateAll();
+        log.info("result cache invalidated, latest: {}", event.getLatestDate());
+    }
+
+    private void put(String key, List<?> result, long expectedGeneration) {
+        if (result.size() <= maxEntrySize && generation.get() == expectedGeneration) {
+            cache.put(key, result);
+        }
+    }
+
+    /**
+     * CodeParam正規化為key
+     * BigDecimal去除尾數0, candlestickTypeList排序去重, 字串去除空白
+     *
+     * @param codeParam 查詢條件
+     * @return key
+     */
+    static String toKey(CodeParam codeParam) {
+        StringJoiner joiner = new StringJoiner("|");
+        joiner.add(normalize(codeParam.getCode()))
+                .add(normalize(codeParam.getBeginDate()))
+                .add(normalize(codeParam.getEndDate()))
+                .add(normalize(codeParam.getBumpyHighLimit()))
+                .add(normalize(codeParam.getBumpyLowLimit()))
+                .add(normalize(codeParam.getTradeVolumeLimit()))
+                .add(String.valueOf(codeParam.getBeforeEndDateDays()))
+                .add(String.valueOf(codeParam.getKlineCnt()))
+                .add(normalize(codeParam.getLastOpenCalcLimit()))
+                .add(normalize(codeParam.getLastCloseCalcLimit()))
+                .add(normalize(codeParam.getClosingPriceCompareTargetHigher()))
+                .add(normalize(codeParam.getClosingPriceCompareTargetLower()))
+                .add(Objects.isNull(codeParam.getCandlestickTypeList()) ? "" :
+                        String.join(",", codeParam.getCandlestickTypeList().stream().map(String::trim).distinct().sorted().toList()))
+                .add(String.valueOf(codeParam.isWithout4upCode()))
+                .add(normalize(codeParam.getPriceLowLimit()))
+                .add(normalize(codeParam.getPriceHighLimit()))
+                .add(String.valueOf(codeParam.getTopK()))
+                .add(normalize(codeParam.getSortKey()))
+                .add(normalize(codeParam.getScreenExpression()));
+        return joiner.toString();
+    }
+
+    private static String normalize(String value) {
+        return Objects.isNull(value) ? "" : value.trim();
+    }
+
+    private static String normalize(BigDecimal value) {
+        return Objects.isNull(value) ? "" : value.stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.AdaptiveLimiter;
+import com.custom.stocksearcher.service.ScanExecutor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+@Service
+public class ScanExecutorImpl implements ScanExecutor {
+    private final AdaptiveLimiter fetchLimiter;
+    private final AdaptiveLimiter calculationLimiter;
+    private final int maxFetchConcurrency;
+    private final int calculationConcurrency;
+
+    public ScanExecutorImpl(MeterRegistry meterRegistry,
+                            @Value("${stock.scan.fetch.initial-limit:4}") int fetchInitialLimit,
+                            @Value("${stock.scan.fetch.min-limit:1}") int fetchMinLimit,
+                            @Value("${stock.scan.fetch.max-limit:16}") int fetchMaxLimit,
+                            @Value("${stock.scan.fetch.latency-threshold:PT2S}") Duration fetchLatencyThreshold,
+                            @Value("${stock.scan.fetch.backoff-ratio:0.7}") double fetchBackoffRatio,
+                            @Value("${stock.scan.calculation.limit:0}") int calculationLimit) {
+        this.maxFetchConcurrency = Math.max(1, fetchMaxLimit);
+        this.calculationConcurrency = calculationLimit > 0 ? calculationLimit : Runtime.getRuntime().availableProcessors() * 2;
+        this.fetchLimiter = new AdaptiveLimiter(fetchInitialLimit, fetchMinLimit, fetchMaxLimit, fetchLatencyThreshold, fetchBackoffRatio);
+        this.calculationLimiter = new AdaptiveLimiter(calculationConcurrency);
+
+        registerGauges(meterRegistry, "fetch", fetchLimiter);
+        registerGauges(meterRegistry, "calculation", calculationLimiter);
+    }
+
+    @Override
+    public <T> Mono<T> fetch(Supplier<Mono<T>> supplier) {
+        return fetchLimiter.executeMono(supplier);
+    }
+
+    @Override
+    public <T> Mono<T> calculate(Supplier<Mono<T>> supplier) {
+        return calculationLimiter.executeMono(supplier);
+    }
+
+    @Override
+    public int getMaxFetchConcurrency() {
+        return maxFetchConcurrency;
+    }
+
+    @Override
+    public int getCalculationConcurrency() {
+        return calculationConcurrency;
+    }
+
+    private void registerGauges(MeterRegistry meterRegistry, String type, AdaptiveLimiter limiter) {
+        Gauge.builder("stock.scan.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("scan concurrency limit")
+                .tag("type", type)
+                .register(meterRegistry);
+        Gauge.builder("stock.scan.in-flight", limiter, AdaptiveLimiter::getInFlight)
+                .description("scan tasks in flight")
+                .tag("type", type)
+                .register(meterRegistry);
+        Gauge.builder("stock.scan.queue", limiter, AdaptiveLimiter::getQueueSize)
+                .description("scan tasks waiting for a permit")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,106 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.service.ScanMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+@Service
+public class ScanMetricsImpl implements ScanMetrics {
+    private static final String STAGE_METRIC = "stock.scan.stage";
+    private static final String FILTER_METRIC = "stock.scan.filter";
+
+    private final MeterRegistry meterRegistry;
+    /**
+     * 每個篩選條件只註冊一次counter, 評估時只需increment
+     */
+    private final Map<String, FilterCounters> filterCounters = new ConcurrentHashMap<>();
+    /**
+     * stage + outcome -> timer
+     */
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+
+    public ScanMetricsImpl(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public <T> Flux<T> timeStage(String stage, Flux<T> stageFlux) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return stageFlux.doFinally(signalType -> sample.stop(stageTimer(stage, signalType)));
+        });
+    }
+
+    @Override
+    public <T> Mono<T> timeStage(String stage, Mono<T> stageMono) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return stageMono.doFinally(signalType -> sample.stop(stageTimer(stage, signalType)));
+        });
+    }
+
+    @Override
+    public <T> T recordStage(String stage, Supplier<T> supplier) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return supplier.get();
+        } finally {
+            sample.stop(stageTimer(stage, SignalType.ON_COMPLETE));
+        }
+    }
+
+    @Override
+    public boolean recordFilter(String filter, boolean passed) {
+        FilterCounters counters = filterCounters.computeIfAbsent(filter, key ->
+                new FilterCounters(filterCounter(key, "pass"), filterCounter(key, "reject")));
+        (passed ? counters.pass() : counters.reject()).increment();
+        return passed;
+    }
+
+    private Counter filterCounter(String filter, String result) {
+        return Counter.builder(FILTER_METRIC)
+                .description("scan filter pass/reject count")
+                .tag("filter", filter)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Timer stageTimer(String stage, SignalType signalType) {
+        String outcome = outcome(signalType);
+        return stageTimers.computeIfAbsent(stage + "_" + outcome, key -> Timer.builder(STAGE_METRIC)
+                .description("scan pipeline stage latency")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    /**
+     * SignalType轉為outcome tag
+     *
+     * @param signalType 結束訊號
+     * @return success error cancel
+     */
+    public static String outcome(SignalType signalType) {
+        return switch (signalType) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancel";
+            default -> "success";
+        };
+    }
+
+    /**
+     * 單一篩選條件的通過與淘汰counter
+     */
+    private record FilterCounters(Counter pass, Counter reject) {
+    }
+}
@@ -0,0 +1,277 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.MovingAverageEngine;
+import com.custom.stocksearcher.engine.ScreenContext;
+import com.custom.stocksearcher.engine.ScreenPipeline;
+import com.custom.stocksearcher.engine.ScreenStage;
+import com.custom.stocksearcher.event.StockDataUpdatedEvent;
+import com.custom.stocksearcher.models.*;
+import com.custom.stocksearcher.repo.AlertEventRepo;
+import com.custom.stocksearcher.repo.AlertRuleRepo;
+import com.custom.stocksearcher.service.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.*;
+
+@Service
+@Slf4j
+public class StockAlertImpl implements StockAlert {
+    private final AlertRuleRepo alertRuleRepo;
+    private final AlertEventRepo alertEventRepo;
+    private final UserStorage userStorage;
+    private final StockScreener stockScreener;
+    private final StockFinder stockFinder;
+    private final StockIndicator stockIndicator;
+    private final StockPriceStore stockPriceStore;
+    private final StockMAIndex stockMAIndex;
+    private final ScanExecutor scanExecutor;
+    private final MovingAverageEngine movingAverageEngine;
+    private final boolean enabled;
+    private final int concurrency;
+
+    public StockAlertImpl(AlertRuleRepo alertRuleRepo, AlertEventRepo alertEventRepo, UserStorage userStorage,
+                          StockScreener stockScreener, StockFinder stockFinder, StockIndicator stockIndicator,
+                          StockPriceStore stockPriceStore, StockMAIndex stockMAIndex, ScanExecutor scanExecutor,
+                          MovingAverageEngine movingAverageEngine,
+                          @Value("${stock.alert.enabled:true}") boolean enabled,
+                          @Value("${stock.alert.concurrency:8}") int concurrency) {
+        this.alertRuleRepo = alertRuleRepo;
+        this.alertEventRepo = alertEventRepo;
+        this.userStorage = userStorage;
+        this.stockScreener = stockScreener;
+        this.stockFinder = stockFinder;
+        this.stockIndicator = stockIndicator;
+        this.stockPriceStore = stockPriceStore;
+        this.stockMAIndex = stockMAIndex;
+        this.scanExecutor = scanExecutor;
+        this.movingAverageEngine = movingAverageEngine;
+        this.enabled = enabled;
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public Mono<AlertRule> saveAlertRule(AlertRule alertRule) {
+        return Mono.fromCallable(() -> {
+                    if (Objects.isNull(alertRule.getCode()) || alertRule.getCode().isBlank()) {
+                        throw new IllegalArgumentException("alert rule code range is required");
+                    }
+                    if (Objects.isNull(alertRule.getCondition())) {
+                        throw new IllegalArgumentException("alert rule condition is required");
+                    }
+                    compile(alertRule);
+                    alertRule.setDate(LocalDate.now());
+                    return alertRule;
+                })
+                .flatMap(alertRuleRepo::save);
+    }
+
+    @Override
+    public Flux<AlertRule> getAlertRulesByUser(String user) {
+        return alertRuleRepo.findByUser(user);
+    }
+
+    @Override
+    public Mono<Void> deleteAlertRule(String alertRuleId) {
+        return alertRuleRepo.deleteById(alertRuleId);
+    }
+
+    @Override
+    public Flux<AlertEvent> getAlertEventsByUser(String user, LocalDate beginDate) {
+        return alertEventRepo.findByUserAndDateGreaterThanEqualOrderByDateDesc(user, beginDate);
+    }
+
+    @Override
+    public Mono<Long> evaluate(Map<String, Collection<StockData>> stockDataMap) {
+        if (stockDataMap.isEmpty()) {
+            return Mono.just(0L);
+        }
+        LocalDate updateDate = LocalDate.now();
+        // 規則逐一評估, 各規則內最多concurrency檔同時進行, 查詢再經ScanExecutor限制
+        return alertRuleRepo.findByEnabledTrue()
+                .concatMap(alertRule -> {
+                    ScreenPipeline screenPipeline;
+                    try {
+                        screenPipeline = compile(alertRule);
+                    } catch (IllegalArgumentException e) {
+                        log.error("alert rule compile error {} {} ", alertRule.getAlertRuleId(), e.getMessage());
+                        return Flux.empty();
+                    }
+                    return userStorage.getCodeRange(alertRule.getCode(), alertRule.isWithout4upCode())
+                            .filter(companyStatus -> stockDataMap.containsKey(companyStatus.getCode()))
+                            .flatMap(companyStatus -> evaluateCode(alertRule, screenPipeline, companyStatus,
+                                    stockDataMap.get(companyStatus.getCode()), updateDate)
+                                    .onErrorResume(e -> {
+                                        log.error("alert evaluate error {} {} {} ", alertRule.getAlertRuleId(), companyStatus.getCode(), e.getMessage());
+                                        return Mono.empty();
+                                    }), concurrency);
+                })
+                .collectList()
+                .flatMap(alertEvents -> alertEvents.isEmpty()
+                        ? Mono.just(0L)
+                        : alertEventRepo.saveAll(alertEvents).count());
+    }
+
+    /**
+     * 新日K資料出現時評估告警規則, 不阻塞發布事件的執行緒
+     * StockPriceStore與StockIndicator的監聽器排序在前, 評估時已反映新資料
+     *
+     * @param event 更新事件
+     */
+    @EventListener
+    public void onStockDataUpdated(StockDataUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        evaluate(event.getStockDataMap())
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(
+                        count -> log.info("alert rules evaluated, fired: {}, codes: {}, latest: {}",
+                                count, event.getStockDataMap().size(), event.getLatestDate()),
+                        e -> log.error("alert evaluate error {} ", e.getMessage()));
+    }
+
+    /**
+     * 編譯規則條件, 告警只評估單日資料, 不支援區間統計條件
+     */
+    private ScreenPipeline compile(AlertRule alertRule) {
+        ScreenPipeline screenPipeline = stockScreener.compile(alertRule.getCondition());
+        if (screenPipeline.hasPredicates(ScreenStage.RANGE)) {
+            throw new IllegalArgumentException("range conditions are not supported in alert rules: "
+                    + screenPipeline.getOrder().get(ScreenStage.RANGE));
+        }
+        return screenPipeline;
+    }
+
+    /**
+     * 以單一股票的最新一筆資料依階段評估, 只在需要時才計算MA與技術指標
+     *
+     * @param newStockDatas 此次新寫入的資料
+     */
+    private Mono<AlertEvent> evaluateCode(AlertRule alertRule, ScreenPipeline screenPipeline, CompanyStatus companyStatus,
+                                          Collection<StockData> newStockDatas, LocalDate updateDate) {
+        Optional<StockData> lastStockData = newStockDatas.stream()
+                .filter(stockData -> Objects.nonNull(stockData.getClosingPrice()))
+                .max(Comparator.comparing(StockData::getDate));
+        if (lastStockData.isEmpty()) {
+            return Mono.empty();
+        }
+        String code = companyStatus.getCode();
+        LocalDate date = lastStockData.get().getDate();
+        ScreenContext screenContext = new ScreenContext(lastStockData.get());
+        if (!screenPipeline.test(ScreenStage.BAR, screenContext)) {
+            return Mono.empty();
+        }
+
+        Mono<ScreenContext> screenContextMono = Mono.just(screenContext);
+        if (screenPipeline.hasPredicates(ScreenStage.MA)) {
+            screenContextMono = screenContextMono
+                    .flatMap(context -> findLastStockMA(code, date, newStockDatas)
+                            .filter(stockMAResult -> hasMaTarget(stockMAResult, alertRule.getCondition().getClosingPriceCompareTargetHigher())
+                                    && hasMaTarget(stockMAResult, alertRule.getCondition().getClosingPriceCompareTargetLower()))
+                            .map(stockMAResult -> {
+                                context.setStockMAResult(stockMAResult);
+                                return context;
+                            }))
+                    .filter(context -> screenPipeline.test(ScreenStage.MA, context));
+        }
+        if (screenPipeline.hasPredicates(ScreenStage.INDICATOR)) {
+            screenContextMono = screenContextMono
+                    .flatMap(context -> scanExecutor.fetch(() -> stockIndicator.getLastStockIndicator(code, date))
+                            .filter(stockIndicatorResult -> date.equals(stockIndicatorResult.getDate()))
+                            .map(stockIndicatorResult -> {
+                                context.setStockIndicatorResult(stockIndicatorResult);
+                                return context;
+                            }))
+                    .filter(context -> screenPipeline.test(ScreenStage.INDICATOR, context));
+        }
+
+        return screenContextMono.map(context -> new AlertEvent(
+                String.format("%s_%s_%s", alertRule.getAlertRuleId(), code, date),
+                alertRule.getAlertRuleId(),
+                alertRule.getName(),
+                alertRule.getUser(),
+                code,
+                companyStatus.getName(),
+                date,
+                context.getLastStockData().getClosingPrice(),
+                updateDate));
+    }
+
+    /**
+     * 比較目標的MA是否已有資料, 資料不足週期時篩選條件會以0比較, 因此不評估此規則
+     *
+     * @param stockMAResult MA
+     * @param maTarget      none MA5 MA10 MA20 MA60, null同none
+     * @return boolean
+     */
+    private boolean hasMaTarget(StockMAResult stockMAResult, String maTarget) {
+        if (Objects.isNull(maTarget)) {
+            return true;
+        }
+        return switch (maTarget) {
+            case "MA5" -> Objects.nonNull(stockMAResult.getMa5());
+            case "MA10" -> Objects.nonNull(stockMAResult.getMa10());
+            case "MA20" -> Objects.nonNull(stockMAResult.getMa20());
+            case "MA60" -> Objects.nonNull(stockMAResult.getMa60());
+            default -> true;
+        };
+    }
+
+    /**
+     * 取得date當日MA
+     * StockPriceStore的監聽器排序在前, 評估時常駐資料已含此次事件, 優先以常駐資料計算
+     * 常駐資料未涵蓋時讀取stock_ma, 仍無資料才查詢ES計算
+     */
+    private Mono<StockMAResult> findLastStockMA(String code, LocalDate date, Collection<StockData> newStockDatas) {
+        return Mono.fromSupplier(() -> calculateStoredStockMA(code, date))
+                .switchIfEmpty(scanExecutor.fetch(() -> stockMAIndex.findStockMA(code, date, date).next()))
+                .switchIfEmpty(scanExecutor.fetch(() -> fetchLastStockMA(code, date, newStockDatas)))
+                .filter(stockMAResult -> date.equals(stockMAResult.getDate()) && Objects.nonNull(stockMAResult.getPrice()));
+    }
+
+    /**
+     * 以常駐資料計算date當日MA
+     *
+     * @return StockMAResult, 常駐資料未涵蓋或尚未補齊snapshot之後的資料時為null
+     */
+    private StockMAResult calculateStoredStockMA(String code, LocalDate date) {
+        LocalDate beginDate = date.minusDays(1);
+        if (!stockPriceStore.isCovered(beginDate.minusMonths(3)) || Objects.nonNull(stockPriceStore.getCoveredTo())) {
+            return null;
+        }
+        return stockPriceStore.getSeries(code)
+                .flatMap(stockSeries -> movingAverageEngine.calculate(stockSeries, code, beginDate, date.plusDays(1)).stream()
+                        .filter(stockMAResult -> date.equals(stockMAResult.getDate()))
+                        .findFirst())
+                .orElse(null);
+    }
+
+    /**
+     * 查詢ES計算date當日MA, 與getStockMa相同回溯6個月, 事件資料合併至查詢結果, 同日期以事件資料為準
+     */
+    private Mono<StockMAResult> fetchLastStockMA(String code, LocalDate date, Collection<StockData> newStockDatas) {
+        CodeParam codeParam = new CodeParam();
+        codeParam.setCode(code);
+        codeParam.setBeginDate(date.minusDays(1).minusMonths(6).toString());
+        codeParam.setEndDate(date.toString());
+
+        return stockFinder.findStockInfo(codeParam)
+                .collect(TreeMap<LocalDate, StockData>::new, (stockDataMap, stockData) -> stockDataMap.put(stockData.getDate(), stockData))
+                .flatMapMany(stockDataMap -> {
+                    newStockDatas.stream()
+                            .filter(stockData -> Objects.nonNull(stockData.getClosingPrice()))
+                            .filter(stockData -> !stockData.getDate().isAfter(date))
+                            .forEach(stockData -> stockDataMap.put(stockData.getDate(), stockData));
+                    return movingAverageEngine.calculate(Flux.fromIterable(stockDataMap.values()), code, date.minusDays(1), date.plusDays(1));
+                })
+                .filter(stockMAResult -> date.equals(stockMAResult.getDate()) && Objects.nonNull(stockMAResult.getPrice()))
+                .next();
+    }
+}
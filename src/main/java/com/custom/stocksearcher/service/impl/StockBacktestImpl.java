@@ -0,0 +1,172 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.BacktestEngine;
+import com.custom.stocksearcher.engine.BacktestRule;
+import com.custom.stocksearcher.models.BacktestParam;
+import com.custom.stocksearcher.models.BacktestResult;
+import com.custom.stocksearcher.models.BacktestTrade;
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.models.CompanyStatus;
+import com.custom.stocksearcher.models.StockSeries;
+import com.custom.stocksearcher.service.ScanExecutor;
+import com.custom.stocksearcher.service.StockBacktest;
+import com.custom.stocksearcher.service.StockFinder;
+import com.custom.stocksearcher.service.StockPriceStore;
+import com.custom.stocksearcher.service.UserStorage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+@Service
+@Slf4j
+public class StockBacktestImpl implements StockBacktest {
+    /**
+     * MA60需要的暖機期間
+     */
+    private static final int WARMUP_MONTHS = 4;
+    private static final int FETCH_BATCH_SIZE = 50;
+
+    private final UserStorage userStorage;
+    private final StockPriceStore stockPriceStore;
+    private final StockFinder stockFinder;
+    private final ScanExecutor scanExecutor;
+    private final ForkJoinPool forkJoinPool;
+
+    public StockBacktestImpl(UserStorage userStorage, StockPriceStore stockPriceStore, StockFinder stockFinder, ScanExecutor scanExecutor,
+                             @Value("${stock.backtest.parallelism:0}") int parallelism) {
+        this.userStorage = userStorage;
+        this.stockPriceStore = stockPriceStore;
+        this.stockFinder = stockFinder;
+        this.scanExecutor = scanExecutor;
+        this.forkJoinPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        forkJoinPool.shutdown();
+    }
+
+    @Override
+    public Mono<BacktestResult> backtest(BacktestParam backtestParam) {
+        return Mono.defer(() -> {
+            LocalDate beginDate = LocalDate.parse(backtestParam.getBeginDate());
+            LocalDate endDate = LocalDate.parse(backtestParam.getEndDate());
+            BacktestEngine backtestEngine = new BacktestEngine(
+                    BacktestRule.of(backtestParam.getEntry()),
+                    BacktestRule.of(backtestParam.getExit()),
+                    Optional.ofNullable(backtestParam.getHoldingDays()).orElse(0),
+                    backtestParam.getTakeProfit(),
+                    backtestParam.getStopLoss(),
+                    beginDate, endDate);
+
+            return userStorage.getCodeRange(backtestParam.getCode(), backtestParam.isWithout4upCode())
+                    .map(CompanyStatus::getCode)
+                    .distinct()
+                    .collectList()
+                    .flatMap(codes -> loadSeries(codes, beginDate.minusMonths(WARMUP_MONTHS), endDate))
+                    .flatMap(stockSeriesList -> {
+                        long start = System.nanoTime();
+                        return Mono.fromFuture(() -> backtestEngine.runAll(forkJoinPool, stockSeriesList))
+                                .map(trades -> {
+                                    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+                                    log.info("backtest {} codes, {} trades in {} ms", stockSeriesList.size(), trades.size(), elapsedMillis);
+                                    return toResult(stockSeriesList.size(), trades, elapsedMillis, backtestParam.isWithTrades());
+                                });
+                    });
+        });
+    }
+
+    /**
+     * 常駐資料涵蓋時直接使用, 其餘分批查詢後轉為StockSeries
+     *
+     * @param codes     股票代號
+     * @param beginDate 開始日期(含暖機期間)
+     * @param endDate   結束日期
+     * @return 欄式股價資料
+     */
+    private Mono<List<StockSeries>> loadSeries(List<String> codes, LocalDate beginDate, LocalDate endDate) {
+        List<StockSeries> storeSeries = new ArrayList<>();
+        List<CodeParam> codeParams = new ArrayList<>();
+        boolean isStoreCovered = stockPriceStore.isCovered(beginDate)
+                && (Objects.isNull(stockPriceStore.getCoveredTo()) || !endDate.isAfter(stockPriceStore.getCoveredTo()));
+        for (String code : codes) {
+            Optional<StockSeries> stockSeries = isStoreCovered ? stockPriceStore.getSeries(code) : Optional.empty();
+            if (stockSeries.isPresent()) {
+                storeSeries.add(stockSeries.get());
+            } else {
+                CodeParam codeParam = new CodeParam();
+                codeParam.setCode(code);
+                codeParam.setBeginDate(beginDate.toString());
+                codeParam.setEndDate(endDate.toString());
+                codeParams.add(codeParam);
+            }
+        }
+        if (!codeParams.isEmpty()) {
+            log.info("backtest loads {} codes from elasticsearch, store covered: {}", codeParams.size(), isStoreCovered);
+        }
+
+        Flux<StockSeries> fetchedSeriesFlux = Flux.fromIterable(codeParams)
+                .buffer(FETCH_BATCH_SIZE)
+                .flatMap(batch -> scanExecutor.fetch(() -> stockFinder.getStockDataWithKlineCnt(batch)
+                        .flatMap(tuple2 -> tuple2.getT2()
+                                .collect(() -> new StockSeries.Builder(tuple2.getT1().getCode(), 512), StockSeries.Builder::add)
+                                .map(StockSeries.Builder::build))
+                        .collectList()), scanExecutor.getMaxFetchConcurrency())
+                .flatMapIterable(stockSeriesList -> stockSeriesList);
+
+        return fetchedSeriesFlux
+                .collectList()
+                .map(fetchedSeries -> {
+                    List<StockSeries> stockSeriesList = new ArrayList<>(storeSeries);
+                    stockSeriesList.addAll(fetchedSeries);
+                    return stockSeriesList;
+                });
+    }
+
+    private BacktestResult toResult(int codeCount, List<BacktestTrade> trades, long elapsedMillis, boolean withTrades) {
+        BacktestResult backtestResult = new BacktestResult();
+        backtestResult.setCodeCount(codeCount);
+        backtestResult.setTradeCount(trades.size());
+        backtestResult.setElapsedMillis(elapsedMillis);
+
+        if (!trades.isEmpty()) {
+            BigDecimal tradeCount = BigDecimal.valueOf(trades.size());
+            BigDecimal totalReturn = BigDecimal.ZERO;
+            long totalHoldingDays = 0;
+            int winCount = 0;
+            for (BacktestTrade trade : trades) {
+                totalReturn = totalReturn.add(trade.getReturnRate());
+                totalHoldingDays += trade.getHoldingDays();
+                if (trade.getReturnRate().signum() > 0) {
+                    winCount++;
+                }
+            }
+            backtestResult.setWinCount(winCount);
+            backtestResult.setWinRate(BigDecimal.valueOf(winCount * 100L).divide(tradeCount, 2, RoundingMode.HALF_UP));
+            backtestResult.setAverageReturn(totalReturn.divide(tradeCount, 2, RoundingMode.HALF_UP));
+            backtestResult.setMaxReturn(trades.stream().map(BacktestTrade::getReturnRate).max(Comparator.naturalOrder()).orElse(null));
+            backtestResult.setMinReturn(trades.stream().map(BacktestTrade::getReturnRate).min(Comparator.naturalOrder()).orElse(null));
+            backtestResult.setAverageHoldingDays(BigDecimal.valueOf(totalHoldingDays).divide(tradeCount, 2, RoundingMode.HALF_UP));
+        }
+
+        if (withTrades) {
+            List<BacktestTrade> sortedTrades = new ArrayList<>(trades);
+            sortedTrades.sort(Comparator.comparing(BacktestTrade::getCode).thenComparing(BacktestTrade::getEntryDate));
+            backtestResult.setTrades(sortedTrades);
+        }
+        return backtestResult;
+    }
+}
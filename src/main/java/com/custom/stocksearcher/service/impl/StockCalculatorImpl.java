@@ -1,88 +1,121 @@
 package com.custom.stocksearcher.service.impl;
 
+import com.custom.stocksearcher.engine.MovingAverageEngine;
+import com.custom.stocksearcher.engine.RangeStatistics;
+import com.custom.stocksearcher.engine.SingleFlight;
 import com.custom.stocksearcher.models.*;
-import com.custom.stocksearcher.repo.CompanyStatusRepo;
+import com.custom.stocksearcher.service.CompanyDirectory;
 import com.custom.stocksearcher.service.StockCalculator;
-import com.custom.stocksearcher.service.StockCandlestick;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
-import reactor.util.function.Tuples;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Comparator;
-import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class StockCalculatorImpl implements StockCalculator {
-    private final StockCandlestick stockCandlestick;
-    private final CompanyStatusRepo companyStatusRepo;
+    private final CompanyDirectory companyDirectory;
+    private final MovingAverageEngine movingAverageEngine;
+    /**
+     * 合併同時進行中的相同MA計算, 同code與日期區間的stockDataFlux視為相同
+     */
+    private final SingleFlight<String, StockMAResult> stockMaFlight = new SingleFlight<>();
 
-    public StockCalculatorImpl(StockCandlestick stockCandlestick, CompanyStatusRepo companyStatusRepo) {
-        this.stockCandlestick = stockCandlestick;
-        this.companyStatusRepo = companyStatusRepo;
+    public StockCalculatorImpl(CompanyDirectory companyDirectory, MovingAverageEngine movingAverageEngine) {
+        this.companyDirectory = companyDirectory;
+        this.movingAverageEngine = movingAverageEngine;
     }
 
     @Override
     public Mono<StockBumpy> getRangeOfHighAndLowPoint(Flux<StockData> stockDataFlux, CodeParam codeParam) {
-        Mono<StockData> firstStockData = stockDataFlux.elementAt(0);
-        Mono<StockData> lastStockData = stockDataFlux.last();
+        return stockDataFlux
+                .collect(() -> new StockSeries.Builder(codeParam.getCode(), 256), StockSeries.Builder::add)
+                .map(builder -> RangeStatistics.of(builder.build()))
+                .filter(RangeStatistics::isComplete)
+                .map(rangeStatistics -> {
+                    StockSeries stockSeries = rangeStatistics.getStockSeries();
+                    return toStockBumpy(codeParam.getCode(), stockSeries.getFirstDate(), stockSeries.getLastDate(),
+                            stockSeries.getDate(rangeStatistics.getHighestIndex()), rangeStatistics.getHighestPriceDecimal(),
+                            stockSeries.getDate(rangeStatistics.getLowestIndex()), rangeStatistics.getLowestPriceDecimal(),
+                            stockSeries.getDate(rangeStatistics.getLowestTradeVolumeIndex()), rangeStatistics.getLowestTradeVolume(),
+                            rangeStatistics.getRangeRatio());
+                })
+                .flatMap(this::fillCompanyName);
+    }
 
-        return getHighestStockData(stockDataFlux)
-                .zipWith(getLowestStockData(stockDataFlux))
-                .zipWith(getLowTradeVolume(stockDataFlux))
-                .map(tuple2 -> Tuples.of(tuple2.getT1().getT1(), tuple2.getT1().getT2(), tuple2.getT2()))
-                .flatMap(objects -> {
-                    StockBumpy stockBumpy = new StockBumpy();
-                    stockBumpy.setCode(codeParam.getCode());
+    @Override
+    public Mono<StockBumpy> getRangeOfHighAndLowPoint(StockRangeExtremes stockRangeExtremes, CodeParam codeParam) {
+        StockData highestStockData = stockRangeExtremes.getHighestStockData();
+        StockData lowestStockData = stockRangeExtremes.getLowestStockData();
+        StockData lowestTradeVolumeStockData = stockRangeExtremes.getLowestTradeVolumeStockData();
+        BigDecimal highestPrice = Stream.of(highestStockData.getHighestPrice(), highestStockData.getLowestPrice(),
+                        highestStockData.getOpeningPrice(), highestStockData.getClosingPrice())
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .orElseThrow();
+        BigDecimal lowestPrice = Stream.of(lowestStockData.getHighestPrice(), lowestStockData.getLowestPrice(),
+                        lowestStockData.getOpeningPrice(), lowestStockData.getClosingPrice())
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElseThrow();
+        long highest = StockSeries.toFixed(highestPrice);
+        long lowest = StockSeries.toFixed(lowestPrice);
 
-                    stockBumpy.setHighestDate(objects.getT1().getDate());
-                    stockBumpy.setHighestPrice(objects.getT1().getHighestPrice());
+        return Mono.just(toStockBumpy(codeParam.getCode(), stockRangeExtremes.getFirstDate(), stockRangeExtremes.getLastDate(),
+                        highestStockData.getDate(), highestPrice,
+                        lowestStockData.getDate(), lowestPrice,
+                        lowestTradeVolumeStockData.getDate(), lowestTradeVolumeStockData.getTradeVolume(),
+                        Math.floorDiv((highest - lowest) * 10_000L, lowest)))
+                .flatMap(this::fillCompanyName);
+    }
 
-                    stockBumpy.setLowestDate(objects.getT2().getDate());
-                    stockBumpy.setLowestPrice(objects.getT2().getLowestPrice());
+    /**
+     * 組成計算結果
+     *
+     * @param rangeRatio 區間漲幅比例(放大10^4)
+     * @return StockBumpy
+     */
+    private StockBumpy toStockBumpy(String code, LocalDate beginDate, LocalDate endDate,
+                                    LocalDate highestDate, BigDecimal highestPrice,
+                                    LocalDate lowestDate, BigDecimal lowestPrice,
+                                    LocalDate lowestTradeVolumeDate, BigDecimal lowestTradeVolume,
+                                    long rangeRatio) {
+        StockBumpy stockBumpy = new StockBumpy();
+        stockBumpy.setCode(code);
+        stockBumpy.setBeginDate(beginDate.toString());
+        stockBumpy.setEndDate(endDate.toString());
 
-                    stockBumpy.setLowestTradeVolumeDate(objects.getT3().getDate());
-                    stockBumpy.setLowestTradeVolume(objects.getT3().getTradeVolume());
+        stockBumpy.setHighestDate(highestDate);
+        stockBumpy.setHighestPrice(highestPrice);
 
-                    BigDecimal calcResult = stockBumpy.getHighestPrice()
-                            .subtract(stockBumpy.getLowestPrice())
-                            .divide(stockBumpy.getLowestPrice(), 4, RoundingMode.FLOOR)
-                            .multiply(BigDecimal.valueOf(100));
+        stockBumpy.setLowestDate(lowestDate);
+        stockBumpy.setLowestPrice(lowestPrice);
 
-                    stockBumpy.setCalcResult(calcResult);
-                    return Mono.just(stockBumpy);
-                }).flatMap(stockBumpy ->
-                        companyStatusRepo
-                                .findById(stockBumpy.getCode())
-                                .flatMap(companyStatus -> {
-                                    stockBumpy.setName(companyStatus.getName());
-                                    return Mono.just(stockBumpy);
-                                })
-                ).flatMap(stockBumpy ->
-                        firstStockData.flatMap(
-                                stockData -> {
-                                    stockBumpy.setBeginDate(stockData.getDate().toString());
-                                    return Mono.just(stockBumpy);
-                                }
-                        )
-                ).flatMap(stockBumpy ->
-                        lastStockData.flatMap(
-                                stockData -> {
-                                    stockBumpy.setEndDate(stockData.getDate().toString());
-                                    return Mono.just(stockBumpy);
-                                }
-                        )
-                ).map(stockBumpy -> {
+        stockBumpy.setLowestTradeVolumeDate(lowestTradeVolumeDate);
+        stockBumpy.setLowestTradeVolume(lowestTradeVolume);
+
+        stockBumpy.setCalcResult(BigDecimal.valueOf(rangeRatio, 4).multiply(BigDecimal.valueOf(100)));
+        return stockBumpy;
+    }
+
+    /**
+     * 補上公司名稱並輸出log
+     *
+     * @param stockBumpy 計算結果
+     * @return Mono<StockBumpy>
+     */
+    private Mono<StockBumpy> fillCompanyName(StockBumpy stockBumpy) {
+        return companyDirectory
+                .findByCode(stockBumpy.getCode())
+                .map(companyStatus -> {
+                    stockBumpy.setName(companyStatus.getName());
                     StringBuilder stringBuilder = new StringBuilder();
                     stringBuilder
                             .append("\n===============================================\n")
@@ -103,271 +136,13 @@ public class StockCalculatorImpl implements StockCalculator {
 
     @Override
     public Flux<StockMAResult> getStockMa(Flux<StockData> stockDataFlux, String code, LocalDate beginDate, LocalDate endDate) {
-        Flux<StockData> filteredData = stockDataFlux
-                .filter(data -> !data.getDate().isBefore(beginDate.minusMonths(3)) && !data.getDate().isAfter(endDate));
-
-        Flux<StockData> cachedData = filteredData.cache();
-
-        Flux<Integer> periods = Flux.just(5, 10, 20, 60);
-
-        return periods
-                .concatMap(period -> getStockMa(cachedData, period))
-                .groupBy(StockMAResult::getDate)
-                .flatMap(group -> group
-                        .collectList()
-                        .publishOn(Schedulers.boundedElastic())
-                        .map(stockMAResults -> {
-                            StockMAResult mergedResult = new StockMAResult();
-                            mergedResult.setCode(code);
-                            mergedResult.setDate(group.key());
-
-                            for (StockMAResult result : stockMAResults) {
-                                mergeMAResults(mergedResult, result);
-                            }
-
-                            return mergedResult;
-                        })
-                )
-                .onBackpressureBuffer(1000)
-                .filter(stockMAResult -> stockMAResult.getDate().isAfter(beginDate) && stockMAResult.getDate().isBefore(endDate))
-                .sort(Comparator.comparing(StockMAResult::getDate))
-                .onErrorResume(e -> {
-                    log.error("Error calculating MA {} ", e.getMessage());
-                    return Flux.empty();
-                })
+        String key = code + "_" + beginDate + "_" + endDate;
+        return stockMaFlight.execute(key, () -> movingAverageEngine
+                        .calculate(stockDataFlux, code, beginDate, endDate)
+                        .onErrorResume(e -> {
+                            log.error("Error calculating MA {} ", e.getMessage());
+                            return Flux.empty();
+                        }))
                 .timeout(Duration.ofSeconds(15));
     }
-
-    private void mergeMAResults(StockMAResult target, StockMAResult source) {
-        Optional.ofNullable(source.getMa5()).ifPresent(target::setMa5);
-        Optional.ofNullable(source.getMa10()).ifPresent(target::setMa10);
-        Optional.ofNullable(source.getMa20()).ifPresent(target::setMa20);
-        Optional.ofNullable(source.getMa60()).ifPresent(target::setMa60);
-        Optional.ofNullable(source.getPrice()).ifPresent(target::setPrice);
-    }
-
-    @Override
-    public Flux<StockData> preFilterLastStockData(Flux<StockData> stockDataFlux, CodeParam codeParam) {
-        return stockDataFlux
-                .buffer()
-                .flatMap(stockDataList -> {
-                    StockData lastStockData = stockDataList.get(stockDataList.size() - 1);
-                    if (!isInPriceRange(lastStockData, codeParam.getPriceLowLimit(), codeParam.getPriceHighLimit())) {
-                        return Flux.empty();
-                    }
-                    if (!isInCandlestickTypeList(lastStockData, codeParam.getCandlestickTypeList())) {
-                        return Flux.empty();
-                    }
-                    if (!isInCalcLimit(lastStockData, codeParam.getLastOpenCalcLimit(), codeParam.getLastCloseCalcLimit())) {
-                        return Flux.empty();
-                    }
-                    return Flux.fromIterable(stockDataList);
-                });
-    }
-
-    private boolean isInPriceRange(StockData stockData, BigDecimal priceLowLimit, BigDecimal priceHighLimit) {
-        BigDecimal closingPrice = stockData.getClosingPrice();
-        if (priceHighLimit.compareTo(BigDecimal.ZERO) > 0) {
-            return (closingPrice.compareTo(priceLowLimit) >= 0) && (closingPrice.compareTo(priceHighLimit) <= 0);
-        }
-        return (closingPrice.compareTo(priceLowLimit) >= 0);
-    }
-
-    /**
-     * 是否符合日K型態
-     *
-     * @param stockData           股價資料
-     * @param candlestickTypeList 型態list
-     * @return boolean
-     */
-    private boolean isInCandlestickTypeList(StockData stockData, List<String> candlestickTypeList) {
-        if (null != candlestickTypeList && !candlestickTypeList.isEmpty()) {
-            CandlestickType candlestickType = stockCandlestick.detectCandlestickType(stockData);
-            return candlestickTypeList.contains(candlestickType.getName());
-        }
-        return true;
-    }
-
-    /**
-     * 是否在條件上下限中
-     *
-     * @param stockData      股價資料
-     * @param openCalcLimit  openCalcLimit
-     * @param closeCalcLimit closeCalcLimit
-     * @return boolean
-     */
-    private boolean isInCalcLimit(StockData stockData, BigDecimal openCalcLimit, BigDecimal closeCalcLimit) {
-        BigDecimal openPrice = stockData.getOpeningPrice();
-        BigDecimal closingPrice = stockData.getClosingPrice();
-        BigDecimal lowestPrice = stockData.getLowestPrice();
-        BigDecimal lastOpenCalc = openPrice.subtract(lowestPrice).divide(lowestPrice, 4, RoundingMode.FLOOR).multiply(BigDecimal.valueOf(100));
-        BigDecimal lastCloseCalc = closingPrice.subtract(lowestPrice).divide(lowestPrice, 4, RoundingMode.FLOOR).multiply(BigDecimal.valueOf(100));
-
-        return (lastOpenCalc.compareTo(openCalcLimit) >= 0) && (lastCloseCalc.compareTo(closeCalcLimit) >= 0);
-    }
-
-    /**
-     * 根據period取得股價MA
-     *
-     * @param stockDataFlux 股價資料flux
-     * @param period        (5 10 20 60)
-     * @return 計算結果資料flux
-     */
-    private Flux<StockMAResult> getStockMa(Flux<StockData> stockDataFlux, int period) {
-        return stockDataFlux
-                .window(period, 1)
-                .flatMap(Flux::collectList)
-                .publishOn(Schedulers.boundedElastic())
-                .filter(list -> list.size() >= period)
-                .map(window -> calcStockMa(window, period));
-    }
-
-
-    /**
-     * 取得區間最少交易量
-     *
-     * @param stockDataFlux 股價Flux
-     * @return Mono<StockData>
-     */
-    private Mono<StockData> getLowTradeVolume(Flux<StockData> stockDataFlux) {
-        return stockDataFlux.reduce((stockData1, stockData2) ->
-                stockData1.getTradeVolume().compareTo(stockData2.getTradeVolume()) < 0 ?
-                        stockData1 : stockData2);
-    }
-
-    /**
-     * 取得區間最高價
-     *
-     * @param stockDataFlux 股價Flux
-     * @return Mono<StockData>
-     */
-    private Mono<StockData> getHighestStockData(Flux<StockData> stockDataFlux) {
-        return stockDataFlux.reduce((stockData1, stockData2) -> {
-            BigDecimal stock1Price = getStockDataHighest(stockData1);
-            BigDecimal stock2Price = getStockDataHighest(stockData2);
-            stockData1.setHighestPrice(stock1Price);
-            stockData2.setHighestPrice(stock2Price);
-
-            if (stock1Price == null) {
-                return stockData2;
-            }
-            if (stock2Price == null) {
-                return stockData1;
-            }
-
-            return stock1Price.compareTo(stock2Price) > 0 ? stockData1 : stockData2;
-        });
-    }
-
-    /**
-     * 取得區間最低價
-     *
-     * @param stockDataFlux 股價Flux
-     * @return Mono<StockData>
-     */
-    private Mono<StockData> getLowestStockData(Flux<StockData> stockDataFlux) {
-        return stockDataFlux.reduce((stockData1, stockData2) -> {
-            BigDecimal stock1Price = getStockDataLowest(stockData1);
-            BigDecimal stock2Price = getStockDataLowest(stockData2);
-            stockData1.setLowestPrice(stock1Price);
-            stockData2.setLowestPrice(stock2Price);
-
-            if (stock1Price == null) {
-                return stockData2;
-            }
-            if (stock2Price == null) {
-                return stockData1;
-            }
-
-            return stock1Price.compareTo(stock2Price) < 0 ? stockData1 : stockData2;
-        });
-    }
-
-    /**
-     * 取得當日最低價
-     *
-     * @param stockData 股價bean
-     * @return result
-     */
-    private BigDecimal getStockDataLowest(StockData stockData) {
-        BigDecimal highestPrice = stockData.getHighestPrice();
-        BigDecimal lowestPrice = stockData.getLowestPrice();
-        BigDecimal openingPrice = stockData.getOpeningPrice();
-        BigDecimal closingPrice = stockData.getClosingPrice();
-
-        return Stream.of(highestPrice, lowestPrice, openingPrice, closingPrice)
-                .filter(Objects::nonNull)
-                .min(Comparator.naturalOrder())
-                .orElse(null);
-    }
-
-    /**
-     * 取得當日最高價
-     *
-     * @param stockData 股價bean
-     * @return result
-     */
-    private BigDecimal getStockDataHighest(StockData stockData) {
-        BigDecimal highestPrice = stockData.getHighestPrice();
-        BigDecimal lowestPrice = stockData.getLowestPrice();
-        BigDecimal openingPrice = stockData.getOpeningPrice();
-        BigDecimal closingPrice = stockData.getClosingPrice();
-
-        return Stream.of(highestPrice, lowestPrice, openingPrice, closingPrice)
-                .filter(Objects::nonNull)
-                .max(Comparator.naturalOrder())
-                .orElse(null);
-    }
-
-
-    /**
-     * StockMAResult 封裝
-     *
-     * @param window StockDataList
-     * @param period 計算天數
-     * @return StockMAResult MA計算bean
-     */
-    private StockMAResult calcStockMa(List<StockData> window, int period) {
-        BigDecimal ma = calculateMA(window, period);
-        StockData lastData = window.get(window.size() - 1);
-        StockMAResult stockMAResult = new StockMAResult();
-
-        switch (period) {
-            case 5 -> stockMAResult.setMa5(ma);
-            case 10 -> stockMAResult.setMa10(ma);
-            case 20 -> stockMAResult.setMa20(ma);
-            case 60 -> stockMAResult.setMa60(ma);
-        }
-
-        stockMAResult.setDate(lastData.getDate());
-        stockMAResult.setPrice(lastData.getClosingPrice());
-
-        return stockMAResult;
-    }
-
-    /**
-     * 實際計算MA
-     *
-     * @param window stockDataList
-     * @param period 計算天數
-     * @return 計算結果
-     */
-    private BigDecimal calculateMA(List<StockData> window, int period) {
-        if (window.size() < period) {
-            return null;
-        }
-
-        BigDecimal sum = BigDecimal.ZERO;
-        for (int i = window.size() - period; i < window.size(); i++) {
-            BigDecimal closingPrice = window.get(i).getClosingPrice();
-            if (Objects.isNull(closingPrice)) {
-                closingPrice = BigDecimal.ZERO;
-            }
-            sum = sum.add(closingPrice);
-        }
-
-        return sum.divide(BigDecimal.valueOf(period), RoundingMode.HALF_UP);
-    }
-
-
 }
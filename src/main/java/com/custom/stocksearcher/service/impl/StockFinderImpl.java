@@ -1,39 +1,82 @@
 package com.custom.stocksearcher.service.impl;
 
+import com.custom.stocksearcher.engine.BarRollup;
+import com.custom.stocksearcher.engine.SingleFlight;
+import com.custom.stocksearcher.event.StockDataUpdatedEvent;
 import com.custom.stocksearcher.models.CodeParam;
 import com.custom.stocksearcher.models.CompanyStatus;
 import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.Timeframe;
 import com.custom.stocksearcher.models.listed.ListedStock;
 import com.custom.stocksearcher.models.tpex.TPExStock;
-import com.custom.stocksearcher.repo.CompanyStatusRepo;
+import com.custom.stocksearcher.provider.DateProvider;
 import com.custom.stocksearcher.repo.ListedStockRepo;
 import com.custom.stocksearcher.repo.TPExStockRepo;
+import com.custom.stocksearcher.service.CompanyDirectory;
 import com.custom.stocksearcher.service.StockFinder;
+import com.custom.stocksearcher.service.StockPriceStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import java.time.LocalDate;
-import java.util.Comparator;
-import java.util.Objects;
+import java.util.*;
 
 @Service
 @Slf4j
 public class StockFinderImpl implements StockFinder {
+    private static final int KLINE_FETCH_SLACK = 10;
+
     private final ListedStockRepo listedStockRepo;
-    private final CompanyStatusRepo companyStatusRepo;
+    private final CompanyDirectory companyDirectory;
     private final TPExStockRepo tpExStockRepo;
+    private final StockPriceStore stockPriceStore;
+    /**
+     * 合併同時進行中的相同ES查詢
+     */
+    private final SingleFlight<String, StockData> stockInfoFlight = new SingleFlight<>();
+
+    private final DateProvider dateProvider;
+    /**
+     * 已結束週期的週期K, key: 代號_週期_週期起始日, 該週期無交易時為Optional.empty()
+     */
+    private final Cache<String, Optional<StockData>> rollupCache;
 
-    public StockFinderImpl(ListedStockRepo listedStockRepo, CompanyStatusRepo companyStatusRepo, TPExStockRepo tpExStockRepo) {
+    public StockFinderImpl(ListedStockRepo listedStockRepo, CompanyDirectory companyDirectory, TPExStockRepo tpExStockRepo, StockPriceStore stockPriceStore,
+                           DateProvider dateProvider, MeterRegistry meterRegistry,
+                           @Value("${stock.rollup.max-size:1000000}") long rollupMaxSize) {
         this.listedStockRepo = listedStockRepo;
-        this.companyStatusRepo = companyStatusRepo;
+        this.companyDirectory = companyDirectory;
         this.tpExStockRepo = tpExStockRepo;
+        this.stockPriceStore = stockPriceStore;
+        this.dateProvider = dateProvider;
+        this.rollupCache = Caffeine.newBuilder()
+                .maximumSize(rollupMaxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, rollupCache, "stock.rollup");
     }
 
 
     @Override
     public Flux<StockData> findStockInfo(CodeParam codeParam) {
-        return Flux.from(companyStatusRepo.findById(codeParam.getCode()))
+        Optional<Flux<StockData>> storeStockDataFlux = findFromStore(codeParam);
+        if (storeStockDataFlux.isPresent()) {
+            return storeStockDataFlux.get();
+        }
+
+        String key = codeParam.getCode() + "_" + codeParam.getBeginDate() + "_" + codeParam.getEndDate();
+        return stockInfoFlight.execute(key, () -> Flux.from(companyDirectory.findByCode(codeParam.getCode()))
                 .flatMap(companyStatus -> {
                     if (companyStatus.isTPE()) {
                         return findTPExStock(codeParam);
@@ -41,42 +84,333 @@ public class StockFinderImpl implements StockFinder {
                         return findListedStock(codeParam);
                     }
                 })
-                .filter(this::verifyStockData);
+                .filter(this::verifyStockData));
+    }
+
+    @Override
+    public Flux<StockData> findStockBars(CodeParam codeParam) {
+        return Flux.defer(() -> {
+            Timeframe timeframe = Timeframe.of(codeParam.getTimeframe());
+            if (timeframe == Timeframe.DAY) {
+                return findStockInfo(codeParam);
+            }
+
+            String code = codeParam.getCode();
+            LocalDate endDate = LocalDate.parse(codeParam.getEndDate());
+            List<LocalDate> periodList = dateProvider.calculatePeriodList(LocalDate.parse(codeParam.getBeginDate()), endDate, timeframe);
+
+            // 由前往後取已快取的週期, 遇到第一個未快取的週期後全部重新彙總
+            List<StockData> cachedBars = new ArrayList<>();
+            int index = 0;
+            for (; index < periodList.size(); index++) {
+                Optional<StockData> cachedBar = rollupCache.getIfPresent(toRollupKey(code, timeframe, periodList.get(index)));
+                if (Objects.isNull(cachedBar)) {
+                    break;
+                }
+                cachedBar.ifPresent(cachedBars::add);
+            }
+            if (index == periodList.size()) {
+                return Flux.fromIterable(cachedBars);
+            }
+
+            List<LocalDate> uncachedPeriodList = periodList.subList(index, periodList.size());
+            CodeParam dailyCodeParam = new CodeParam();
+            dailyCodeParam.setCode(code);
+            dailyCodeParam.setBeginDate(uncachedPeriodList.get(0).toString());
+            dailyCodeParam.setEndDate(endDate.toString());
+            Flux<StockData> rollupFlux = BarRollup.rollup(findStockInfo(dailyCodeParam), timeframe)
+                    .collectList()
+                    .doOnNext(bars -> cacheClosedPeriods(code, timeframe, uncachedPeriodList, bars))
+                    .flatMapIterable(bars -> bars);
+
+            return Flux.concat(Flux.fromIterable(cachedBars), rollupFlux);
+        });
+    }
+
+    /**
+     * 快取已結束的週期
+     * 最後一筆之後已有交易的週期才確定結束, 因此最後一筆所屬週期與之後的週期不快取
+     *
+     * @param code       股票代號
+     * @param timeframe  週期
+     * @param periodList 本次彙總涵蓋的週期起始日
+     * @param bars       彙總結果
+     */
+    private void cacheClosedPeriods(String code, Timeframe timeframe, List<LocalDate> periodList, List<StockData> bars) {
+        if (bars.isEmpty()) {
+            return;
+        }
+        Map<LocalDate, StockData> barMap = new HashMap<>();
+        bars.forEach(bar -> barMap.put(timeframe.getPeriodStart(bar.getDate()), bar));
+        LocalDate openPeriod = timeframe.getPeriodStart(bars.get(bars.size() - 1).getDate());
+        for (LocalDate period : periodList) {
+            if (!period.isBefore(openPeriod)) {
+                break;
+            }
+            rollupCache.put(toRollupKey(code, timeframe, period), Optional.ofNullable(barMap.get(period)));
+        }
+    }
+
+    /**
+     * 新資料可能為既有日期的修正, 失效該日期所屬的週期
+     *
+     * @param event 更新事件
+     */
+    @EventListener
+    public void onStockDataUpdated(StockDataUpdatedEvent event) {
+        event.getStockDataMap().forEach((code, stockDataList) -> stockDataList.forEach(stockData -> {
+            for (Timeframe timeframe : Timeframe.values()) {
+                if (timeframe != Timeframe.DAY) {
+                    rollupCache.invalidate(toRollupKey(code, timeframe, timeframe.getPeriodStart(stockData.getDate())));
+                }
+            }
+        }));
+    }
+
+    private String toRollupKey(String code, Timeframe timeframe, LocalDate periodStart) {
+        return code + "_" + timeframe + "_" + periodStart;
     }
 
     @Override
     public Flux<CompanyStatus> findCompaniesByKeyWord(String keyword) {
-        if (Objects.isNull(keyword) || keyword.length() < 2) {
+        return findCompaniesByKeyWord(keyword, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Flux<CompanyStatus> findCompaniesByKeyWord(String keyword, int limit) {
+        if (Objects.isNull(keyword) || keyword.trim().length() < 2) {
             return Flux.empty();
         }
-        return companyStatusRepo
-                .findAll()
-                .filter(companyStatus -> {
+        return companyDirectory
+                .search(keyword, limit, companyStatus -> {
                     if (companyStatus.isTPE()) {
                         return companyStatus.getCode().length() != 6;
                     } else {
                         return true;
                     }
-                })
-                .filter(companyStatus -> companyStatus.toString().contains(keyword));
+                });
     }
 
     @Override
     public Flux<StockData> getStockDataWithKlineCnt(CodeParam codeParam) {
         Integer klineCnt = codeParam.getKlineCnt();
         if (null != klineCnt && klineCnt > 0) {
-            LocalDate beginDate = LocalDate.parse(codeParam.getEndDate()).minusDays(klineCnt * 3L);
-            codeParam.setBeginDate(beginDate.toString());
+            return findLastStockData(codeParam.getCode(), LocalDate.parse(codeParam.getEndDate()), klineCnt);
         }
 
-        Flux<StockData> stockDataFlux = findStockInfo(codeParam);
+        return Flux.from(findStockInfo(codeParam)).sort(Comparator.comparing(StockData::getDate));
+    }
+
+    @Override
+    public Flux<Tuple2<CodeParam, Flux<StockData>>> getStockDataWithKlineCnt(List<CodeParam> codeParams) {
+        if (codeParams.isEmpty()) {
+            return Flux.empty();
+        }
 
+        CodeParam firstCodeParam = codeParams.get(0);
+        Integer klineCnt = firstCodeParam.getKlineCnt();
+        LocalDate endDate = LocalDate.parse(firstCodeParam.getEndDate());
         if (null != klineCnt && klineCnt > 0) {
-            stockDataFlux = stockDataFlux.takeLast(klineCnt);
+            return getLastStockDataBatch(codeParams, endDate, klineCnt);
+        }
+
+        LocalDate beginDate = LocalDate.parse(firstCodeParam.getBeginDate());
+        List<CodeParam> storeCodeParams = new ArrayList<>();
+        List<CodeParam> esCodeParams = new ArrayList<>();
+        for (CodeParam codeParam : codeParams) {
+            if (findFromStore(codeParam).isPresent()) {
+                storeCodeParams.add(codeParam);
+            } else {
+                esCodeParams.add(codeParam);
+            }
+        }
+
+        Flux<Tuple2<CodeParam, Flux<StockData>>> storeFlux = Flux.fromIterable(storeCodeParams)
+                .map(codeParam -> Tuples.of(codeParam, getStockDataWithKlineCnt(codeParam)));
+
+        if (esCodeParams.isEmpty()) {
+            return storeFlux;
+        }
+
+        List<String> codes = esCodeParams.stream().map(CodeParam::getCode).toList();
+        Flux<Tuple2<CodeParam, Flux<StockData>>> esFlux = findStockInfoBatch(codes, beginDate, endDate)
+                .flatMapMany(stockDataMap -> Flux.fromIterable(esCodeParams)
+                        .map(codeParam -> Tuples.of(codeParam,
+                                Flux.fromIterable(stockDataMap.getOrDefault(codeParam.getCode(), List.of())))));
+
+        return Flux.concat(storeFlux, esFlux);
+    }
+
+    /**
+     * 批次取得endDate(含)前最後klineCnt筆
+     * 常駐資料足夠者直接切出; 其餘以交易日曆推算第klineCnt個交易日為起點批次查詢,
+     * 因停牌等原因筆數不足者再個別以倒序查詢補足
+     *
+     * @param codeParams 查詢條件
+     * @param endDate    結束日期
+     * @param klineCnt   筆數
+     * @return Flux<Tuple2<CodeParam, Flux<StockData>>>
+     */
+    private Flux<Tuple2<CodeParam, Flux<StockData>>> getLastStockDataBatch(List<CodeParam> codeParams, LocalDate endDate, int klineCnt) {
+        List<Tuple2<CodeParam, List<StockData>>> storeTuple2s = new ArrayList<>();
+        List<CodeParam> esCodeParams = new ArrayList<>();
+        for (CodeParam codeParam : codeParams) {
+            findLastFromStore(codeParam.getCode(), endDate, klineCnt).ifPresentOrElse(
+                    stockDataList -> storeTuple2s.add(Tuples.of(codeParam, stockDataList)),
+                    () -> esCodeParams.add(codeParam));
+        }
+
+        Flux<Tuple2<CodeParam, Flux<StockData>>> storeFlux = Flux.fromIterable(storeTuple2s)
+                .map(tuple2 -> Tuples.of(tuple2.getT1(), Flux.fromIterable(tuple2.getT2())));
+
+        if (esCodeParams.isEmpty()) {
+            return storeFlux;
+        }
+
+        LocalDate beginDate = stockPriceStore
+                .findTradingDateBefore(endDate, klineCnt)
+                .orElse(endDate.minusDays(klineCnt * 3L));
+        List<String> codes = esCodeParams.stream().map(CodeParam::getCode).toList();
+        Flux<Tuple2<CodeParam, Flux<StockData>>> esFlux = findStockInfoBatch(codes, beginDate, endDate)
+                .flatMapMany(stockDataMap -> Flux.fromIterable(esCodeParams)
+                        .map(codeParam -> {
+                            List<StockData> stockDataList = stockDataMap.getOrDefault(codeParam.getCode(), List.of());
+                            if (stockDataList.size() < klineCnt) {
+                                return Tuples.of(codeParam, findLastStockData(codeParam.getCode(), endDate, klineCnt));
+                            }
+                            return Tuples.of(codeParam, Flux.fromIterable(stockDataList.subList(stockDataList.size() - klineCnt, stockDataList.size())));
+                        }));
+
+        return Flux.concat(storeFlux, esFlux);
+    }
+
+    /**
+     * 取得endDate(含)前最後klineCnt筆, 依日期排序
+     * 常駐資料足夠時直接切出, 否則以倒序加筆數限制查詢ES後反轉
+     *
+     * @param code     股票代號
+     * @param endDate  結束日期
+     * @param klineCnt 筆數
+     * @return Flux<StockData>
+     */
+    private Flux<StockData> findLastStockData(String code, LocalDate endDate, int klineCnt) {
+        Optional<List<StockData>> storeStockDataList = findLastFromStore(code, endDate, klineCnt);
+        if (storeStockDataList.isPresent()) {
+            return Flux.fromIterable(storeStockDataList.get());
+        }
+
+        // 多取少量筆數, 扣除無效資料後仍足klineCnt筆
+        PageRequest pageRequest = PageRequest.of(0, klineCnt + KLINE_FETCH_SLACK);
+        String key = code + "_last" + klineCnt + "_" + endDate;
+        return stockInfoFlight.execute(key, () -> Flux.from(companyDirectory.findByCode(code))
+                .flatMap(companyStatus -> {
+                    if (companyStatus.isTPE()) {
+                        return tpExStockRepo
+                                .findByTpExStockId_CodeAndDateLessThanEqualOrderByDateDesc(code, endDate, pageRequest)
+                                .map(TPExStock::getStockData);
+                    } else {
+                        return listedStockRepo
+                                .findByListedStockId_CodeAndDateLessThanEqualOrderByDateDesc(code, endDate, pageRequest)
+                                .map(ListedStock::getStockData);
+                    }
+                })
+                .filter(this::verifyStockData)
+                .take(klineCnt)
+                .collectList()
+                .flatMapIterable(stockDataList -> {
+                    List<StockData> ascStockDataList = new ArrayList<>(stockDataList);
+                    Collections.reverse(ascStockDataList);
+                    return ascStockDataList;
+                }));
+    }
+
+    /**
+     * 由常駐記憶體的StockPriceStore切出endDate(含)前最後klineCnt筆
+     * 筆數不足時可能早於常駐範圍, 回傳empty改查ES
+     *
+     * @param code     股票代號
+     * @param endDate  結束日期
+     * @param klineCnt 筆數
+     * @return Optional<List<StockData>>
+     */
+    private Optional<List<StockData>> findLastFromStore(String code, LocalDate endDate, int klineCnt) {
+        if (!stockPriceStore.isReady() || isAfterCoveredTo(endDate)) {
+            return Optional.empty();
+        }
+        return stockPriceStore
+                .getSeries(code)
+                .flatMap(series -> {
+                    int to = series.indexOfDateOnOrBefore(endDate);
+                    int from = to - klineCnt + 1;
+                    if (to < 0 || from < 0) {
+                        return Optional.empty();
+                    }
+                    return Optional.of(series.toStockDataList(series.getDate(from), series.getDate(to)));
+                });
+    }
+
+    /**
+     * 批次查詢上市與上櫃股票, 依股票代號分組
+     * 無排序分頁的查詢會以point in time + search_after分批取得
+     *
+     * @param codes     股票代號
+     * @param beginDate 開始日期
+     * @param endDate   結束日期
+     * @return 股票代號 -> 依日期排序的股價資料
+     */
+    private Mono<Map<String, List<StockData>>> findStockInfoBatch(List<String> codes, LocalDate beginDate, LocalDate endDate) {
+        Flux<Tuple2<String, StockData>> stockDataFlux = Flux.merge(
+                listedStockRepo
+                        .findByListedStockId_CodeInAndDateBetweenOrderByDate(codes, beginDate, endDate)
+                        .map(listedStock -> Tuples.of(listedStock.getListedStockId().getCode(), listedStock.getStockData())),
+                tpExStockRepo
+                        .findByTpExStockId_CodeInAndDateBetweenOrderByDate(codes, beginDate, endDate)
+                        .map(tpExStock -> Tuples.of(tpExStock.getTpExStockId().getCode(), tpExStock.getStockData()))
+        );
+
+        return stockDataFlux
+                .filter(tuple2 -> verifyStockData(tuple2.getT2()))
+                .collect(HashMap<String, List<StockData>>::new,
+                        (stockDataMap, tuple2) -> stockDataMap.computeIfAbsent(tuple2.getT1(), code -> new ArrayList<>()).add(tuple2.getT2()))
+                .map(stockDataMap -> {
+                    stockDataMap.values().forEach(stockDataList -> stockDataList.sort(Comparator.comparing(StockData::getDate)));
+                    return stockDataMap;
+                });
+    }
+
+
+    /**
+     * 由常駐記憶體的StockPriceStore查詢
+     * 未載入完成或日期區間未涵蓋時回傳empty, 改查ES
+     *
+     * @param codeParam
+     * @return
+     */
+    private Optional<Flux<StockData>> findFromStore(CodeParam codeParam) {
+        LocalDate beginDate = LocalDate.parse(codeParam.getBeginDate());
+        if (!stockPriceStore.isCovered(beginDate)) {
+            return Optional.empty();
         }
-        return Flux.from(stockDataFlux).sort(Comparator.comparing(StockData::getDate));
+
+        LocalDate endDate = LocalDate.parse(codeParam.getEndDate());
+        if (isAfterCoveredTo(endDate)) {
+            return Optional.empty();
+        }
+        return stockPriceStore
+                .getSeries(codeParam.getCode())
+                .map(series -> Flux.defer(() -> Flux.fromIterable(series.toStockDataList(beginDate, endDate))));
     }
 
+    /**
+     * 由snapshot啟動且尚未補齊時, coveredTo之後的日期改查ES
+     *
+     * @param endDate 結束日期
+     * @return boolean
+     */
+    private boolean isAfterCoveredTo(LocalDate endDate) {
+        LocalDate coveredTo = stockPriceStore.getCoveredTo();
+        return Objects.nonNull(coveredTo) && endDate.isAfter(coveredTo);
+    }
 
     /**
      * 上市股票查詢
@@ -0,0 +1,133 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.IndicatorEngine;
+import com.custom.stocksearcher.engine.IndicatorState;
+import com.custom.stocksearcher.event.StockDataUpdatedEvent;
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockIndicatorResult;
+import com.custom.stocksearcher.service.StockFinder;
+import com.custom.stocksearcher.service.StockIndicator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+@Service
+@Slf4j
+public class StockIndicatorImpl implements StockIndicator {
+    /**
+     * endDate在此天數內視為查詢最新資料, 會一併計算至今日並快取狀態
+     */
+    private static final int RECENT_DAYS = 31;
+
+    private final StockFinder stockFinder;
+    private final IndicatorEngine indicatorEngine;
+    private final int warmupMonths;
+    /**
+     * 股票代號 -> 至最新交易日的計算狀態
+     */
+    private final Cache<String, IndicatorState> stateCache;
+
+    public StockIndicatorImpl(StockFinder stockFinder, IndicatorEngine indicatorEngine, MeterRegistry meterRegistry,
+                              @Value("${stock.indicator.warmup-months:6}") int warmupMonths,
+                              @Value("${stock.indicator.max-size:20000}") long maxSize) {
+        this.stockFinder = stockFinder;
+        this.indicatorEngine = indicatorEngine;
+        this.warmupMonths = warmupMonths;
+        this.stateCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, stateCache, "stock.indicator");
+    }
+
+    @Override
+    public Flux<StockIndicatorResult> getStockIndicator(CodeParam codeParam) {
+        LocalDate beginDate = LocalDate.parse(codeParam.getBeginDate());
+        LocalDate endDate = LocalDate.parse(codeParam.getEndDate());
+        return indicatorEngine.calculate(
+                stockFinder.findStockInfo(toCodeParam(codeParam.getCode(), beginDate.minusMonths(warmupMonths), endDate)),
+                codeParam.getCode(), beginDate, endDate);
+    }
+
+    @Override
+    public Mono<StockIndicatorResult> getLastStockIndicator(String code, LocalDate endDate) {
+        return Mono.defer(() -> {
+            IndicatorState cachedState = stateCache.getIfPresent(code);
+            if (Objects.nonNull(cachedState) && !endDate.isBefore(cachedState.getLastDate())) {
+                return Mono.justOrEmpty(cachedState.toResult(code));
+            }
+
+            LocalDate today = LocalDate.now();
+            boolean isRecent = !endDate.isBefore(today.minusDays(RECENT_DAYS));
+            LocalDate fetchEndDate = isRecent && endDate.isBefore(today) ? today : endDate;
+            return stockFinder.findStockInfo(toCodeParam(code, endDate.minusMonths(warmupMonths), fetchEndDate))
+                    .sort(Comparator.comparing(StockData::getDate))
+                    .collectList()
+                    .flatMap(stockDataList -> {
+                        int split = 0;
+                        while (split < stockDataList.size() && !stockDataList.get(split).getDate().isAfter(endDate)) {
+                            split++;
+                        }
+                        IndicatorState indicatorState = indicatorEngine.resume(new IndicatorState(), stockDataList.subList(0, split));
+                        StockIndicatorResult stockIndicatorResult = indicatorState.toResult(code);
+                        if (isRecent) {
+                            cacheLatest(code, indicatorEngine.resume(indicatorState, stockDataList.subList(split, stockDataList.size())));
+                        }
+                        return Mono.justOrEmpty(stockIndicatorResult);
+                    });
+        });
+    }
+
+    /**
+     * 新交易日資料只接續計算; 若為既有日期的修正則失效, 下次查詢重新計算
+     * 排序在前, 使StockAlert評估時可直接使用接續後的狀態
+     *
+     * @param event 更新事件
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onStockDataUpdated(StockDataUpdatedEvent event) {
+        event.getStockDataMap().forEach((code, stockDataList) -> stateCache.asMap().computeIfPresent(code, (key, indicatorState) -> {
+            List<StockData> sortedStockDataList = stockDataList.stream().sorted(Comparator.comparing(StockData::getDate)).toList();
+            if (sortedStockDataList.stream().anyMatch(stockData -> !stockData.getDate().isAfter(indicatorState.getLastDate()))) {
+                return null;
+            }
+            return indicatorEngine.resume(indicatorState, sortedStockDataList);
+        }));
+        log.info("indicator state resumed, latest: {}", event.getLatestDate());
+    }
+
+    /**
+     * 保存較新的狀態, 避免與更新事件交錯時以舊狀態覆蓋
+     */
+    private void cacheLatest(String code, IndicatorState indicatorState) {
+        if (Objects.isNull(indicatorState.getLastDate())) {
+            return;
+        }
+        stateCache.asMap().merge(code, indicatorState,
+                (oldState, newState) -> newState.getLastDate().isBefore(oldState.getLastDate()) ? oldState : newState);
+    }
+
+    private CodeParam toCodeParam(String code, LocalDate beginDate, LocalDate endDate) {
+        CodeParam codeParam = new CodeParam();
+        codeParam.setCode(code);
+        codeParam.setBeginDate(beginDate.toString());
+        codeParam.setEndDate(endDate.toString());
+        return codeParam;
+    }
+}
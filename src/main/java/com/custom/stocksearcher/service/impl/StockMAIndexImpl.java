@@ -0,0 +1,298 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.MovingAverageEngine;
+import com.custom.stocksearcher.event.StockDataUpdatedEvent;
+import com.custom.stocksearcher.models.*;
+import com.custom.stocksearcher.repo.StockMARepo;
+import com.custom.stocksearcher.service.CompanyDirectory;
+import com.custom.stocksearcher.service.StockFinder;
+import com.custom.stocksearcher.service.StockMAIndex;
+import com.custom.stocksearcher.service.StockPriceStore;
+import com.custom.stocksearcher.service.StockRangeAggregator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@Slf4j
+public class StockMAIndexImpl implements StockMAIndex {
+    private static final int SAVE_BATCH_SIZE = 500;
+
+    private final StockMARepo stockMARepo;
+    private final StockFinder stockFinder;
+    private final CompanyDirectory companyDirectory;
+    private final MovingAverageEngine movingAverageEngine;
+    private final StockPriceStore stockPriceStore;
+    private final StockRangeAggregator stockRangeAggregator;
+    private final boolean enabled;
+    private final int historyYears;
+    private final int concurrency;
+
+    /**
+     * 資料起始日期, null代表尚未建立完成
+     */
+    private volatile LocalDate indexedFrom;
+    /**
+     * 已知最新交易日, 由更新事件與啟動時的ES查詢取得
+     */
+    private volatile LocalDate latestTradingDate;
+    /**
+     * 寫入失敗的股票, 資料可能有缺漏, 查詢時改為即時計算
+     * 重建後整組替換, 查詢不會看到清除到一半的集合
+     */
+    private volatile Set<String> uncoveredCodes = ConcurrentHashMap.newKeySet();
+
+    public StockMAIndexImpl(StockMARepo stockMARepo, StockFinder stockFinder, CompanyDirectory companyDirectory,
+                            MovingAverageEngine movingAverageEngine, StockPriceStore stockPriceStore,
+                            StockRangeAggregator stockRangeAggregator,
+                            @Value("${stock.ma-index.enabled:true}") boolean enabled,
+                            @Value("${stock.ma-index.history-years:3}") int historyYears,
+                            @Value("${stock.ma-index.concurrency:8}") int concurrency) {
+        this.stockMARepo = stockMARepo;
+        this.stockFinder = stockFinder;
+        this.companyDirectory = companyDirectory;
+        this.movingAverageEngine = movingAverageEngine;
+        this.stockPriceStore = stockPriceStore;
+        this.stockRangeAggregator = stockRangeAggregator;
+        this.enabled = enabled;
+        this.historyYears = historyYears;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * 啟動時若stock_ma已有資料則沿用, 並補上停機期間新增的日期; 否則重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        stockMARepo.findFirstByOrderByDateAsc()
+                .map(StockMA::getDate)
+                .flatMap(date -> {
+                    indexedFrom = date;
+                    log.info("stock ma index found, from: {}", date);
+                    return catchUp();
+                })
+                .switchIfEmpty(Mono.defer(this::backfill))
+                .onErrorResume(e -> {
+                    log.error("stock ma index init error {} ", e.getMessage());
+                    return Mono.empty();
+                })
+                .subscribe();
+    }
+
+    /**
+     * 由stock_ma最後日期重算至今日, 最後日期當日一併重算以補上寫入中斷的資料
+     *
+     * @return 寫入筆數
+     */
+    private Mono<Long> catchUp() {
+        LocalDate today = LocalDate.now();
+        Mono<LocalDate> latestTradingDateMono = stockRangeAggregator.findTradingDateBefore(today, 1)
+                .doOnNext(this::updateLatestTradingDate)
+                .onErrorResume(e -> {
+                    log.error("find latest trading date error {} ", e.getMessage());
+                    return Mono.empty();
+                });
+
+        return latestTradingDateMono.then(stockMARepo.findFirstByOrderByDateDesc())
+                .map(StockMA::getDate)
+                .flatMap(from -> {
+                    long start = System.currentTimeMillis();
+                    Set<String> failedCodes = ConcurrentHashMap.newKeySet();
+                    return indexAll(from, today, failedCodes)
+                            .doOnNext(count -> {
+                                uncoveredCodes.addAll(failedCodes);
+                                log.info("stock ma index caught up, docs: {}, from: {}, failed: {}, cost: {} ms",
+                                        count, from, failedCodes.size(), System.currentTimeMillis() - start);
+                            });
+                })
+                .defaultIfEmpty(0L);
+    }
+
+    @Override
+    public boolean isCovered(LocalDate beginDate) {
+        LocalDate from = indexedFrom;
+        return enabled && Objects.nonNull(from) && !beginDate.isBefore(from);
+    }
+
+    @Override
+    public Flux<StockMAResult> findStockMA(String code, LocalDate beginDate, LocalDate endDate) {
+        if (!isCovered(beginDate) || uncoveredCodes.contains(code)) {
+            return Flux.empty();
+        }
+        return stockMARepo
+                .findByStockMAId_CodeAndDateBetweenOrderByDate(code, beginDate, endDate)
+                .map(this::toStockMAResult)
+                .collectList()
+                .filter(stockMAResults -> !stockMAResults.isEmpty() && findLastTradingDate(endDate)
+                        .map(date -> !stockMAResults.get(stockMAResults.size() - 1).getDate().isBefore(date))
+                        .orElse(true))
+                .flatMapIterable(stockMAResults -> stockMAResults)
+                .onErrorResume(e -> {
+                    log.error("find stock ma error {} ", e.getMessage());
+                    return Flux.empty();
+                });
+    }
+
+    /**
+     * endDate(含)前最後一個交易日
+     * endDate不早於已知最新交易日時即為該日, 否則由常駐資料的交易日曆推算
+     *
+     * @param endDate 結束日期
+     * @return 交易日, 無法得知時為empty
+     */
+    private Optional<LocalDate> findLastTradingDate(LocalDate endDate) {
+        LocalDate latest = latestTradingDate;
+        if (Objects.nonNull(latest) && !endDate.isBefore(latest)) {
+            return Optional.of(latest);
+        }
+        return stockPriceStore.findTradingDateBefore(endDate, 1);
+    }
+
+    private void updateLatestTradingDate(LocalDate date) {
+        LocalDate latest = latestTradingDate;
+        if (Objects.isNull(latest) || date.isAfter(latest)) {
+            latestTradingDate = date;
+        }
+    }
+
+    @Override
+    public Mono<Long> backfill() {
+        LocalDate from = LocalDate.now().minusYears(historyYears);
+        LocalDate to = LocalDate.now();
+        long start = System.currentTimeMillis();
+
+        Set<String> failedCodes = ConcurrentHashMap.newKeySet();
+
+        return indexAll(from, to, failedCodes)
+                .doOnNext(count -> {
+                    uncoveredCodes = failedCodes;
+                    indexedFrom = from;
+                    log.info("stock ma index rebuilt, docs: {}, from: {}, failed: {}, cost: {} ms",
+                            count, from, failedCodes.size(), System.currentTimeMillis() - start);
+                });
+    }
+
+    /**
+     * 計算並寫入全部股票日期區間內的MA
+     *
+     * @param from        開始日期(含)
+     * @param to          結束日期(含)
+     * @param failedCodes 收集寫入失敗的股票
+     * @return 寫入筆數
+     */
+    private Mono<Long> indexAll(LocalDate from, LocalDate to, Set<String> failedCodes) {
+        return companyDirectory.findAll()
+                .map(CompanyStatus::getCode)
+                .flatMap(code -> indexCode(code, from, to, List.of())
+                        .onErrorResume(e -> {
+                            log.error("stock ma index error {} {} ", code, e.getMessage());
+                            failedCodes.add(code);
+                            return Mono.just(0L);
+                        }), concurrency)
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * 新日K資料出現時, 只重算並寫入有變動的日期
+     * StockPriceStore同樣監聽此事件, 順序不保證, 因此將事件資料合併至查詢結果再計算
+     *
+     * @param event 更新事件
+     */
+    @EventListener
+    public void onStockDataUpdated(StockDataUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        event.getStockDataMap().values().stream()
+                .flatMap(Collection::stream)
+                .map(StockData::getDate)
+                .max(Comparator.naturalOrder())
+                .ifPresent(this::updateLatestTradingDate);
+        Flux.fromIterable(event.getStockDataMap().entrySet())
+                .filter(entry -> !entry.getValue().isEmpty())
+                .flatMap(entry -> {
+                    LocalDate from = entry.getValue().stream().map(StockData::getDate).min(Comparator.naturalOrder()).orElseThrow();
+                    LocalDate to = entry.getValue().stream().map(StockData::getDate).max(Comparator.naturalOrder()).orElseThrow();
+                    return indexCode(entry.getKey(), from, to, entry.getValue())
+                            .onErrorResume(e -> {
+                                log.error("stock ma index update error {} {} ", entry.getKey(), e.getMessage());
+                                uncoveredCodes.add(entry.getKey());
+                                return Mono.just(0L);
+                            });
+                }, concurrency)
+                .reduce(0L, Long::sum)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(
+                        count -> log.info("stock ma index updated, docs: {}, latest: {}", count, event.getLatestDate()),
+                        e -> log.error("stock ma index update error {} ", e.getMessage()));
+    }
+
+    /**
+     * 計算並寫入單一股票日期區間內的MA
+     *
+     * @param code          股票代號
+     * @param from          開始日期(含)
+     * @param to            結束日期(含)
+     * @param newStockDatas 尚未反映在查詢結果的新資料, 同日期以此為準
+     * @return 寫入筆數
+     */
+    private Mono<Long> indexCode(String code, LocalDate from, LocalDate to, Collection<StockData> newStockDatas) {
+        LocalDate beginDate = from.minusDays(1);
+        LocalDate endDate = to.plusDays(1);
+
+        CodeParam codeParam = new CodeParam();
+        codeParam.setCode(code);
+        codeParam.setBeginDate(beginDate.minusMonths(3).toString());
+        codeParam.setEndDate(to.toString());
+
+        LocalDate updateDate = LocalDate.now();
+        return stockFinder.findStockInfo(codeParam)
+                .collect(TreeMap<LocalDate, StockData>::new, (stockDataMap, stockData) -> stockDataMap.put(stockData.getDate(), stockData))
+                .flatMapMany(stockDataMap -> {
+                    newStockDatas.stream()
+                            .filter(stockData -> Objects.nonNull(stockData.getClosingPrice()))
+                            .forEach(stockData -> stockDataMap.put(stockData.getDate(), stockData));
+                    return movingAverageEngine.calculate(Flux.fromIterable(stockDataMap.values()), code, beginDate, endDate);
+                })
+                .map(stockMAResult -> toStockMA(stockMAResult, updateDate))
+                .buffer(SAVE_BATCH_SIZE)
+                .concatMap(stockMAs -> stockMARepo.saveAll(stockMAs).count())
+                .reduce(0L, Long::sum);
+    }
+
+    private StockMA toStockMA(StockMAResult stockMAResult, LocalDate updateDate) {
+        return new StockMA(
+                new StockMAId(stockMAResult.getCode(), stockMAResult.getDate()),
+                stockMAResult.getDate(),
+                stockMAResult.getMa5(),
+                stockMAResult.getMa10(),
+                stockMAResult.getMa20(),
+                stockMAResult.getMa60(),
+                stockMAResult.getPrice(),
+                updateDate);
+    }
+
+    private StockMAResult toStockMAResult(StockMA stockMA) {
+        StockMAResult stockMAResult = new StockMAResult();
+        stockMAResult.setCode(stockMA.getStockMAId().getCode());
+        stockMAResult.setDate(stockMA.getDate());
+        stockMAResult.setMa5(stockMA.getMa5());
+        stockMAResult.setMa10(stockMA.getMa10());
+        stockMAResult.setMa20(stockMA.getMa20());
+        stockMAResult.setMa60(stockMA.getMa60());
+        stockMAResult.setPrice(stockMA.getPrice());
+        return stockMAResult;
+    }
+}
@@ -0,0 +1,428 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.StockSnapshotFile;
+import com.custom.stocksearcher.event.StockDataUpdatedEvent;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockSeries;
+import com.custom.stocksearcher.repo.ListedStockRepo;
+import com.custom.stocksearcher.repo.TPExStockRepo;
+import com.custom.stocksearcher.service.StockPriceStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class StockPriceStoreImpl implements StockPriceStore {
+    private final ListedStockRepo listedStockRepo;
+    private final TPExStockRepo tpExStockRepo;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final boolean enabled;
+    private final int historyYears;
+    /**
+     * 補齊失敗後再次嘗試的間隔
+     */
+    private final Duration catchUpRetryInterval;
+    private final Counter catchUpFailureCounter;
+    private final AtomicBoolean exporting = new AtomicBoolean();
+    /**
+     * snapshot檔案路徑, null代表不使用snapshot
+     */
+    private final Path snapshotPath;
+
+    private final AtomicReference<Map<String, StockSeries>> seriesMapRef = new AtomicReference<>(Map.of());
+    /**
+     * 目前常駐資料對應的交易日曆, 資料替換後重建
+     */
+    private volatile TradingCalendar tradingCalendar = new TradingCalendar(Map.of(), new int[0]);
+    /**
+     * 載入期間收到的更新, 載入完成後再合併
+     */
+    private final List<StockDataUpdatedEvent> pendingEvents = new ArrayList<>();
+    /**
+     * 資料起始日期, null代表尚未載入完成
+     */
+    private volatile LocalDate loadedFrom;
+    /**
+     * 由snapshot啟動時, snapshot確定完整的最後日期; null代表已與ES同步
+     */
+    private volatile LocalDate coveredTo;
+
+    public StockPriceStoreImpl(ListedStockRepo listedStockRepo, TPExStockRepo tpExStockRepo,
+                               ApplicationEventPublisher applicationEventPublisher, MeterRegistry meterRegistry,
+                               @Value("${stock.store.enabled:true}") boolean enabled,
+                               @Value("${stock.store.history-years:3}") int historyYears,
+                               @Value("${stock.snapshot.path:}") String snapshotPath,
+                               @Value("${stock.snapshot.catch-up-retry-interval:PT10M}") Duration catchUpRetryInterval) {
+        this.listedStockRepo = listedStockRepo;
+        this.tpExStockRepo = tpExStockRepo;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.enabled = enabled;
+        this.historyYears = historyYears;
+        this.snapshotPath = snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.catchUpRetryInterval = catchUpRetryInterval;
+        this.catchUpFailureCounter = Counter.builder("stock.store.catch-up.failures")
+                .description("snapshot catch up attempts that failed after all retries")
+                .register(meterRegistry);
+        Gauge.builder("stock.store.uncovered-days", this, StockPriceStoreImpl::getUncoveredDays)
+                .description("days after the snapshot still read from es, 0 when in sync")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 有snapshot時先由snapshot載入並補齊之後的資料, 否則由ES完整載入
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (loadSnapshot()) {
+            catchUp().subscribe();
+        } else {
+            reload().then(Mono.defer(this::writeSnapshot)).subscribe();
+        }
+    }
+
+    /**
+     * 定期匯出snapshot, 預設不執行
+     */
+    @Scheduled(cron = "${stock.snapshot.export-cron:-}")
+    public void scheduledExportSnapshot() {
+        if (!exporting.compareAndSet(false, true)) {
+            log.info("stock snapshot export still running, skipped");
+            return;
+        }
+        exportSnapshot()
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signalType -> exporting.set(false))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    @Override
+    public boolean isReady() {
+        return Objects.nonNull(loadedFrom);
+    }
+
+    @Override
+    public boolean isCovered(LocalDate beginDate) {
+        LocalDate from = loadedFrom;
+        return Objects.nonNull(from) && !beginDate.isBefore(from);
+    }
+
+    @Override
+    public LocalDate getCoveredTo() {
+        return coveredTo;
+    }
+
+    @Override
+    public Optional<StockSeries> getSeries(String code) {
+        return Optional.ofNullable(seriesMapRef.get().get(code));
+    }
+
+    @Override
+    public Map<String, StockSeries> getAllSeries() {
+        return seriesMapRef.get();
+    }
+
+    @Override
+    public Optional<LocalDate> findTradingDateBefore(LocalDate date, int count) {
+        if (!isReady() || count <= 0) {
+            return Optional.empty();
+        }
+        int[] tradingDays = getTradingDays();
+        int index = Arrays.binarySearch(tradingDays, (int) date.toEpochDay());
+        index = (index >= 0 ? index : -index - 2) - count + 1;
+        if (index < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(LocalDate.ofEpochDay(tradingDays[index]));
+    }
+
+    /**
+     * 取得目前常駐資料的交易日曆, 資料版本改變時才重建
+     *
+     * @return 遞增排序的epoch day
+     */
+    private int[] getTradingDays() {
+        Map<String, StockSeries> seriesMap = seriesMapRef.get();
+        TradingCalendar calendar = tradingCalendar;
+        if (calendar.seriesMap() != seriesMap) {
+            BitSet tradingDayBits = new BitSet();
+            for (StockSeries series : seriesMap.values()) {
+                for (int i = 0; i < series.size(); i++) {
+                    tradingDayBits.set(series.getEpochDay(i));
+                }
+            }
+            calendar = new TradingCalendar(seriesMap, tradingDayBits.stream().toArray());
+            tradingCalendar = calendar;
+        }
+        return calendar.tradingDays();
+    }
+
+    @Override
+    public Mono<Void> reload() {
+        LocalDate from = LocalDate.now().minusYears(historyYears);
+        long start = System.currentTimeMillis();
+
+        return loadSeriesMap(from)
+                .doOnNext(seriesMap -> {
+                    synchronized (pendingEvents) {
+                        seriesMapRef.set(seriesMap);
+                        loadedFrom = from;
+                        coveredTo = null;
+                        pendingEvents.forEach(this::merge);
+                        pendingEvents.clear();
+                    }
+                    log.info("stock price store loaded, codes: {}, from: {}, cost: {} ms",
+                            seriesMap.size(), from, System.currentTimeMillis() - start);
+                })
+                .doOnError(e -> log.error("stock price store load error {} ", e.getMessage()))
+                .then();
+    }
+
+    @Override
+    public Mono<Long> exportSnapshot() {
+        if (Objects.isNull(snapshotPath)) {
+            return Mono.error(new IllegalStateException("stock.snapshot.path is not configured"));
+        }
+        LocalDate from = LocalDate.now().minusYears(historyYears);
+        LocalDate snapshotDate = LocalDate.now();
+        long start = System.currentTimeMillis();
+
+        return loadSeriesMap(from)
+                .publishOn(Schedulers.boundedElastic())
+                .map(seriesMap -> writeSnapshot(snapshotDate, from, seriesMap.values()))
+                .doOnNext(size -> log.info("stock snapshot exported, path: {}, bytes: {}, cost: {} ms",
+                        snapshotPath, size, System.currentTimeMillis() - start))
+                .doOnError(e -> log.error("stock snapshot export error {} ", e.getMessage()));
+    }
+
+    /**
+     * 排序在前, ResultCache失效與StockAlert評估時查詢結果已含新資料
+     *
+     * @param event 更新事件
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onStockDataUpdated(StockDataUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (pendingEvents) {
+            if (isReady()) {
+                merge(event);
+            } else {
+                pendingEvents.add(event);
+            }
+        }
+    }
+
+    /**
+     * 由listed_stock與tpex_stock載入from之後的資料
+     *
+     * @param from 起始日期
+     * @return code -> StockSeries
+     */
+    private Mono<Map<String, StockSeries>> loadSeriesMap(LocalDate from) {
+        return findStockDataFrom(from)
+                .filter(tuple2 -> verifyStockData(tuple2.getT2()))
+                .collect(HashMap<String, StockSeries.Builder>::new,
+                        (builders, tuple2) -> builders
+                                .computeIfAbsent(tuple2.getT1(), code -> new StockSeries.Builder(code, 256))
+                                .add(tuple2.getT2()))
+                .map(builders -> builders.values().stream()
+                        .map(StockSeries.Builder::build)
+                        .collect(Collectors.toUnmodifiableMap(StockSeries::getCode, series -> series)));
+    }
+
+    private Flux<Tuple2<String, StockData>> findStockDataFrom(LocalDate from) {
+        return Flux.concat(
+                listedStockRepo.findByDateGreaterThanEqual(from)
+                        .map(listedStock -> Tuples.of(listedStock.getListedStockId().getCode(), listedStock.getStockData())),
+                tpExStockRepo.findByDateGreaterThanEqual(from)
+                        .map(tpExStock -> Tuples.of(tpExStock.getTpExStockId().getCode(), tpExStock.getStockData()))
+        );
+    }
+
+    /**
+     * 由snapshot載入, snapshot當日可能不完整, 視為只涵蓋至前一日
+     *
+     * @return 是否成功載入
+     */
+    private boolean loadSnapshot() {
+        if (Objects.isNull(snapshotPath) || !Files.isRegularFile(snapshotPath)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            StockSnapshotFile.Snapshot snapshot = StockSnapshotFile.read(snapshotPath);
+            LocalDate from = LocalDate.now().minusYears(historyYears);
+            if (snapshot.fromDate().isAfter(from)) {
+                log.info("stock snapshot from {} does not cover {}, reload from es", snapshot.fromDate(), from);
+                return false;
+            }
+            synchronized (pendingEvents) {
+                seriesMapRef.set(Collections.unmodifiableMap(snapshot.seriesMap()));
+                coveredTo = snapshot.snapshotDate().minusDays(1);
+                loadedFrom = snapshot.fromDate();
+                pendingEvents.forEach(this::merge);
+                pendingEvents.clear();
+            }
+            log.info("stock price store loaded from snapshot, codes: {}, from: {}, to: {}, cost: {} ms",
+                    snapshot.seriesMap().size(), snapshot.fromDate(), coveredTo, System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            log.error("stock snapshot load error {} ", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 補齊snapshot之後的資料, 補齊前snapshot之後的日期由ES查詢
+     * 補齊的資料以StockDataUpdatedEvent發布, 由本身的監聽器合併, MA索引 技術指標 快取 告警等一併更新
+     * 重試仍失敗時記錄於stock.store.catch-up.failures, 間隔catchUpRetryInterval後重新補齊
+     *
+     * @return Mono<Void>
+     */
+    private Mono<Void> catchUp() {
+        LocalDate from = coveredTo.plusDays(1);
+        long start = System.currentTimeMillis();
+
+        return findStockDataFrom(from)
+                .filter(tuple2 -> verifyStockData(tuple2.getT2()))
+                .collectMultimap(Tuple2::getT1, Tuple2::getT2)
+                .retryWhen(Retry.backoff(10, Duration.ofSeconds(30)))
+                .flatMap(stockDataMap -> {
+                    if (!stockDataMap.isEmpty()) {
+                        LocalDate latestDate = stockDataMap.values().stream()
+                                .flatMap(Collection::stream)
+                                .map(StockData::getDate)
+                                .max(Comparator.naturalOrder())
+                                .orElseThrow();
+                        applicationEventPublisher.publishEvent(new StockDataUpdatedEvent(new HashMap<>(stockDataMap), latestDate));
+                    }
+                    coveredTo = null;
+                    log.info("stock price store caught up from {}, codes: {}, cost: {} ms",
+                            from, stockDataMap.size(), System.currentTimeMillis() - start);
+                    return writeSnapshot();
+                })
+                .onErrorResume(e -> {
+                    catchUpFailureCounter.increment();
+                    log.error("stock price store catch up error, retry in {} {} ", catchUpRetryInterval, e.getMessage());
+                    return Mono.delay(catchUpRetryInterval).then(Mono.defer(this::catchUp));
+                });
+    }
+
+    /**
+     * snapshot之後仍由ES查詢的天數
+     *
+     * @return 已同步時為0
+     */
+    private double getUncoveredDays() {
+        LocalDate to = coveredTo;
+        return Objects.isNull(to) ? 0 : ChronoUnit.DAYS.between(to, LocalDate.now());
+    }
+
+    /**
+     * 將已同步的常駐資料寫入snapshot
+     *
+     * @return Mono<Void>
+     */
+    private Mono<Void> writeSnapshot() {
+        if (Objects.isNull(snapshotPath) || !isReady() || Objects.nonNull(coveredTo)) {
+            return Mono.empty();
+        }
+        LocalDate from = loadedFrom;
+        Collection<StockSeries> seriesList = seriesMapRef.get().values();
+        return Mono.fromCallable(() -> writeSnapshot(LocalDate.now(), from, seriesList))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(size -> log.info("stock snapshot written, path: {}, bytes: {}", snapshotPath, size))
+                .onErrorResume(e -> {
+                    log.error("stock snapshot write error {} ", e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private long writeSnapshot(LocalDate snapshotDate, LocalDate from, Collection<StockSeries> seriesList) {
+        try {
+            return StockSnapshotFile.write(snapshotPath, snapshotDate, from, seriesList);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 合併新資料, 以copy-on-write方式替換
+     *
+     * @param event 更新事件
+     */
+    private void merge(StockDataUpdatedEvent event) {
+        seriesMapRef.updateAndGet(current -> {
+            Map<String, StockSeries> seriesMap = new HashMap<>(current);
+            event.getStockDataMap().forEach((code, stockDataCollection) -> {
+                List<StockData> stockDataList = stockDataCollection.stream().filter(this::verifyStockData).toList();
+                if (stockDataList.isEmpty()) {
+                    return;
+                }
+                StockSeries series = seriesMap.get(code);
+                seriesMap.put(code, Objects.isNull(series) ? StockSeries.of(code, stockDataList) : series.merge(stockDataList));
+            });
+            return Collections.unmodifiableMap(seriesMap);
+        });
+        getTradingDays();
+    }
+
+    /**
+     * 確保stockData為有效資料
+     *
+     * @param stockData
+     * @return
+     */
+    private boolean verifyStockData(StockData stockData) {
+        return Objects.nonNull(stockData)
+                && Objects.nonNull(stockData.getDate())
+                && stockData.getOpeningPrice() != null
+                && stockData.getClosingPrice() != null
+                && stockData.getHighestPrice() != null
+                && stockData.getLowestPrice() != null;
+    }
+
+    /**
+     * 交易日曆, 所有股票日期的聯集
+     *
+     * @param seriesMap   建立時的常駐資料, 用於判斷是否需重建
+     * @param tradingDays 遞增排序的epoch day
+     */
+    private record TradingCalendar(Map<String, StockSeries> seriesMap, int[] tradingDays) {
+    }
+}
@@ -0,0 +1,262 @@
+package com.custom.stocksearcher.service.impl;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.ScriptSortType;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.util.NamedValue;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockRangeExtremes;
+import com.custom.stocksearcher.models.listed.ListedStock;
+import com.custom.stocksearcher.models.tpex.TPExStock;
+import com.custom.stocksearcher.service.StockPriceStore;
+import com.custom.stocksearcher.service.StockRangeAggregator;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregation;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchOperations;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+@Service
+@Slf4j
+public class StockRangeAggregatorImpl implements StockRangeAggregator {
+    private static final String CODES_AGGREGATION = "codes";
+    private static final String DATES_AGGREGATION = "dates";
+    private static final String FIRST_DATE = "firstDate";
+    private static final String HIGHEST = "highest";
+    private static final String LOWEST = "lowest";
+    private static final String LOWEST_TRADE_VOLUME = "lowestTradeVolume";
+    private static final String LAST = "last";
+
+    private static final String DATE_FIELD = "date";
+    private static final List<String> PRICE_FIELDS = List.of(
+            "stockData.highestPrice", "stockData.lowestPrice", "stockData.openingPrice", "stockData.closingPrice");
+    private static final String TRADE_VOLUME_FIELD = "stockData.tradeVolume";
+
+    private final ReactiveElasticsearchOperations reactiveElasticsearchOperations;
+    private final StockPriceStore stockPriceStore;
+    private final boolean enabled;
+    /**
+     * 單次terms aggregation的股票數上限
+     */
+    private final int batchSize;
+
+    public StockRangeAggregatorImpl(ReactiveElasticsearchOperations reactiveElasticsearchOperations, StockPriceStore stockPriceStore,
+                                    @Value("${stock.scan.aggregation.enabled:true}") boolean enabled,
+                                    @Value("${stock.scan.aggregation.batch-size:2000}") int batchSize) {
+        this.reactiveElasticsearchOperations = reactiveElasticsearchOperations;
+        this.stockPriceStore = stockPriceStore;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean isPreferred() {
+        return enabled && (!stockPriceStore.isReady() || Objects.nonNull(stockPriceStore.getCoveredTo()));
+    }
+
+    @Override
+    public Mono<LocalDate> findTradingDateBefore(LocalDate endDate, int count) {
+        // 交易日約佔日曆日七成, 多留空間給長假
+        LocalDate searchFrom = endDate.minusDays(count * 2L + 30);
+        NativeQuery query = NativeQuery.builder()
+                .withQuery(dateRangeQuery(searchFrom, endDate))
+                .withAggregation(DATES_AGGREGATION, Aggregation.of(a -> a
+                        .terms(t -> t.field(DATE_FIELD).size(count).order(List.of(NamedValue.of("_key", SortOrder.Desc))))))
+                .withMaxResults(0)
+                .build();
+
+        return aggregate(query, ListedStock.class, DATES_AGGREGATION)
+                .flatMapIterable(aggregate -> aggregate.lterms().buckets().array())
+                .map(bucket -> toLocalDate(bucket.key()))
+                .reduce((date1, date2) -> date1.isBefore(date2) ? date1 : date2);
+    }
+
+    @Override
+    public Mono<Map<String, StockRangeExtremes>> aggregate(Collection<String> codes, LocalDate beginDate, LocalDate endDate) {
+        List<String> codeList = List.copyOf(new LinkedHashSet<>(codes));
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < codeList.size(); i += batchSize) {
+            batches.add(codeList.subList(i, Math.min(i + batchSize, codeList.size())));
+        }
+
+        return Flux.fromIterable(batches)
+                .concatMap(batch -> Flux.merge(
+                        aggregate(batch, beginDate, endDate, ListedStock.class, "listedStockId.code"),
+                        aggregate(batch, beginDate, endDate, TPExStock.class, "tpExStockId.code")))
+                .collectMap(StockRangeExtremes::getCode);
+    }
+
+    /**
+     * 單一index的terms aggregation, 每檔股票一個bucket
+     *
+     * @param codes     股票代號
+     * @param beginDate 開始日期(含)
+     * @param endDate   結束日期(含)
+     * @param clazz     index對應的class
+     * @param codeField 股票代號欄位
+     * @return Flux<StockRangeExtremes>
+     */
+    private Flux<StockRangeExtremes> aggregate(List<String> codes, LocalDate beginDate, LocalDate endDate, Class<?> clazz, String codeField) {
+        List<FieldValue> codeValues = codes.stream().map(FieldValue::of).toList();
+        List<Query> filters = new ArrayList<>();
+        filters.add(Query.of(q -> q.terms(t -> t.field(codeField).terms(tf -> tf.value(codeValues)))));
+        filters.add(dateRangeQuery(beginDate, endDate));
+        PRICE_FIELDS.forEach(field -> filters.add(Query.of(q -> q.exists(e -> e.field(field)))));
+
+        Aggregation codesAggregation = Aggregation.of(a -> a
+                .terms(t -> t.field(codeField).size(codes.size()))
+                .aggregations(FIRST_DATE, Aggregation.of(sub -> sub.min(m -> m.field(DATE_FIELD))))
+                .aggregations(HIGHEST, topHit(scriptSort(dayPriceScript("max"), SortOrder.Desc)))
+                .aggregations(LOWEST, topHit(scriptSort(dayPriceScript("min"), SortOrder.Asc)))
+                .aggregations(LOWEST_TRADE_VOLUME, topHit(scriptSort(tradeVolumeScript(), SortOrder.Asc)))
+                .aggregations(LAST, topHit(null)));
+
+        NativeQuery query = NativeQuery.builder()
+                .withQuery(q -> q.bool(b -> b.filter(filters)))
+                .withAggregation(CODES_AGGREGATION, codesAggregation)
+                .withMaxResults(0)
+                .build();
+
+        return aggregate(query, clazz, CODES_AGGREGATION)
+                .flatMapIterable(aggregate -> aggregate.sterms().buckets().array())
+                .mapNotNull(this::toStockRangeExtremes)
+                .doOnError(e -> log.error("stock range aggregation error {} ", e.getMessage()));
+    }
+
+    private Mono<Aggregate> aggregate(NativeQuery query, Class<?> clazz, String name) {
+        return reactiveElasticsearchOperations.aggregate(query, clazz)
+                .map(aggregationContainer -> ((ElasticsearchAggregation) aggregationContainer).aggregation())
+                .filter(aggregation -> name.equals(aggregation.getName()))
+                .map(aggregation -> aggregation.getAggregate())
+                .next();
+    }
+
+    /**
+     * bucket轉為StockRangeExtremes, 成交量皆為null時視為不完整
+     *
+     * @param bucket 單一股票的bucket
+     * @return StockRangeExtremes, 不完整時為null
+     */
+    private StockRangeExtremes toStockRangeExtremes(StringTermsBucket bucket) {
+        Map<String, Aggregate> aggregations = bucket.aggregations();
+        StockRangeExtremes stockRangeExtremes = new StockRangeExtremes();
+        stockRangeExtremes.setCode(bucket.key().stringValue());
+        stockRangeExtremes.setBarCount(bucket.docCount());
+        stockRangeExtremes.setFirstDate(toLocalDate((long) aggregations.get(FIRST_DATE).min().value()));
+        stockRangeExtremes.setHighestStockData(toStockData(aggregations.get(HIGHEST)));
+        stockRangeExtremes.setLowestStockData(toStockData(aggregations.get(LOWEST)));
+        stockRangeExtremes.setLowestTradeVolumeStockData(toStockData(aggregations.get(LOWEST_TRADE_VOLUME)));
+        stockRangeExtremes.setLastStockData(toStockData(aggregations.get(LAST)));
+        stockRangeExtremes.setLastDate(stockRangeExtremes.getLastStockData().getDate());
+
+        if (Objects.isNull(stockRangeExtremes.getLowestTradeVolumeStockData().getTradeVolume())) {
+            return null;
+        }
+        return stockRangeExtremes;
+    }
+
+    /**
+     * top_hits只取一筆, 同值時取日期較晚者
+     *
+     * @param sortOptions 主要排序, null代表只依日期
+     * @return Aggregation
+     */
+    private Aggregation topHit(SortOptions sortOptions) {
+        List<SortOptions> sorts = new ArrayList<>();
+        if (Objects.nonNull(sortOptions)) {
+            sorts.add(sortOptions);
+        }
+        sorts.add(SortOptions.of(s -> s.field(f -> f.field(DATE_FIELD).order(SortOrder.Desc))));
+        return Aggregation.of(a -> a.topHits(t -> t
+                .size(1)
+                .sort(sorts)
+                .source(sc -> sc.filter(f -> f.includes("stockData")))));
+    }
+
+    private SortOptions scriptSort(String script, SortOrder sortOrder) {
+        return SortOptions.of(s -> s.script(ss -> ss
+                .type(ScriptSortType.Number)
+                .script(sc -> sc.inline(i -> i.source(script)))
+                .order(sortOrder)));
+    }
+
+    /**
+     * 價格欄位為keyword, 以script轉為數值後取開高低收的最大或最小
+     *
+     * @param function max or min
+     * @return painless script
+     */
+    private String dayPriceScript(String function) {
+        return PRICE_FIELDS.stream()
+                .map(field -> "Double.parseDouble(doc['" + field + "'].value)")
+                .reduce((left, right) -> "Math." + function + "(" + left + ", " + right + ")")
+                .orElseThrow();
+    }
+
+    private String tradeVolumeScript() {
+        return "doc['" + TRADE_VOLUME_FIELD + "'].empty ? Double.MAX_VALUE : Double.parseDouble(doc['" + TRADE_VOLUME_FIELD + "'].value)";
+    }
+
+    private Query dateRangeQuery(LocalDate beginDate, LocalDate endDate) {
+        return Query.of(q -> q.range(r -> r
+                .field(DATE_FIELD)
+                .gte(JsonData.of(beginDate.toString()))
+                .lte(JsonData.of(endDate.toString()))));
+    }
+
+    /**
+     * top_hits的_source轉為StockData
+     *
+     * @param aggregate top_hits aggregate
+     * @return StockData
+     */
+    private StockData toStockData(Aggregate aggregate) {
+        Hit<JsonData> hit = aggregate.topHits().hits().hits().get(0);
+        JsonObject source = hit.source().toJson().asJsonObject().getJsonObject("stockData");
+
+        StockData stockData = new StockData();
+        stockData.setDate(LocalDate.parse(source.getString("date")));
+        stockData.setOpeningPrice(toDecimal(source.get("openingPrice")));
+        stockData.setHighestPrice(toDecimal(source.get("highestPrice")));
+        stockData.setLowestPrice(toDecimal(source.get("lowestPrice")));
+        stockData.setClosingPrice(toDecimal(source.get("closingPrice")));
+        stockData.setChange(toDecimal(source.get("change")));
+        stockData.setTradeVolume(toDecimal(source.get("tradeVolume")));
+        stockData.setTradeValue(toDecimal(source.get("tradeValue")));
+        stockData.setTransaction(toDecimal(source.get("transaction")));
+        return stockData;
+    }
+
+    private BigDecimal toDecimal(JsonValue jsonValue) {
+        if (jsonValue instanceof JsonNumber jsonNumber) {
+            return new BigDecimal(jsonNumber.toString());
+        } else if (jsonValue instanceof JsonString jsonString) {
+            return new BigDecimal(jsonString.getString());
+        }
+        return null;
+    }
+
+    private LocalDate toLocalDate(long epochMilli) {
+        return Instant.ofEpochMilli(epochMilli).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+}
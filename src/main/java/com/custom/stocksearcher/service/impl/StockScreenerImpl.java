@@ -0,0 +1,192 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.engine.ScreenContext;
+import com.custom.stocksearcher.engine.ScreenExpressionParser;
+import com.custom.stocksearcher.engine.ScreenPipeline;
+import com.custom.stocksearcher.engine.ScreenPredicate;
+import com.custom.stocksearcher.engine.ScreenStage;
+import com.custom.stocksearcher.models.CodeParam;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.models.StockMAResult;
+import com.custom.stocksearcher.models.StockSeries;
+import com.custom.stocksearcher.service.ScanMetrics;
+import com.custom.stocksearcher.service.StockScreener;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+@Service
+@Slf4j
+public class StockScreenerImpl implements StockScreener {
+    private static final int STATS_MAXIMUM_SIZE = 1000;
+
+    private final ScanMetrics scanMetrics;
+    /**
+     * 條件key -> 通過率統計, 跨查詢共用作為排序依據
+     */
+    private final Cache<String, ScreenPipeline.PredicateStats> predicateStatsCache = Caffeine.newBuilder()
+            .maximumSize(STATS_MAXIMUM_SIZE)
+            .build();
+
+    public StockScreenerImpl(ScanMetrics scanMetrics) {
+        this.scanMetrics = scanMetrics;
+    }
+
+    @Override
+    public ScreenPipeline compile(CodeParam codeParam) {
+        return toScreenPipeline(getPredicates(codeParam));
+    }
+
+    @Override
+    public ScreenPipeline compileScan(CodeParam codeParam) {
+        List<ScreenPredicate> screenPredicates = getPredicates(codeParam);
+
+        BigDecimal bumpyHighLimit = codeParam.getBumpyHighLimit();
+        if (Objects.nonNull(bumpyHighLimit) && bumpyHighLimit.compareTo(BigDecimal.ZERO) != 0) {
+            screenPredicates.add(ScreenPredicate.of("bumpyHighLimit", "bumpyHighLimit(" + bumpyHighLimit + ")", ScreenStage.RANGE, 1,
+                    screenContext -> screenContext.getStockBumpy().getCalcResult().compareTo(bumpyHighLimit) < 0));
+        }
+        BigDecimal bumpyLowLimit = codeParam.getBumpyLowLimit();
+        if (Objects.nonNull(bumpyLowLimit)) {
+            screenPredicates.add(ScreenPredicate.of("bumpyLowLimit", "bumpyLowLimit(" + bumpyLowLimit + ")", ScreenStage.RANGE, 1,
+                    screenContext -> screenContext.getStockBumpy().getCalcResult().compareTo(bumpyLowLimit) >= 0));
+        }
+
+        return toScreenPipeline(screenPredicates);
+    }
+
+    private ScreenPipeline toScreenPipeline(List<ScreenPredicate> screenPredicates) {
+        return new ScreenPipeline(screenPredicates,
+                key -> predicateStatsCache.get(key, k -> new ScreenPipeline.PredicateStats()),
+                scanMetrics::recordFilter);
+    }
+
+    /**
+     * CodeParam固定條件與screenExpression, 未設定的條件不列入
+     *
+     * @param codeParam 查詢條件
+     * @return 篩選條件
+     */
+    private List<ScreenPredicate> getPredicates(CodeParam codeParam) {
+        List<ScreenPredicate> screenPredicates = new ArrayList<>();
+
+        BigDecimal priceLowLimit = Optional.ofNullable(codeParam.getPriceLowLimit()).orElse(BigDecimal.ZERO);
+        BigDecimal priceHighLimit = Optional.ofNullable(codeParam.getPriceHighLimit()).orElse(BigDecimal.ZERO);
+        if (priceLowLimit.signum() != 0 || priceHighLimit.signum() != 0) {
+            screenPredicates.add(ScreenPredicate.of("priceRange", "priceRange(" + priceLowLimit + ", " + priceHighLimit + ")", ScreenStage.BAR, 1,
+                    screenContext -> isInPriceRange(screenContext.getLastStockData(), priceLowLimit, priceHighLimit)));
+        }
+
+        List<String> candlestickTypeList = codeParam.getCandlestickTypeList();
+        if (Objects.nonNull(candlestickTypeList) && !candlestickTypeList.isEmpty()) {
+            screenPredicates.add(ScreenPredicate.of("candlestickType", "candlestickType(" + String.join(", ", candlestickTypeList) + ")", ScreenStage.BAR, 3,
+                    screenContext -> candlestickTypeList.contains(screenContext.getCandlestickType().getName())));
+        }
+
+        BigDecimal lastOpenCalcLimit = codeParam.getLastOpenCalcLimit();
+        BigDecimal lastCloseCalcLimit = codeParam.getLastCloseCalcLimit();
+        if (Objects.nonNull(lastOpenCalcLimit) || Objects.nonNull(lastCloseCalcLimit)) {
+            screenPredicates.add(ScreenPredicate.of("calcLimit", "calcLimit(" + lastOpenCalcLimit + ", " + lastCloseCalcLimit + ")", ScreenStage.BAR, 2,
+                    screenContext -> isInCalcLimit(screenContext.getLastStockData(), lastOpenCalcLimit, lastCloseCalcLimit)));
+        }
+
+        BigDecimal tradeVolumeLimit = codeParam.getTradeVolumeLimit();
+        if (Objects.nonNull(tradeVolumeLimit)) {
+            screenPredicates.add(ScreenPredicate.of("tradeVolumeLimit", "tradeVolumeLimit(" + tradeVolumeLimit + ")", ScreenStage.RANGE, 1,
+                    screenContext -> screenContext.getStockBumpy().getLowestTradeVolume().compareTo(tradeVolumeLimit) >= 0));
+        }
+
+        String maTargetHigher = codeParam.getClosingPriceCompareTargetHigher();
+        String maTargetLower = codeParam.getClosingPriceCompareTargetLower();
+        if (Objects.nonNull(maTargetHigher) || Objects.nonNull(maTargetLower)) {
+            screenPredicates.add(ScreenPredicate.of("maCompare", "maCompare(" + maTargetHigher + ", " + maTargetLower + ")", ScreenStage.MA, 1,
+                    screenContext -> isInMaRange(screenContext.getStockMAResult(), maTargetHigher, maTargetLower)));
+        }
+
+        String screenExpression = codeParam.getScreenExpression();
+        if (Objects.nonNull(screenExpression) && !screenExpression.isBlank()) {
+            screenPredicates.addAll(ScreenExpressionParser.parse(screenExpression));
+        }
+        return screenPredicates;
+    }
+
+    /**
+     * 收盤價是否在價格上下限中, 以定點數比較
+     *
+     * @param stockData      股價資料
+     * @param priceLowLimit  下限
+     * @param priceHighLimit 上限, 0代表不限
+     * @return boolean
+     */
+    private boolean isInPriceRange(StockData stockData, BigDecimal priceLowLimit, BigDecimal priceHighLimit) {
+        long closingPrice = StockSeries.toFixed(stockData.getClosingPrice());
+        if (priceHighLimit.compareTo(BigDecimal.ZERO) > 0) {
+            return (closingPrice >= StockSeries.toFixed(priceLowLimit)) && (closingPrice <= StockSeries.toFixed(priceHighLimit));
+        }
+        return (closingPrice >= StockSeries.toFixed(priceLowLimit));
+    }
+
+    /**
+     * 是否在條件上下限中
+     *
+     * @param stockData      股價資料
+     * @param openCalcLimit  openCalcLimit, null代表不限
+     * @param closeCalcLimit closeCalcLimit, null代表不限
+     * @return boolean
+     */
+    private boolean isInCalcLimit(StockData stockData, BigDecimal openCalcLimit, BigDecimal closeCalcLimit) {
+        long openPrice = StockSeries.toFixed(stockData.getOpeningPrice());
+        long closingPrice = StockSeries.toFixed(stockData.getClosingPrice());
+        long lowestPrice = StockSeries.toFixed(stockData.getLowestPrice());
+        long lastOpenCalc = StockSeries.toRatio(openPrice, lowestPrice);
+        long lastCloseCalc = StockSeries.toRatio(closingPrice, lowestPrice);
+
+        return (Objects.isNull(openCalcLimit) || lastOpenCalc >= StockSeries.toRatioThreshold(openCalcLimit))
+                && (Objects.isNull(closeCalcLimit) || lastCloseCalc >= StockSeries.toRatioThreshold(closeCalcLimit));
+    }
+
+    /**
+     * 收盤價需高於maTargetHigher且低於maTargetLower
+     *
+     * @param stockMAResult  MA
+     * @param maTargetHigher 需高於哪個MA
+     * @param maTargetLower  需低於哪個MA
+     * @return boolean
+     */
+    private boolean isInMaRange(StockMAResult stockMAResult, String maTargetHigher, String maTargetLower) {
+        BigDecimal price = stockMAResult.getPrice();
+        Optional<BigDecimal> maHigher = Optional.ofNullable(getMaTarget(stockMAResult, maTargetHigher));
+        Optional<BigDecimal> maLower = Optional.ofNullable(getMaTarget(stockMAResult, maTargetLower));
+
+        return maHigher.map(higher -> price.compareTo(higher) >= 0).orElse(true) &&
+                maLower.map(lower -> price.compareTo(lower) <= 0).orElse(true);
+    }
+
+    /**
+     * 取得要比較的 ma price
+     *
+     * @param stockMAResult MA
+     * @param maTarget      none MA5 MA10 MA20 MA60, null同none
+     * @return ma price, 無資料時為0
+     */
+    private BigDecimal getMaTarget(StockMAResult stockMAResult, String maTarget) {
+        if (Objects.isNull(maTarget)) {
+            return null;
+        }
+        return switch (maTarget) {
+            case "none" -> null;
+            case "MA5" -> Optional.ofNullable(stockMAResult.getMa5()).orElse(BigDecimal.ZERO);
+            case "MA10" -> Optional.ofNullable(stockMAResult.getMa10()).orElse(BigDecimal.ZERO);
+            case "MA20" -> Optional.ofNullable(stockMAResult.getMa20()).orElse(BigDecimal.ZERO);
+            case "MA60" -> Optional.ofNullable(stockMAResult.getMa60()).orElse(BigDecimal.ZERO);
+            default -> BigDecimal.ZERO;
+        };
+    }
+}
@@ -0,0 +1,114 @@
+package com.custom.stocksearcher.service.impl;
+
+import com.custom.stocksearcher.event.StockDataUpdatedEvent;
+import com.custom.stocksearcher.models.StockData;
+import com.custom.stocksearcher.repo.ListedStockRepo;
+import com.custom.stocksearcher.repo.TPExStockRepo;
+import com.custom.stocksearcher.service.StockUpdateWatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class StockUpdateWatcherImpl implements StockUpdateWatcher {
+    private final ListedStockRepo listedStockRepo;
+    private final TPExStockRepo tpExStockRepo;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    /**
+     * 今日已處理過的資料key
+     */
+    private final Set<String> processedKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private volatile LocalDate watchingDate;
+
+    public StockUpdateWatcherImpl(ListedStockRepo listedStockRepo, TPExStockRepo tpExStockRepo, ApplicationEventPublisher applicationEventPublisher) {
+        this.listedStockRepo = listedStockRepo;
+        this.tpExStockRepo = tpExStockRepo;
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * 定期檢查資料更新, 不阻塞排程執行緒, 上次檢查未完成時略過
+     */
+    @Scheduled(initialDelayString = "${stock.update.initial-delay:60000}", fixedDelayString = "${stock.update.poll-interval:300000}")
+    public void watch() {
+        if (!checking.compareAndSet(false, true)) {
+            log.info("check stock update still running, skipped");
+            return;
+        }
+        checkUpdate()
+                .onErrorResume(e -> {
+                    log.error("check stock update error {} ", e.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signalType -> checking.set(false))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    @Override
+    public Mono<Void> checkUpdate() {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(watchingDate)) {
+            processedKeys.clear();
+            watchingDate = today;
+        }
+
+        Flux<Tuple2<String, StockData>> updatedFlux = Flux.concat(
+                listedStockRepo.findByUpdateDate(today)
+                        .map(listedStock -> Tuples.of(listedStock.getListedStockId().getCode(), listedStock.getStockData())),
+                tpExStockRepo.findByUpdateDate(today)
+                        .map(tpExStock -> Tuples.of(tpExStock.getTpExStockId().getCode(), tpExStock.getStockData()))
+        );
+
+        // 發布成功後才標記為已處理, 查詢或監聽器失敗時下次檢查重新發布
+        return updatedFlux
+                .filter(tuple2 -> Objects.nonNull(tuple2.getT2().getDate()))
+                .filter(tuple2 -> !processedKeys.contains(getProcessedKey(tuple2.getT1(), tuple2.getT2())))
+                .collectList()
+                .filter(updatedList -> !updatedList.isEmpty())
+                .doOnNext(updatedList -> {
+                    Map<String, Collection<StockData>> stockDataMap = updatedList.stream()
+                            .collect(Collectors.groupingBy(Tuple2::getT1,
+                                    Collectors.mapping(Tuple2::getT2, Collectors.toCollection(ArrayList::new))));
+                    LocalDate latestDate = stockDataMap.values().stream()
+                            .flatMap(Collection::stream)
+                            .map(StockData::getDate)
+                            .max(Comparator.naturalOrder())
+                            .orElse(today);
+                    log.info("stock data updated, codes: {}, latest date: {}", stockDataMap.size(), latestDate);
+                    applicationEventPublisher.publishEvent(new StockDataUpdatedEvent(stockDataMap, latestDate));
+                    updatedList.forEach(tuple2 -> processedKeys.add(getProcessedKey(tuple2.getT1(), tuple2.getT2())));
+                })
+                .then();
+    }
+
+    /**
+     * 同一筆資料內容未變動時視為已處理
+     *
+     * @param code      股票代號
+     * @param stockData 股價資料
+     * @return key
+     */
+    private String getProcessedKey(String code, StockData stockData) {
+        return code + "_" + stockData.getDate() + "_" + stockData.getClosingPrice() + "_" + stockData.getTradeVolume();
+    }
+}
@@ -4,7 +4,7 @@ import com.custom.stocksearcher.models.CodeList;
 import com.custom.stocksearcher.models.CodeParam;
 import com.custom.stocksearcher.models.CompanyStatus;
 import com.custom.stocksearcher.repo.CodeListRepo;
-import com.custom.stocksearcher.repo.CompanyStatusRepo;
+import com.custom.stocksearcher.service.CompanyDirectory;
 import com.custom.stocksearcher.service.UserStorage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -12,18 +12,18 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.function.Function;
 
 @Service
 @Slf4j
 public class UserStorageImpl implements UserStorage {
     private final CodeListRepo codeListRepo;
-    private final CompanyStatusRepo companyStatusRepo;
+    private final CompanyDirectory companyDirectory;
 
-    public UserStorageImpl(CodeListRepo codeListRepo, CompanyStatusRepo companyStatusRepo) {
+    public UserStorageImpl(CodeListRepo codeListRepo, CompanyDirectory companyDirectory) {
         this.codeListRepo = codeListRepo;
-        this.companyStatusRepo = companyStatusRepo;
+        this.companyDirectory = companyDirectory;
     }
 
     @Override
@@ -31,7 +31,7 @@ public class UserStorageImpl implements UserStorage {
         return Flux.fromIterable(codeList.getCodes())
                 .flatMap(companyStatus -> {
                     if (Objects.isNull(companyStatus.getName()) || companyStatus.getName().isEmpty()) {
-                        return companyStatusRepo.findById(companyStatus.getCode());
+                        return companyDirectory.findByCode(companyStatus.getCode());
                     } else {
                         return Mono.just(companyStatus);
                     }
@@ -52,36 +52,91 @@ public class UserStorageImpl implements UserStorage {
 
     @Override
     public Flux<CompanyStatus> getIntersectionFromCodeList(List<String> codeListIds) {
+        return combineCodeLists(codeListIds, codeSets -> {
+            Map<String, CompanyStatus> result = new LinkedHashMap<>(codeSets.get(0));
+            codeSets.subList(1, codeSets.size()).forEach(codeSet -> result.keySet().retainAll(codeSet.keySet()));
+            return result;
+        });
+    }
+
+    @Override
+    public Flux<CompanyStatus> getUnionFromCodeList(List<String> codeListIds) {
+        return combineCodeLists(codeListIds, codeSets -> {
+            Map<String, CompanyStatus> result = new LinkedHashMap<>();
+            codeSets.forEach(codeSet -> codeSet.forEach(result::putIfAbsent));
+            return result;
+        });
+    }
+
+    @Override
+    public Flux<CompanyStatus> getDifferenceFromCodeList(List<String> codeListIds) {
+        return combineCodeLists(codeListIds, codeSets -> {
+            Map<String, CompanyStatus> result = new LinkedHashMap<>(codeSets.get(0));
+            codeSets.subList(1, codeSets.size()).forEach(codeSet -> result.keySet().removeAll(codeSet.keySet()));
+            return result;
+        });
+    }
 
+    @Override
+    public Flux<CompanyStatus> getSymmetricDifferenceFromCodeList(List<String> codeListIds) {
+        return combineCodeLists(codeListIds, codeSets -> {
+            Map<String, CompanyStatus> result = new LinkedHashMap<>();
+            Set<String> duplicateCodes = new HashSet<>();
+            codeSets.forEach(codeSet -> codeSet.forEach((code, companyStatus) -> {
+                if (null != result.putIfAbsent(code, companyStatus)) {
+                    duplicateCodes.add(code);
+                }
+            }));
+            result.keySet().removeAll(duplicateCodes);
+            return result;
+        });
+    }
 
-        Flux<CompanyStatus> companyStatusAllFlux = codeListRepo.findAllById(codeListIds)
-                .flatMap(codeList -> Flux.fromIterable(codeList.getCodes())).distinct(CompanyStatus::getCode);
-
-        for (String codeListId : codeListIds) {
-            Flux<CompanyStatus> companyStatusFlux = codeListRepo.findById(codeListId).flux().flatMap(codeList -> Flux.fromIterable(codeList.getCodes()));
-            companyStatusAllFlux = companyStatusAllFlux.flatMap(
-                    companyStatus -> companyStatusFlux.flatMap(companyStatus1 -> {
-                        if (companyStatus1.equals(companyStatus)) {
-                            return Flux.just(companyStatus);
-                        } else {
-                            return Flux.empty();
-                        }
-                    })
-            );
-            companyStatusAllFlux = Flux.from(companyStatusAllFlux);
+    /**
+     * 以單次findAllById取得CodeList, 轉為code -> CompanyStatus後做集合運算
+     * 依codeListIds順序排列, 不存在的id視為空集合
+     *
+     * @param codeListIds CodeList id
+     * @param operation   集合運算, 輸入至少一個集合
+     * @return 運算結果, 依第一次出現的順序
+     */
+    private Flux<CompanyStatus> combineCodeLists(List<String> codeListIds, Function<List<Map<String, CompanyStatus>>, Map<String, CompanyStatus>> operation) {
+        if (Objects.isNull(codeListIds) || codeListIds.isEmpty()) {
+            return Flux.empty();
         }
 
-        return companyStatusAllFlux;
+        return codeListRepo.findAllById(new LinkedHashSet<>(codeListIds))
+                .collectMap(CodeList::getCodeListId)
+                .flatMapIterable(codeListMap -> {
+                    List<Map<String, CompanyStatus>> codeSets = codeListIds.stream()
+                            .map(codeListId -> toCodeSet(codeListMap.get(codeListId)))
+                            .toList();
+                    return operation.apply(codeSets).values();
+                });
+    }
+
+    /**
+     * CodeList轉為code -> CompanyStatus
+     *
+     * @param codeList CodeList, 可為null
+     * @return 依原順序的map
+     */
+    private Map<String, CompanyStatus> toCodeSet(CodeList codeList) {
+        Map<String, CompanyStatus> codeSet = new LinkedHashMap<>();
+        if (Objects.nonNull(codeList) && Objects.nonNull(codeList.getCodes())) {
+            codeList.getCodes().forEach(companyStatus -> codeSet.putIfAbsent(companyStatus.getCode(), companyStatus));
+        }
+        return codeSet;
     }
 
     @Override
     public Flux<CompanyStatus> getCodeRange(String key, boolean without4upCode) {
         Flux<CompanyStatus> companyStatusFlux;
         switch (key) {
-            case "all" -> companyStatusFlux = companyStatusRepo.findAll();
+            case "all" -> companyStatusFlux = companyDirectory.findAll();
             case "listed" ->
-                    companyStatusFlux = companyStatusRepo.findAll().filter(companyStatus -> !companyStatus.isTPE());
-            case "tpex" -> companyStatusFlux = companyStatusRepo.findAll().filter(CompanyStatus::isTPE);
+                    companyStatusFlux = companyDirectory.findAll().filter(companyStatus -> !companyStatus.isTPE());
+            case "tpex" -> companyStatusFlux = companyDirectory.findAll().filter(CompanyStatus::isTPE);
             default -> companyStatusFlux = codeListRepo
                     .findById(key)
                     .flux()
@@ -111,8 +166,10 @@ public class UserStorageImpl implements UserStorage {
                     actualCodeParam.setClosingPriceCompareTargetHigher(codeParam.getClosingPriceCompareTargetHigher());
                     actualCodeParam.setClosingPriceCompareTargetLower(codeParam.getClosingPriceCompareTargetLower());
                     actualCodeParam.setCandlestickTypeList(codeParam.getCandlestickTypeList());
+                    actualCodeParam.setCandlestickPatternList(codeParam.getCandlestickPatternList());
                     actualCodeParam.setPriceLowLimit(codeParam.getPriceLowLimit());
                     actualCodeParam.setPriceHighLimit(codeParam.getPriceHighLimit());
+                    actualCodeParam.setScreenExpression(codeParam.getScreenExpression());
 
                     return actualCodeParam;
                 }